@@ -19,33 +19,44 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spotty.common.exception.SpottyHaltException;
 import spotty.common.exception.SpottyHttpException;
+import spotty.common.exception.SpottyMethodNotAllowedException;
 import spotty.common.exception.SpottyNotFoundException;
 import spotty.common.exception.SpottyValidationException;
 import spotty.common.filter.Filter;
+import spotty.common.http.HttpHeaders;
 import spotty.common.http.HttpMethod;
 import spotty.common.http.HttpStatus;
+import spotty.common.response.ConstantHeaders;
+import spotty.common.response.DateHeader;
 import spotty.common.router.route.Route;
 import spotty.common.router.route.RouteGroup;
 import spotty.server.Server;
+import spotty.server.compress.CompressionPolicy;
 import spotty.server.compress.Compressor;
+import spotty.server.compress.Decompressor;
 import spotty.server.files.StaticFilesManager;
 import spotty.server.handler.exception.ExceptionHandler;
 import spotty.server.handler.request.DefaultRequestHandler;
 import spotty.server.registry.exception.ExceptionHandlerRegistry;
 import spotty.server.router.SpottyRouter;
 import spotty.server.session.SessionManager;
+import spotty.server.session.cookie.SessionCookieCodec;
+import spotty.server.session.store.SessionStore;
+import spotty.server.session.store.impl.CompactSessionStore;
+import spotty.server.session.store.replication.LoopbackTransport;
+import spotty.server.session.store.replication.ReplicationTransport;
 import spotty.server.worker.ReactorWorker;
 
 import java.util.concurrent.TimeUnit;
 
-import static java.time.ZoneOffset.UTC;
-import static java.time.ZonedDateTime.now;
-import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
 import static java.util.concurrent.TimeUnit.SECONDS;
-import static spotty.common.http.HttpHeaders.DATE;
+import static spotty.common.http.HttpHeaders.ALLOW;
 import static spotty.common.http.HttpHeaders.SERVER;
 import static spotty.common.http.HttpStatus.BAD_REQUEST;
 import static spotty.common.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static spotty.common.validation.Validation.notBlank;
+import static spotty.common.validation.Validation.notNull;
+import static spotty.common.validation.Validation.validate;
 import static spotty.version.SpottyVersion.VERSION;
 
 /**
@@ -56,6 +67,7 @@ public final class Spotty {
     private static final String SPOTTY_VERSION = "Spotty v" + VERSION;
     private static final int DEFAULT_PORT = 4000;
     private static final int DEFAULT_MAX_REQUEST_BODY_SIZE = 10 * 1024 * 1024; // 10Mb
+    private static final int DEFAULT_MAX_REQUEST_COMPRESSION_RATIO = 100;
     private static final int DEFAULT_REACTOR_MIN_WORKERS = 24;
     private static final int DEFAULT_REACTOR_MAX_WORKERS = 200;
     private static final int DEFAULT_REACTOR_KEEP_ALIVE_TIME = 300;
@@ -64,7 +76,7 @@ public final class Spotty {
     private final SessionManager sessionManager;
 
     private final SpottyRouter router = new SpottyRouter();
-    private final StaticFilesManager staticFilesManager = new StaticFilesManager(router);
+    private final StaticFilesManager staticFilesManager;
     private final ExceptionHandlerRegistry exceptionHandlerRegistry = new ExceptionHandlerRegistry();
 
     private final Server server;
@@ -79,11 +91,24 @@ public final class Spotty {
 
     private Spotty(Builder builder) {
         this.sessionManager = builder.sessionManagerBuilder.build();
+        this.staticFilesManager = new StaticFilesManager(router, builder.compressionPolicy);
 
         this.server = new Server(
             builder.port,
             builder.maxRequestBodySize,
-            new DefaultRequestHandler(router, new Compressor(), sessionManager),
+            new ConstantHeaders(
+                new HttpHeaders()
+                    .add(SERVER, SPOTTY_VERSION)
+                    .add(builder.constantHeaders),
+                new DateHeader()
+            ),
+            builder.requestDecompression
+                ? new Decompressor(
+                    builder.maxDecompressedRequestBodySize > 0 ? builder.maxDecompressedRequestBodySize : builder.maxRequestBodySize,
+                    builder.maxRequestCompressionRatio
+                )
+                : null,
+            new DefaultRequestHandler(router, new Compressor(builder.compressionPolicy.level()), builder.compressionPolicy, sessionManager),
             exceptionHandlerRegistry,
             new ReactorWorker(
                 builder.reactorMinWorkers,
@@ -104,7 +129,6 @@ public final class Spotty {
             return;
         }
 
-        registerSpottyDefaultFilters();
         registerSpottyDefaultExceptionHandlers();
 
         server.start();
@@ -151,6 +175,7 @@ public final class Spotty {
     public synchronized void stop() {
         server.close();
         sessionManager.close();
+        staticFilesManager.close();
     }
 
     /**
@@ -568,6 +593,17 @@ public final class Spotty {
         exceptionHandlerRegistry.register(exceptionClass, exceptionHandler);
     }
 
+    /**
+     * register exception handler for any exceptions that implement given interface,
+     * handler registered by exception class takes precedence on the same level of class hierarchy
+     *
+     * @param exceptionInterface interface implemented by exceptions
+     * @param exceptionHandler   exception handler
+     */
+    public void exceptionInterface(Class<?> exceptionInterface, ExceptionHandler<Exception> exceptionHandler) {
+        exceptionHandlerRegistry.registerInterface(exceptionInterface, exceptionHandler);
+    }
+
     /**
      * register exception handler for http 404 route not found error
      *
@@ -606,6 +642,28 @@ public final class Spotty {
         staticFilesManager.externalStaticFiles(filesDir, templatePath);
     }
 
+    /**
+     * load all files from resource child directory once at startup and serve them from memory,
+     * files added later are not served
+     *
+     * @param filesDir     path to files in resources directory
+     * @param templatePath route path
+     */
+    public void staticFilesBundle(String filesDir, String templatePath) {
+        staticFilesManager.staticBundle(filesDir, templatePath);
+    }
+
+    /**
+     * load all files from directory once at startup and serve them from memory,
+     * files added later are not served
+     *
+     * @param filesDir     directory path to files
+     * @param templatePath route path
+     */
+    public void externalStaticFilesBundle(String filesDir, String templatePath) {
+        staticFilesManager.externalStaticBundle(filesDir, templatePath);
+    }
+
     /**
      * enable files cache to not load it each time from disk
      *
@@ -616,13 +674,22 @@ public final class Spotty {
         staticFilesManager.enableCache(cacheTtl, cacheSize);
     }
 
-    private void registerSpottyDefaultFilters() {
-        before((request, response) -> {
-            response.headers()
-                .add(DATE, RFC_1123_DATE_TIME.format(now(UTC)))
-                .add(SERVER, SPOTTY_VERSION)
-            ;
-        });
+    /**
+     * enable off-heap files cache, files are memory mapped and written to the socket without copying to heap
+     *
+     * @param cacheTtl      cache time to live in seconds
+     * @param maxCacheBytes maximum total size of cached files in bytes
+     */
+    public void staticFilesMappedCache(long cacheTtl, long maxCacheBytes) {
+        staticFilesManager.enableMappedCache(cacheTtl, maxCacheBytes);
+    }
+
+    /**
+     * watch external static files directories and invalidate cached files as soon as they are changed on disk,
+     * so files can be cached with long ttl and still be updated without restart
+     */
+    public void staticFilesWatcher() {
+        staticFilesManager.enableFilesWatcher();
     }
 
     private void registerSpottyDefaultExceptionHandlers() {
@@ -633,6 +700,14 @@ public final class Spotty {
             ;
         });
 
+        exception(SpottyMethodNotAllowedException.class, (exception, request, response) -> {
+            response
+                .status(exception.status)
+                .addHeader(ALLOW, exception.allow)
+                .body(exception.getMessage())
+            ;
+        });
+
         exception(SpottyHaltException.class, (exception, request, response) -> {
             response
                 .status(exception.status)
@@ -663,6 +738,11 @@ public final class Spotty {
         private int reactorMaxWorkers = DEFAULT_REACTOR_MAX_WORKERS;
         private long reactorKeepAliveTime = DEFAULT_REACTOR_KEEP_ALIVE_TIME;
         private TimeUnit reactorTimeUnit = DEFAULT_REACTOR_TIME_UNIT;
+        private final HttpHeaders constantHeaders = new HttpHeaders();
+        private CompressionPolicy compressionPolicy = CompressionPolicy.DISABLED;
+        private boolean requestDecompression = true;
+        private int maxDecompressedRequestBodySize;
+        private int maxRequestCompressionRatio = DEFAULT_MAX_REQUEST_COMPRESSION_RATIO;
 
         private Builder() {
 
@@ -723,6 +803,64 @@ public final class Spotty {
             return this;
         }
 
+        /**
+         * extend session expiration by default session ttl each time the session is used
+         *
+         * @param slidingSessionTtl true to extend session expiration on use
+         * @return Builder
+         */
+        public Builder slidingSessionTtl(boolean slidingSessionTtl) {
+            sessionManagerBuilder.slidingSessionTtl(slidingSessionTtl);
+            return this;
+        }
+
+        /**
+         * set storage of server side sessions, sessions are kept on heap by default
+         *
+         * @param sessionStore session store, ex: {@link CompactSessionStore} for large number of sessions
+         * @return Builder
+         */
+        public Builder sessionStore(SessionStore sessionStore) {
+            sessionManagerBuilder.sessionStore(sessionStore);
+            return this;
+        }
+
+        /**
+         * persist sessions to the file, so they are restored after restart
+         *
+         * @param snapshotFile     path to the snapshot file
+         * @param snapshotInterval interval in seconds to append changed sessions to the file
+         * @return Builder
+         */
+        public Builder sessionSnapshot(String snapshotFile, int snapshotInterval) {
+            sessionManagerBuilder.sessionSnapshot(snapshotFile, snapshotInterval);
+            return this;
+        }
+
+        /**
+         * replicate sessions between several instances of server, so balancer doesn't need sticky sessions
+         *
+         * @param replicationTransport transport to exchange session changes, ex: {@link LoopbackTransport} for tests
+         * @return Builder
+         */
+        public Builder sessionReplication(ReplicationTransport replicationTransport) {
+            sessionManagerBuilder.sessionReplication(replicationTransport);
+            return this;
+        }
+
+        /**
+         * keep sessions in cookies instead of server memory, session is signed with the secret
+         * and encrypted if required, so it can not be forged by client
+         *
+         * @param secret  secret key, at least 32 bytes, must be the same on all instances of server
+         * @param encrypt true to hide session data from client
+         * @return Builder
+         */
+        public Builder cookieSessions(byte[] secret, boolean encrypt) {
+            sessionManagerBuilder.cookieSessions(new SessionCookieCodec(secret, encrypt));
+            return this;
+        }
+
         /**
          * minimum number of threads that handles the queue of requests even if they are idle
          *
@@ -769,6 +907,70 @@ public final class Spotty {
             return this;
         }
 
+        /**
+         * header that is sent with every response (ex: security headers),
+         * constant headers are serialised once and copied to each response as is,
+         * a header with the same name set on a response takes precedence
+         *
+         * @param name  header name
+         * @param value header value
+         * @return Builder
+         */
+        public Builder constantHeader(String name, String value) {
+            this.constantHeaders.append(notBlank("name", name), notNull("value", value));
+            return this;
+        }
+
+        /**
+         * compress responses automatically by client Accept-Encoding,
+         * disabled by default, ex: compression(CompressionPolicy.builder().minSize(2048).build())
+         *
+         * @param compressionPolicy compression policy
+         * @return Builder
+         */
+        public Builder compression(CompressionPolicy compressionPolicy) {
+            this.compressionPolicy = notNull("compressionPolicy", compressionPolicy);
+            return this;
+        }
+
+        /**
+         * request bodies with gzip or deflate content-encoding are decompressed automatically,
+         * so handlers receive plain body, enabled by default
+         *
+         * @param requestDecompression false to pass compressed request body to handlers as is
+         * @return Builder
+         */
+        public Builder requestDecompression(boolean requestDecompression) {
+            this.requestDecompression = requestDecompression;
+            return this;
+        }
+
+        /**
+         * @param maxDecompressedRequestBodySize maximum request body size in bytes after decompression,
+         *                                       equals to maxRequestBodySize by default
+         * @return Builder
+         */
+        public Builder maxDecompressedRequestBodySize(int maxDecompressedRequestBodySize) {
+            validate(maxDecompressedRequestBodySize > 0, "maxDecompressedRequestBodySize must be greater then 0");
+
+            this.maxDecompressedRequestBodySize = maxDecompressedRequestBodySize;
+            return this;
+        }
+
+        /**
+         * protection from decompression bombs, request is rejected when decompressed body is bigger
+         * than compressed one more than given times, 100 by default
+         *
+         * @param maxRequestCompressionRatio maximum compression ratio of request body
+         * @return Builder
+         */
+        public Builder maxRequestCompressionRatio(int maxRequestCompressionRatio) {
+            validate(maxRequestCompressionRatio > 0, "maxRequestCompressionRatio must be greater then 0");
+
+            this.maxRequestCompressionRatio = maxRequestCompressionRatio;
+            return this;
+        }
+
         public Spotty build() {
             return new Spotty(this);
         }
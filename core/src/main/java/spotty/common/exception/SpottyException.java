@@ -16,17 +16,54 @@
 package spotty.common.exception;
 
 public class SpottyException extends RuntimeException {
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Object[] args;
+    private String formattedMessage;
 
     public SpottyException(String message, Object... args) {
-        super(args.length > 0 ? String.format(message, args) : message);
+        this(message, null, args);
     }
 
     public SpottyException(Throwable cause) {
         super(cause);
+
+        this.args = NO_ARGS;
     }
 
     public SpottyException(String message, Throwable cause, Object... args) {
-        super(args.length > 0 ? String.format(message, args) : message, cause);
+        super(message, cause);
+
+        this.args = args == null ? NO_ARGS : args;
+    }
+
+    /**
+     * constructor for exceptions that are used as a control flow (404, redirect, halt etc.),
+     * stack trace is not filled when writableStackTrace is false, because filling it is the most
+     * expensive part of throwing an exception and nobody reads it for such exceptions
+     */
+    protected SpottyException(boolean writableStackTrace, String message, Throwable cause, Object... args) {
+        super(message, cause, false, writableStackTrace);
+
+        this.args = args == null ? NO_ARGS : args;
+    }
+
+    /**
+     * message is formatted lazily on first call, since most of the exceptions are mapped
+     * to a response or skipped without reading the message
+     */
+    @Override
+    public String getMessage() {
+        if (args.length == 0) {
+            return super.getMessage();
+        }
+
+        String message = formattedMessage;
+        if (message == null) {
+            formattedMessage = message = String.format(super.getMessage(), args);
+        }
+
+        return message;
     }
 
 }
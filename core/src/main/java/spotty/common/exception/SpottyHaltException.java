@@ -19,6 +19,9 @@ import spotty.common.http.HttpStatus;
 
 import static spotty.common.validation.Validation.notBlank;
 
+/**
+ * stackless control flow exception to stop request handling with given status
+ */
 public class SpottyHaltException extends SpottyException {
     public final HttpStatus status;
 
@@ -31,7 +34,7 @@ public class SpottyHaltException extends SpottyException {
     }
 
     public SpottyHaltException(HttpStatus status, Throwable cause, String message, Object... args) {
-        super(notBlank("message", message), cause, args);
+        super(false, notBlank("message", message), cause, args);
 
         this.status = status;
     }
@@ -19,6 +19,10 @@ import spotty.common.http.HttpStatus;
 
 import static spotty.common.validation.Validation.notBlank;
 
+/**
+ * control flow exception that is mapped to a response with given status,
+ * it is stackless to be cheap when thrown on normal paths like 404 or redirect
+ */
 public class SpottyHttpException extends SpottyException {
     public final HttpStatus status;
 
@@ -31,7 +35,7 @@ public class SpottyHttpException extends SpottyException {
     }
 
     public SpottyHttpException(HttpStatus status, Throwable cause, String message, Object... args) {
-        super(notBlank("message", message), cause, args);
+        super(false, notBlank("message", message), cause, args);
 
         this.status = status;
     }
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.common.exception;
+
+import static spotty.common.http.HttpStatus.METHOD_NOT_ALLOWED;
+import static spotty.common.validation.Validation.notBlank;
+
+public class SpottyMethodNotAllowedException extends SpottyHttpException {
+    /**
+     * value for Allow header, ex: GET, HEAD, OPTIONS
+     */
+    public final String allow;
+
+    public SpottyMethodNotAllowedException(String allow, String message, Object... args) {
+        super(METHOD_NOT_ALLOWED, message, args);
+
+        this.allow = notBlank("allow", allow);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.common.http;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Collections.unmodifiableList;
+import static spotty.common.validation.Validation.isBlank;
+
+/**
+ * Parsed Accept header, RFC 7231 Section 5.3.2.
+ * Immutable thread safe object, media ranges are sorted by specificity,
+ * so the first matched range is the most specific one for a media type.
+ *
+ * <p>Clients are sending a small set of different Accept headers,
+ * so parsed headers are interned in a small bounded cache to not parse them on each request.</p>
+ */
+public final class AcceptHeader {
+    private static final String WILDCARD = "*";
+    private static final String QUALITY = "q";
+
+    private static final int CACHE_SIZE = 256;
+    private static final int MAX_CACHED_HEADER_LENGTH = 512;
+
+    private static final Cache<String, AcceptHeader> CACHE = CacheBuilder.newBuilder()
+        .maximumSize(CACHE_SIZE)
+        .build();
+
+    private final List<MediaRange> ranges;
+
+    private AcceptHeader(List<MediaRange> ranges) {
+        this.ranges = unmodifiableList(ranges);
+    }
+
+    /**
+     * parse Accept header or take it from the cache if it was parsed already
+     *
+     * @param header Accept header value
+     * @return parsed Accept header, invalid media ranges are skipped
+     */
+    public static AcceptHeader parse(String header) {
+        if (isBlank(header)) {
+            return new AcceptHeader(new ArrayList<>());
+        }
+
+        // do not pollute the cache with unusually long headers
+        if (header.length() > MAX_CACHED_HEADER_LENGTH) {
+            return new AcceptHeader(parseRanges(header));
+        }
+
+        AcceptHeader accept = CACHE.getIfPresent(header);
+        if (accept == null) {
+            accept = new AcceptHeader(parseRanges(header));
+            CACHE.put(header, accept);
+        }
+
+        return accept;
+    }
+
+    /**
+     * find the most specific media range that matches given media type
+     *
+     * @param mediaType media type, ex: application/json
+     * @return most specific media range or null if no one matches
+     */
+    public MediaRange match(String mediaType) {
+        final int slash = mediaType.indexOf('/');
+        if (slash <= 0) {
+            return null;
+        }
+
+        final String type = mediaType.substring(0, slash).trim();
+        final String subtype = mediaType.substring(slash + 1).trim();
+        for (int i = 0; i < ranges.size(); i++) {
+            final MediaRange range = ranges.get(i);
+            if (range.matches(type, subtype)) {
+                return range;
+            }
+        }
+
+        return null;
+    }
+
+    public List<MediaRange> ranges() {
+        return ranges;
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return ranges.toString();
+    }
+
+    private static List<MediaRange> parseRanges(String header) {
+        final List<MediaRange> ranges = new ArrayList<>();
+
+        int start = 0;
+        while (start < header.length()) {
+            int end = header.indexOf(',', start);
+            if (end == -1) {
+                end = header.length();
+            }
+
+            final MediaRange range = MediaRange.parse(header.substring(start, end), ranges.size());
+            if (range != null) {
+                ranges.add(range);
+            }
+
+            start = end + 1;
+        }
+
+        ranges.sort(null);
+
+        return ranges;
+    }
+
+    /**
+     * single media range of Accept header, ex: text/html;q=0.9
+     */
+    public static final class MediaRange implements Comparable<MediaRange> {
+        public final String type;
+        public final String subtype;
+        public final float quality;
+
+        // 0 - */*, 1 - type/*, 2 - type/subtype
+        public final int specificity;
+
+        // position in the header, the client lists preferred media types first
+        public final int index;
+
+        private MediaRange(String type, String subtype, float quality, int index) {
+            this.type = type;
+            this.subtype = subtype;
+            this.quality = quality;
+            this.index = index;
+
+            if (WILDCARD.equals(type)) {
+                this.specificity = 0;
+            } else if (WILDCARD.equals(subtype)) {
+                this.specificity = 1;
+            } else {
+                this.specificity = 2;
+            }
+        }
+
+        static MediaRange parse(String value, int index) {
+            final String[] parts = value.split(";");
+            final String mediaType = parts[0].trim();
+
+            final int slash = mediaType.indexOf('/');
+            if (slash <= 0 || slash == mediaType.length() - 1) {
+                return null;
+            }
+
+            final String type = mediaType.substring(0, slash).toLowerCase();
+            final String subtype = mediaType.substring(slash + 1).toLowerCase();
+            if (WILDCARD.equals(type) && !WILDCARD.equals(subtype)) {
+                return null;
+            }
+
+            float quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                final String param = parts[i].trim();
+                final int eq = param.indexOf('=');
+                if (eq <= 0 || !QUALITY.equalsIgnoreCase(param.substring(0, eq).trim())) {
+                    continue;
+                }
+
+                try {
+                    quality = Float.parseFloat(param.substring(eq + 1).trim());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+
+                if (quality < 0 || quality > 1) {
+                    return null;
+                }
+            }
+
+            return new MediaRange(type, subtype, quality, index);
+        }
+
+        /**
+         * @param type    media type, ex: application
+         * @param subtype media subtype, ex: json
+         * @return true if this range includes given media type
+         */
+        public boolean matches(String type, String subtype) {
+            if (specificity == 0) {
+                return true;
+            }
+
+            if (!this.type.equalsIgnoreCase(type)) {
+                return false;
+            }
+
+            return specificity == 1 || WILDCARD.equals(subtype) || this.subtype.equalsIgnoreCase(subtype);
+        }
+
+        public boolean isWildcard() {
+            return specificity == 0;
+        }
+
+        public boolean isAcceptable() {
+            return quality > 0;
+        }
+
+        /**
+         * compare two matched ranges to choose one that client prefers:
+         * higher quality first, then more specific and then earlier in the header
+         *
+         * @param other matched range for another media type
+         * @return true if this range is preferred over other one
+         */
+        public boolean isPreferredOver(MediaRange other) {
+            if (quality != other.quality) {
+                return quality > other.quality;
+            }
+
+            if (specificity != other.specificity) {
+                return specificity > other.specificity;
+            }
+
+            return index < other.index;
+        }
+
+        @Override
+        public int compareTo(MediaRange other) {
+            if (specificity != other.specificity) {
+                return other.specificity - specificity;
+            }
+
+            return index - other.index;
+        }
+
+        @Override
+        public String toString() {
+            return type + "/" + subtype + ";q=" + quality;
+        }
+    }
+}
@@ -23,7 +23,17 @@ import java.util.Map;
 import static java.util.Arrays.asList;
 
 public enum ContentEncoding {
-    GZIP, DEFLATE;
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    /**
+     * content-coding name, RFC 7231 Section 3.1.2.1
+     */
+    public final String code;
+
+    ContentEncoding(String code) {
+        this.code = code;
+    }
 
     private static final Map<String, ContentEncoding> MAPPING = new HashMap<>();
 
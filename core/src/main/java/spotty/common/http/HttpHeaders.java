@@ -15,12 +15,26 @@
  */
 package spotty.common.http;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.BiConsumer;
 
+import static java.util.Collections.emptyList;
 import static spotty.common.validation.Validation.isNull;
+import static spotty.common.validation.Validation.notNull;
 
+/**
+ * Ordered, multi-valued http headers.
+ *
+ * <p>Headers are kept in flat arrays of entries, well-known header names (constants of this class)
+ * are interned to ids and have a direct slot to their first entry, custom headers are found by a linear scan,
+ * that is cheap for the usual amount of headers. The instance is reused between keep-alive requests by {@link #clear()}
+ * that does not release the arrays.</p>
+ */
 public final class HttpHeaders {
     /**
      * RFC 2616 (HTTP/1.1) Section 14.1
@@ -303,35 +317,133 @@ public final class HttpHeaders {
 
     public static final String SPOTTY_SESSION_ID = "SSID";
 
-    private final Map<String, String> headers = new HashMap<>();
+    private static final String[] KNOWN_NAMES = {
+        ACCEPT, ACCEPT_CHARSET, ACCEPT_ENCODING, ACCEPT_LANGUAGE, ACCEPT_RANGES, AGE, ALLOW, AUTHORIZATION,
+        CACHE_CONTROL, CONNECTION, CONTENT_ENCODING, CONTENT_LANGUAGE, CONTENT_LENGTH, CONTENT_LOCATION,
+        CONTENT_MD5, CONTENT_RANGE, CONTENT_TYPE, DATE, DAV, DEPTH, DESTINATION, ETAG, EXPECT, EXPIRES, FROM,
+        HOST, IF, IF_MATCH, IF_MODIFIED_SINCE, IF_NONE_MATCH, IF_RANGE, IF_UNMODIFIED_SINCE, LAST_MODIFIED,
+        LOCATION, LOCK_TOKEN, MAX_FORWARDS, OVERWRITE, PRAGMA, PROXY_AUTHENTICATE, PROXY_AUTHORIZATION, RANGE,
+        REFERER, RETRY_AFTER, SERVER, STATUS_URI, TE, TIMEOUT, TRAILER, TRANSFER_ENCODING, UPGRADE, USER_AGENT,
+        VARY, VIA, WARNING, WWW_AUTHENTICATE, COOKIE, SET_COOKIE
+    };
+
+    private static final Map<String, Integer> KNOWN_IDS = new HashMap<>();
+
+    // known names grouped by length, to intern a name from a raw header line without allocation
+    private static final String[][] KNOWN_NAMES_BY_LENGTH;
+
+    static {
+        int maxLength = 0;
+        for (int id = 0; id < KNOWN_NAMES.length; id++) {
+            KNOWN_IDS.put(KNOWN_NAMES[id], id);
+            maxLength = Math.max(maxLength, KNOWN_NAMES[id].length());
+        }
+
+        KNOWN_NAMES_BY_LENGTH = new String[maxLength + 1][];
+        for (int length = 0; length <= maxLength; length++) {
+            final int nameLength = length;
+            KNOWN_NAMES_BY_LENGTH[length] = Arrays.stream(KNOWN_NAMES)
+                .filter(name -> name.length() == nameLength)
+                .toArray(String[]::new);
+        }
+    }
+
+    private static final int UNKNOWN = -1;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // index + 1 of the first entry for every known header, 0 when header is absent
+    private final int[] slots = new int[KNOWN_NAMES.length];
+
+    private int[] ids = new int[DEFAULT_CAPACITY];
+    private String[] names = new String[DEFAULT_CAPACITY];
+    private String[] values = new String[DEFAULT_CAPACITY];
+    private int size = 0;
 
     public HttpHeaders() {
     }
 
     public HttpHeaders(HttpHeaders headers) {
-        this.headers.putAll(headers.headers);
+        add(headers);
     }
 
     /**
-     * add header
+     * normalize header name from the part of raw header line,
+     * well-known names are matched case-insensitively and returned as interned constants without allocation,
+     * other names are lower-cased
+     *
+     * @param source raw header line
+     * @param start  start index of header name inclusive
+     * @param end    end index of header name exclusive
+     * @return lower-cased header name
+     */
+    public static String normalizeName(String source, int start, int end) {
+        final int length = end - start;
+        if (length < KNOWN_NAMES_BY_LENGTH.length) {
+            for (String name : KNOWN_NAMES_BY_LENGTH[length]) {
+                if (source.regionMatches(true, start, name, 0, length)) {
+                    return name;
+                }
+            }
+        }
+
+        return source.substring(start, end).toLowerCase();
+    }
+
+    /**
+     * add header, replaces all previous values of the header
      *
      * @param name  header name
      * @param value header value
      * @return this instance of headers
      */
     public HttpHeaders add(String name, String value) {
-        headers.put(name, value);
+        notNull("name", name);
+
+        final int id = id(name);
+        final int index = indexOf(id, name);
+        if (index == -1) {
+            append(id, name, value);
+        } else {
+            values[index] = value;
+            removeAll(id, name, index + 1);
+        }
+
         return this;
     }
 
     /**
-     * add a bunch of headers
+     * append one more value of header, previous values are kept
+     *
+     * @param name  header name
+     * @param value header value
+     * @return this instance of headers
+     */
+    public HttpHeaders append(String name, String value) {
+        notNull("name", name);
+
+        append(id(name), name, value);
+        return this;
+    }
+
+    /**
+     * add a bunch of headers, replaces all previous values of the added headers
      *
      * @param headers bunch of headers
      * @return this instance of headers
      */
     public HttpHeaders add(HttpHeaders headers) {
-        this.headers.putAll(headers.headers);
+        if (headers == this) {
+            return this;
+        }
+
+        for (int i = 0; i < headers.size; i++) {
+            removeAll(headers.ids[i], headers.names[i], 0);
+        }
+
+        for (int i = 0; i < headers.size; i++) {
+            append(headers.ids[i], headers.names[i], headers.values[i]);
+        }
+
         return this;
     }
 
@@ -342,29 +454,62 @@ public final class HttpHeaders {
      * @return this instance of headers
      */
     public HttpHeaders add(Map<String, String> headers) {
-        this.headers.putAll(headers);
+        headers.forEach(this::add);
         return this;
     }
 
     /**
-     * Returns the header by specified name, or {@code null} if no header for the name.
+     * Returns the first header value by specified name, or {@code null} if no header for the name.
      *
      * @param name header name
      * @return header value or {@code null} if no header for the name
      */
     public String get(String name) {
-        return headers.get(name);
+        final int index = indexOf(id(name), name);
+        return index == -1 ? null : values[index];
+    }
+
+    /**
+     * Returns all values of the header by specified name in order they were added
+     *
+     * @param name header name
+     * @return header values or empty list if no header for the name
+     */
+    public List<String> getAll(String name) {
+        final int id = id(name);
+        int index = indexOf(id, name);
+        if (index == -1) {
+            return emptyList();
+        }
+
+        final List<String> result = new ArrayList<>(2);
+        for (; index < size; index++) {
+            if (matches(index, id, name)) {
+                result.add(values[index]);
+            }
+        }
+
+        return result;
     }
 
     /**
-     * remove header by name
+     * remove header by name with all its values
      *
      * @param name header name
-     * @return the previous header value associated with name, or
+     * @return the first header value associated with name, or
      * null if there was no header for given name.
      */
     public String remove(String name) {
-        return headers.remove(name);
+        final int id = id(name);
+        final int index = indexOf(id, name);
+        if (index == -1) {
+            return null;
+        }
+
+        final String value = values[index];
+        removeAll(id, name, index);
+
+        return value;
     }
 
     /**
@@ -374,7 +519,7 @@ public final class HttpHeaders {
      * @return true if this HttpHeaders contains a header for the specified name.
      */
     public boolean has(String name) {
-        return headers.containsKey(name);
+        return indexOf(id(name), name) != -1;
     }
 
     /**
@@ -384,7 +529,7 @@ public final class HttpHeaders {
      * @return true if this HttpHeaders contains no header for the specified name.
      */
     public boolean hasNot(String name) {
-        return !headers.containsKey(name);
+        return !has(name);
     }
 
     /**
@@ -395,7 +540,7 @@ public final class HttpHeaders {
      * @return true if this HttpHeaders contains a header for the specified name and header value is equal with given.
      */
     public boolean hasAndEqual(String name, String value) {
-        final String header = headers.get(name);
+        final String header = get(name);
         if (isNull(header)) {
             return false;
         }
@@ -404,12 +549,12 @@ public final class HttpHeaders {
     }
 
     /**
-     * Returns the number of headers in this HttpHeaders
+     * Returns the number of header values in this HttpHeaders
      *
-     * @return the number of headers in this HttpHeaders
+     * @return the number of header values in this HttpHeaders
      */
     public int size() {
-        return headers.size();
+        return size;
     }
 
     /**
@@ -418,7 +563,7 @@ public final class HttpHeaders {
      * @return true if this HttpHeaders contains no headers
      */
     public boolean isEmpty() {
-        return headers.isEmpty();
+        return size == 0;
     }
 
     /**
@@ -427,24 +572,29 @@ public final class HttpHeaders {
      * @return true if this HttpHeaders contains headers
      */
     public boolean isNotEmpty() {
-        return headers.size() > 0;
+        return size > 0;
     }
 
     /**
-     * Performs the given action for each header until all entries
-     * have been processed or the action throws an exception.
+     * Performs the given action for each header value in order they were added
+     * until all entries have been processed or the action throws an exception.
      *
      * @param action The action to be performed for each header
      */
     public void forEach(BiConsumer<String, String> action) {
-        headers.forEach(action);
+        for (int i = 0; i < size; i++) {
+            action.accept(names[i], values[i]);
+        }
     }
 
     /**
-     * remove all headers
+     * remove all headers, allocated space is kept for the next usage
      */
     public void clear() {
-        headers.clear();
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        Arrays.fill(slots, 0);
+        size = 0;
     }
 
     /**
@@ -459,7 +609,7 @@ public final class HttpHeaders {
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
-        headers.forEach((name, value) -> {
+        forEach((name, value) -> {
             sb.append(name);
             sb.append(": ");
             sb.append(value);
@@ -471,7 +621,12 @@ public final class HttpHeaders {
 
     @Override
     public int hashCode() {
-        return headers.hashCode();
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            hash += names[i].hashCode() ^ Objects.hashCode(values[i]);
+        }
+
+        return hash;
     }
 
     @Override
@@ -480,6 +635,96 @@ public final class HttpHeaders {
         if (o == null || getClass() != o.getClass()) return false;
         final HttpHeaders that = (HttpHeaders) o;
 
-        return headers.equals(that.headers);
+        if (size != that.size) {
+            return false;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (!getAll(names[i]).equals(that.getAll(names[i]))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int id(String name) {
+        if (name == null) {
+            return UNKNOWN;
+        }
+
+        final Integer id = KNOWN_IDS.get(name);
+        return id == null ? UNKNOWN : id;
+    }
+
+    private int indexOf(int id, String name) {
+        if (id != UNKNOWN) {
+            return slots[id] - 1;
+        }
+
+        if (name == null) {
+            return -1;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (matches(i, id, name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean matches(int index, int id, String name) {
+        return ids[index] == id && (id != UNKNOWN || names[index].equals(name));
+    }
+
+    private void append(int id, String name, String value) {
+        if (size == names.length) {
+            final int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        ids[size] = id;
+        names[size] = id == UNKNOWN ? name : KNOWN_NAMES[id];
+        values[size] = value;
+
+        if (id != UNKNOWN && slots[id] == 0) {
+            slots[id] = size + 1;
+        }
+
+        size++;
+    }
+
+    private void removeAll(int id, String name, int from) {
+        int to = from;
+        for (int i = from; i < size; i++) {
+            if (matches(i, id, name)) {
+                continue;
+            }
+
+            ids[to] = ids[i];
+            names[to] = names[i];
+            values[to] = values[i];
+            to++;
+        }
+
+        if (to == size) {
+            return;
+        }
+
+        Arrays.fill(names, to, size, null);
+        Arrays.fill(values, to, size, null);
+        size = to;
+
+        // entries were shifted, so rebuild slots of known headers
+        Arrays.fill(slots, 0);
+        for (int i = 0; i < size; i++) {
+            if (ids[i] != UNKNOWN && slots[ids[i]] == 0) {
+                slots[ids[i]] = i + 1;
+            }
+        }
     }
 }
@@ -23,6 +23,7 @@ import spotty.common.request.params.QueryParams;
 import spotty.common.session.Session;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -47,6 +48,7 @@ public final class SpottyDefaultRequest implements SpottyRequest {
     private IntSupplier port;
     private Map<String, String> cookies = emptyMap();
     private Session session;
+    private Supplier<Session> lazySession;
     private byte[] body;
     private Object attachment;
 
@@ -215,6 +217,11 @@ public final class SpottyDefaultRequest implements SpottyRequest {
         return queryParams.param(name);
     }
 
+    @Override
+    public List<String> queryParamValues(String name) {
+        return queryParams.values(name);
+    }
+
     @Override
     public void attach(Object attachment) {
         this.attachment = attachment;
@@ -227,11 +234,37 @@ public final class SpottyDefaultRequest implements SpottyRequest {
 
     public SpottyDefaultRequest session(Session session) {
         this.session = notNull("session", session);
+        this.lazySession = null;
+        return this;
+    }
+
+    /**
+     * set session that is created on the first call of {@link #session()},
+     * so requests that do not use session do not create it
+     *
+     * @param lazySession session supplier
+     * @return this request
+     */
+    public SpottyDefaultRequest lazySession(Supplier<Session> lazySession) {
+        this.session = null;
+        this.lazySession = notNull("lazySession", lazySession);
         return this;
     }
 
+    /**
+     * @return true if session has been created for this request already
+     */
+    public boolean isSessionLoaded() {
+        return session != null;
+    }
+
     @Override
     public Session session() {
+        if (session == null && lazySession != null) {
+            session = lazySession.get();
+            lazySession = null;
+        }
+
         return session;
     }
 
@@ -270,6 +303,7 @@ public final class SpottyDefaultRequest implements SpottyRequest {
         headers.clear();
         cookies = emptyMap();
         session = null;
+        lazySession = null;
     }
 
     @Override
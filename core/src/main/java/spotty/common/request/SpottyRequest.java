@@ -20,9 +20,13 @@ import spotty.common.http.HttpMethod;
 import spotty.common.http.HttpProtocol;
 import spotty.common.session.Session;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static java.util.Collections.emptyList;
+
 public interface SpottyRequest {
     /**
      * @return request protocol
@@ -117,6 +121,18 @@ public interface SpottyRequest {
      */
     String queryParam(String name);
 
+    /**
+     * default implementation is based on {@link #queryParams(String)}, so duplicates are not included,
+     * implementations should override it
+     *
+     * @param name query param name
+     * @return all query param values including duplicates in order of the query string
+     */
+    default List<String> queryParamValues(String name) {
+        final Set<String> values = queryParams(name);
+        return values == null ? emptyList() : new ArrayList<>(values);
+    }
+
     /**
      * set an attachment object (can be fetched in filters/routes later in the chain)
      * @param attachment attachment object
@@ -129,7 +145,8 @@ public interface SpottyRequest {
     Object attachment();
 
     /**
-     * Returns the current session associated with this request, or null if session disabled
+     * Returns the current session associated with this request, or null if session disabled.
+     * New session is not stored and its cookie is not sent until the first change of the session.
      *
      * @return the session associated with this request or <code>null</code> if session disabled
      */
@@ -15,79 +15,218 @@
  */
 package spotty.common.request.params;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableMap;
 import static java.util.Collections.unmodifiableSet;
-import static spotty.common.validation.Validation.isBlank;
+import static spotty.common.utils.UrlUtils.decode;
 
+/**
+ * Query string parameters, application/x-www-form-urlencoded.
+ * Query string is kept raw and parsed only on the first access, most of requests never read query params.
+ * Parameters are kept in order of the query string with all duplicated values,
+ * parameter without value (?flag) has empty value.
+ */
 public final class QueryParams {
-    public static final QueryParams EMPTY = new QueryParams();
-    private final Map<String, Set<String>> params = new HashMap<>();
+    public static final QueryParams EMPTY = new QueryParams(null, 0, 0);
 
-    private Map<String, Set<String>> immutableCopy;
+    private final String source;
+    private final int from;
+    private final int to;
 
-    private QueryParams() {
+    // parsed parameters: names and values of the same index, null until first access
+    private String[] names;
+    private String[] values;
+    private int size;
+
+    private Map<String, Set<String>> immutableCopy;
 
+    private QueryParams(String source, int from, int to) {
+        this.source = source;
+        this.from = from;
+        this.to = to;
     }
 
+    /**
+     * @param query raw query string without '?'
+     * @return query params that are parsed lazily
+     */
     public static QueryParams parse(String query) {
-        if (isBlank(query)) {
+        if (query == null) {
             return EMPTY;
         }
 
-        final QueryParams queryParams = new QueryParams();
-        final String[] pairs = query.split("&");
-        for (final String pair : pairs) {
-            final String[] parts = pair.split("=");
+        return parse(query, 0, query.length());
+    }
 
-            queryParams.add(parts[0], parts[1]);
+    /**
+     * @param source string that contains raw query string, ex: request target
+     * @param from   start index of query string, inclusive
+     * @param to     end index of query string, exclusive
+     * @return query params that are parsed lazily
+     */
+    public static QueryParams parse(String source, int from, int to) {
+        if (source == null || from >= to) {
+            return EMPTY;
         }
 
-        return queryParams;
+        return new QueryParams(source, from, to);
     }
 
+    /**
+     * @param name param name
+     * @return first value of the param or null if there is no such param
+     */
     public String param(String name) {
-        final Set<String> values = params.get(name);
-        if (values == null) {
-            return null;
+        parseIfRequired();
+
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                return values[i];
+            }
         }
 
-        return values.iterator().next();
+        return null;
     }
 
+    /**
+     * @return param names in order of the query string
+     */
     public Set<String> params() {
-        return unmodifiableSet(params.keySet());
+        parseIfRequired();
+
+        final Set<String> params = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            params.add(names[i]);
+        }
+
+        return unmodifiableSet(params);
     }
 
+    /**
+     * @param name param name
+     * @return unique values of the param in order of the query string
+     */
     public Set<String> params(String name) {
-        return unmodifiableSet(params.get(name));
+        parseIfRequired();
+
+        Set<String> params = null;
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                if (params == null) {
+                    params = new LinkedHashSet<>();
+                }
+
+                params.add(values[i]);
+            }
+        }
+
+        return params == null ? emptySet() : unmodifiableSet(params);
+    }
+
+    /**
+     * @param name param name
+     * @return all values of the param including duplicates in order of the query string
+     */
+    public List<String> values(String name) {
+        parseIfRequired();
+
+        List<String> result = null;
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                if (result == null) {
+                    result = new ArrayList<>(2);
+                }
+
+                result.add(values[i]);
+            }
+        }
+
+        return result == null ? emptyList() : unmodifiableList(result);
     }
 
     public Map<String, Set<String>> paramsMap() {
         if (immutableCopy == null) {
-            immutableCopy = deepCopy(params);
+            parseIfRequired();
+
+            final Map<String, Set<String>> copy = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                copy.computeIfAbsent(names[i], __ -> new LinkedHashSet<>()).add(values[i]);
+            }
+
+            copy.replaceAll((name, values) -> unmodifiableSet(values));
+            immutableCopy = unmodifiableMap(copy);
         }
 
         return immutableCopy;
     }
 
-    private void add(String name, String value) {
-        params.computeIfAbsent(name, __ -> new HashSet<>())
-            .add(value);
+    public int size() {
+        parseIfRequired();
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
     }
 
-    private Map<String, Set<String>> deepCopy(Map<String, Set<String>> map) {
-        final Map<String, Set<String>> copy = new HashMap<>();
-        map.forEach((name, value) ->
-            copy.put(name, unmodifiableSet(value))
-        );
+    private void parseIfRequired() {
+        if (names != null) {
+            return;
+        }
+
+        String[] names = new String[4];
+        String[] values = new String[4];
+        int size = 0;
+
+        int start = from;
+        while (start < to) {
+            int end = start;
+            int eq = -1;
+            while (end < to) {
+                final char c = source.charAt(end);
+                if (c == '&') {
+                    break;
+                }
+
+                if (c == '=' && eq == -1) {
+                    eq = end;
+                }
+
+                end++;
+            }
+
+            if (eq == -1) {
+                eq = end;
+            }
+
+            // skip empty pairs like "a=1&&b=2" and pairs without name
+            if (eq > start) {
+                if (size == names.length) {
+                    names = Arrays.copyOf(names, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+
+                names[size] = decode(source, start, eq, true);
+                values[size] = eq < end ? decode(source, eq + 1, end, true) : "";
+                size++;
+            }
+
+            start = end + 1;
+        }
 
-        return unmodifiableMap(copy);
+        this.values = values;
+        this.size = size;
+        this.names = names;
     }
 
     @Override
@@ -95,16 +234,16 @@ public final class QueryParams {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         final QueryParams that = (QueryParams) o;
-        return Objects.equals(params, that.params);
+        return paramsMap().equals(that.paramsMap());
     }
 
     @Override
     public int hashCode() {
-        return params.hashCode();
+        return paramsMap().hashCode();
     }
 
     @Override
     public String toString() {
-        return params.toString();
+        return paramsMap().toString();
     }
 }
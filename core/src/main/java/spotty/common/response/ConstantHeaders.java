@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.common.response;
+
+import spotty.common.http.HttpHeaders;
+import spotty.common.stream.output.SpottyByteArrayOutputStream;
+import spotty.common.stream.output.SpottyFixedByteOutputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static spotty.common.http.HttpHeaders.DATE;
+import static spotty.common.validation.Validation.notNull;
+
+/**
+ * Response headers that are the same for every response (ex: server or security headers).
+ * They are serialised once and written to every response as a single byte block,
+ * a header that is set on the response itself takes precedence over the constant one.
+ *
+ * <p>Optionally carries {@link DateHeader}, which is written first, since its value changes once per second.</p>
+ */
+public final class ConstantHeaders {
+    public static final ConstantHeaders EMPTY = new ConstantHeaders(new HttpHeaders());
+
+    private final String[] names;
+    private final byte[][] lines;
+    private final byte[] block;
+    private final DateHeader dateHeader;
+
+    public ConstantHeaders(HttpHeaders headers) {
+        this(headers, null);
+    }
+
+    /**
+     * @param headers    constant headers
+     * @param dateHeader date header or null to not send it
+     */
+    public ConstantHeaders(HttpHeaders headers, DateHeader dateHeader) {
+        notNull("headers", headers);
+
+        final List<String> names = new ArrayList<>();
+        final List<byte[]> lines = new ArrayList<>();
+        final SpottyByteArrayOutputStream all = new SpottyByteArrayOutputStream();
+        headers.forEach((name, value) -> {
+            final SpottyByteArrayOutputStream line = new SpottyByteArrayOutputStream(64);
+            ResponseHeadersWriter.writeHeader(line, name, value);
+
+            names.add(name);
+            lines.add(line.toByteArray());
+            all.write(line.toByteArray());
+        });
+
+        this.names = names.toArray(new String[0]);
+        this.lines = lines.toArray(new byte[0][]);
+        this.block = all.toByteArray();
+        this.dateHeader = dateHeader;
+    }
+
+    public boolean isEmpty() {
+        return names.length == 0 && dateHeader == null;
+    }
+
+    /**
+     * write constant headers, skip the ones that response defines by itself
+     *
+     * @param writer          output stream
+     * @param responseHeaders headers of the current response
+     */
+    void writeTo(SpottyFixedByteOutputStream writer, HttpHeaders responseHeaders) {
+        if (dateHeader != null && responseHeaders.hasNot(DATE)) {
+            writer.write(dateHeader.line());
+        }
+
+        if (names.length == 0) {
+            return;
+        }
+
+        if (responseHeaders.isEmpty() || !overridden(responseHeaders)) {
+            writer.write(block);
+            return;
+        }
+
+        for (int i = 0; i < names.length; i++) {
+            if (responseHeaders.hasNot(names[i])) {
+                writer.write(lines[i]);
+            }
+        }
+    }
+
+    private boolean overridden(HttpHeaders responseHeaders) {
+        for (String name : names) {
+            if (responseHeaders.has(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.common.response;
+
+import com.google.common.annotations.VisibleForTesting;
+import spotty.common.stream.output.SpottyByteArrayOutputStream;
+
+import java.time.Clock;
+import java.time.Instant;
+
+import static java.time.ZoneOffset.UTC;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static spotty.common.http.HttpHeaders.DATE;
+import static spotty.common.validation.Validation.notNull;
+
+/**
+ * Date response header, RFC 7231 Section 7.1.1.2.
+ * The date has a precision of one second, so the encoded header line is regenerated
+ * at most once per second on the first response of the next second and shared by all connections.
+ */
+public final class DateHeader {
+    private final Clock clock;
+    private volatile Line current;
+
+    public DateHeader() {
+        this(Clock.systemUTC());
+    }
+
+    @VisibleForTesting
+    DateHeader(Clock clock) {
+        this.clock = notNull("clock", clock);
+    }
+
+    /**
+     * @return encoded "date: ..." header line for the current second
+     */
+    public byte[] line() {
+        final long second = clock.millis() / 1000;
+
+        Line line = current;
+        if (line == null || line.second != second) {
+            // several threads can encode the same second concurrently, it is cheaper than a lock
+            current = line = new Line(second);
+        }
+
+        return line.bytes;
+    }
+
+    private static final class Line {
+        private final long second;
+        private final byte[] bytes;
+
+        private Line(long second) {
+            final SpottyByteArrayOutputStream line = new SpottyByteArrayOutputStream(64);
+            ResponseHeadersWriter.writeHeader(line, DATE, RFC_1123_DATE_TIME.format(Instant.ofEpochSecond(second).atZone(UTC)));
+
+            this.second = second;
+            this.bytes = line.toByteArray();
+        }
+    }
+}
@@ -16,42 +16,122 @@
 package spotty.common.response;
 
 import spotty.common.http.HttpHeaders;
+import spotty.common.http.HttpProtocol;
+import spotty.common.http.HttpStatus;
 import spotty.common.stream.output.SpottyByteArrayOutputStream;
+import spotty.common.stream.output.SpottyFixedByteOutputStream;
+
+import java.util.HashMap;
+import java.util.Map;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static spotty.common.http.HttpHeaders.ACCEPT_RANGES;
+import static spotty.common.http.HttpHeaders.AGE;
+import static spotty.common.http.HttpHeaders.ALLOW;
+import static spotty.common.http.HttpHeaders.CACHE_CONTROL;
+import static spotty.common.http.HttpHeaders.CONNECTION;
+import static spotty.common.http.HttpHeaders.CONTENT_ENCODING;
+import static spotty.common.http.HttpHeaders.CONTENT_LANGUAGE;
+import static spotty.common.http.HttpHeaders.CONTENT_LOCATION;
+import static spotty.common.http.HttpHeaders.CONTENT_RANGE;
+import static spotty.common.http.HttpHeaders.DATE;
+import static spotty.common.http.HttpHeaders.ETAG;
+import static spotty.common.http.HttpHeaders.EXPIRES;
+import static spotty.common.http.HttpHeaders.LAST_MODIFIED;
+import static spotty.common.http.HttpHeaders.LOCATION;
+import static spotty.common.http.HttpHeaders.PRAGMA;
+import static spotty.common.http.HttpHeaders.RETRY_AFTER;
+import static spotty.common.http.HttpHeaders.SERVER;
+import static spotty.common.http.HttpHeaders.TRANSFER_ENCODING;
+import static spotty.common.http.HttpHeaders.VARY;
+import static spotty.common.http.HttpHeaders.WWW_AUTHENTICATE;
 
+/**
+ * Writes response head. Everything that is known upfront is pre-encoded:
+ * status line per protocol and status, names of response headers and constant headers,
+ * numbers and ASCII values are written straight to the buffer without intermediate strings.
+ */
 public final class ResponseHeadersWriter {
     private static final byte[] HEADER_SPLITTER = ": ".getBytes(UTF_8);
-    private static final byte[] SPACE = " ".getBytes(UTF_8);
-    private static final byte[] CONTENT_LENGTH = HttpHeaders.CONTENT_LENGTH.getBytes(UTF_8);
-    private static final byte[] CONTENT_TYPE = HttpHeaders.CONTENT_TYPE.getBytes(UTF_8);
-    private static final byte[] SET_COOKIE = HttpHeaders.SET_COOKIE.getBytes(UTF_8);
+    private static final byte[] CONTENT_LENGTH = header(HttpHeaders.CONTENT_LENGTH);
+    private static final byte[] CONTENT_TYPE = header(HttpHeaders.CONTENT_TYPE);
+    private static final byte[] SET_COOKIE = header(HttpHeaders.SET_COOKIE);
+
+    // [protocol][status] -> "HTTP/1.1 200 OK" line
+    private static final byte[][][] STATUS_LINES = new byte[HttpProtocol.values().length][HttpStatus.values().length][];
+
+    // pre-encoded "name: " of headers that are usually sent by the server
+    private static final Map<String, byte[]> HEADER_NAMES = new HashMap<>();
+
+    static {
+        for (HttpProtocol protocol : HttpProtocol.values()) {
+            for (HttpStatus status : HttpStatus.values()) {
+                final SpottyByteArrayOutputStream line = new SpottyByteArrayOutputStream(64);
+                line.print(protocol.code);
+                line.write(' ');
+                line.print(status.toString());
+                line.println();
+
+                STATUS_LINES[protocol.ordinal()][status.ordinal()] = line.toByteArray();
+            }
+        }
+
+        final String[] names = {
+            ACCEPT_RANGES, AGE, ALLOW, CACHE_CONTROL, CONNECTION, CONTENT_ENCODING, CONTENT_LANGUAGE,
+            CONTENT_LOCATION, CONTENT_RANGE, DATE, ETAG, EXPIRES, LAST_MODIFIED, LOCATION, PRAGMA,
+            RETRY_AFTER, SERVER, TRANSFER_ENCODING, VARY, WWW_AUTHENTICATE
+        };
+
+        for (String name : names) {
+            HEADER_NAMES.put(name, header(name));
+        }
+    }
 
     public static void write(SpottyByteArrayOutputStream writer, SpottyResponse response) {
-        writer.print(response.protocol().code); writer.write(SPACE); writer.print(response.status().toString());
-        writer.println();
+        write(writer, response, ConstantHeaders.EMPTY);
+    }
 
-        writer.write(CONTENT_LENGTH); writer.write(HEADER_SPLITTER); writer.print(Integer.toString(response.contentLength()));
-        writer.println();
+    public static void write(SpottyByteArrayOutputStream writer, SpottyResponse response, ConstantHeaders constantHeaders) {
+        writer.write(STATUS_LINES[response.protocol().ordinal()][response.status().ordinal()]);
+
+        if (response.contentLength() >= 0) {
+            writer.write(CONTENT_LENGTH); writer.print(response.contentLength());
+            writer.println();
+        }
 
         if (response.contentType() != null) {
-            writer.write(CONTENT_TYPE); writer.write(HEADER_SPLITTER); writer.print(response.contentType());
+            writer.write(CONTENT_TYPE); writer.print(response.contentType());
             writer.println();
         }
 
+        constantHeaders.writeTo(writer, response.headers());
+
         response.headers()
-            .forEach((name, value) -> {
-                writer.print(name); writer.write(HEADER_SPLITTER); writer.print(value);
-                writer.println();
-            });
+            .forEach((name, value) -> writeHeader(writer, name, value));
 
         response.cookies()
             .forEach(cookie -> {
-                writer.write(SET_COOKIE); writer.write(HEADER_SPLITTER); writer.print(cookie.toString());
+                writer.write(SET_COOKIE); writer.print(cookie.toString());
                 writer.println();
             });
 
         writer.println();
     }
 
+    static void writeHeader(SpottyFixedByteOutputStream writer, String name, String value) {
+        final byte[] header = HEADER_NAMES.get(name);
+        if (header != null) {
+            writer.write(header);
+        } else {
+            writer.print(name); writer.write(HEADER_SPLITTER);
+        }
+
+        writer.print(value);
+        writer.println();
+    }
+
+    private static byte[] header(String name) {
+        return (name + ": ").getBytes(UTF_8);
+    }
+
 }
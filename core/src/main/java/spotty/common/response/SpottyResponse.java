@@ -17,10 +17,12 @@ package spotty.common.response;
 
 import spotty.common.cookie.Cookie;
 import spotty.common.exception.SpottyHttpException;
+import spotty.common.http.ContentEncoding;
 import spotty.common.http.HttpHeaders;
 import spotty.common.http.HttpProtocol;
 import spotty.common.http.HttpStatus;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -31,6 +33,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.emptyList;
 import static spotty.common.http.ConnectionValue.CLOSE;
 import static spotty.common.http.HttpHeaders.CONNECTION;
+import static spotty.common.http.HttpHeaders.CONTENT_ENCODING;
 import static spotty.common.http.HttpHeaders.LOCATION;
 import static spotty.common.http.HttpProtocol.HTTP_1_1;
 import static spotty.common.http.HttpStatus.MOVED_PERMANENTLY;
@@ -47,6 +50,15 @@ public final class SpottyResponse {
     private String contentType = DEFAULT_CONTENT_TYPE;
     private byte[] body;
 
+    // off-heap body that is written to the socket without copying, for example memory mapped file
+    private ByteBuffer bodyBuffer;
+
+    // length of the body that is not sent, for example in response to HEAD request
+    private int contentLength = 0;
+
+    // body is encoded already, for example precompressed static file
+    private boolean encoded = false;
+
     private List<Cookie> cookies = emptyList();
 
     private final HttpHeaders headers = new HttpHeaders();
@@ -127,14 +139,85 @@ public final class SpottyResponse {
      */
     public SpottyResponse body(byte[] body) {
         this.body = body;
+        this.bodyBuffer = null;
         return this;
     }
 
     /**
-     * @return content-length
+     * @return body as buffer or null if body is set as bytes array
+     */
+    public ByteBuffer bodyBuffer() {
+        return bodyBuffer;
+    }
+
+    /**
+     * Sets body from the buffer that is written to the socket without copying,
+     * for example memory mapped file. Remaining bytes of the buffer are the body,
+     * buffer is duplicated, so it can be shared between responses.
+     *
+     * @param body buffer with content
+     * @return Response object
+     */
+    public SpottyResponse body(ByteBuffer body) {
+        this.body = null;
+        this.bodyBuffer = body == null ? null : body.duplicate();
+        return this;
+    }
+
+    /**
+     * @return true if body is set as bytes array or buffer
+     */
+    public boolean hasBody() {
+        return body != null || bodyBuffer != null;
+    }
+
+    /**
+     * @return content-length, negative if it is unknown
      */
     public int contentLength() {
-        return body == null ? 0 : body.length;
+        if (body != null) {
+            return body.length;
+        }
+
+        if (bodyBuffer != null) {
+            return bodyBuffer.remaining();
+        }
+
+        return contentLength;
+    }
+
+    /**
+     * Sets content-length of the response without body, for example response to HEAD request.
+     * Is ignored when body is present.
+     *
+     * @param contentLength length of the body that would be sent, negative if it is unknown
+     * @return Response object
+     */
+    public SpottyResponse contentLength(int contentLength) {
+        this.contentLength = contentLength;
+        return this;
+    }
+
+    /**
+     * @return true when body is encoded already and must be sent as is
+     */
+    public boolean isEncoded() {
+        return encoded;
+    }
+
+    /**
+     * Marks body as encoded already with given content-encoding, for example precompressed static file,
+     * so server sends it as is and does not compress it again
+     *
+     * @param contentEncoding encoding of the body
+     * @return Response object
+     */
+    public SpottyResponse encoded(ContentEncoding contentEncoding) {
+        notNull("contentEncoding", contentEncoding);
+
+        this.headers.add(CONTENT_ENCODING, contentEncoding.code);
+        this.encoded = true;
+        return this;
     }
 
     /**
@@ -420,6 +503,9 @@ public final class SpottyResponse {
         status = OK;
         contentType = DEFAULT_CONTENT_TYPE;
         body = null;
+        bodyBuffer = null;
+        contentLength = 0;
+        encoded = false;
         headers.clear();
         cookies = emptyList();
     }
@@ -433,14 +519,17 @@ public final class SpottyResponse {
         return Objects.equals(protocol, that.protocol)
             && status == that.status
             && Objects.equals(contentType, that.contentType)
+            && contentLength == that.contentLength
+            && encoded == that.encoded
             && Arrays.equals(body, that.body)
+            && Objects.equals(bodyBuffer, that.bodyBuffer)
             && Objects.equals(cookies, that.cookies)
             && Objects.equals(headers, that.headers);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(protocol, status, contentType, cookies, headers);
+        int result = Objects.hash(protocol, status, contentType, contentLength, encoded, bodyBuffer, cookies, headers);
         result = 31 * result + Arrays.hashCode(body);
         return result;
     }
@@ -21,6 +21,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -36,6 +37,12 @@ public final class Session {
     public final UUID id;
     private Instant expires;
 
+    // called once on the first change of the new session that is not stored yet
+    private volatile Runnable firstChangeListener;
+
+    // session has been changed since the last save, so it must be stored, replicated or written to the cookie
+    private final AtomicBoolean modified = new AtomicBoolean();
+
     public Session() {
         this(randomUUID());
     }
@@ -59,6 +66,7 @@ public final class Session {
      */
     public Session expires(Instant expires) {
         this.expires = notNull("expires", expires);
+        changed();
         return this;
     }
 
@@ -72,11 +80,48 @@ public final class Session {
         validate(seconds > 0, "session ttl must be greater than zero");
 
         this.expires = Instant.now().plusSeconds(seconds);
+        changed();
         return this;
     }
 
     /**
-     * put data to the session
+     * mark session as transient: it is not stored until the first change,
+     * listener stores the session and sends its cookie
+     *
+     * @param firstChangeListener called once on the first change of the session
+     * @return this instance of session
+     */
+    public Session onFirstChange(Runnable firstChangeListener) {
+        this.firstChangeListener = notNull("firstChangeListener", firstChangeListener);
+        return this;
+    }
+
+    /**
+     * @return true if session is new and has not been changed, so it is not stored
+     */
+    public boolean isTransient() {
+        return firstChangeListener != null;
+    }
+
+    /**
+     * @return true if session has been changed since the last {@link #resetModified()}
+     */
+    public boolean isModified() {
+        return modified.get();
+    }
+
+    /**
+     * reset modification flag, e.g. when session has been saved
+     *
+     * @return true if session has been changed since the last reset
+     */
+    public boolean resetModified() {
+        return modified.getAndSet(false);
+    }
+
+    /**
+     * put data to the session, put is always a change even for the same value,
+     * so value that has been changed in place is saved when it is put back
      *
      * @param key   key with which the specified value is to be associated
      * @param value value to be associated with the specified key
@@ -84,6 +129,7 @@ public final class Session {
      */
     public Session put(Object key, Object value) {
         data.put(key, value);
+        changed();
         return this;
     }
 
@@ -97,7 +143,10 @@ public final class Session {
      * @return this instance of session
      */
     public Session putIfAbsent(Object key, Object value) {
-        data.putIfAbsent(key, value);
+        if (data.putIfAbsent(key, value) == null) {
+            changed();
+        }
+
         return this;
     }
 
@@ -118,7 +167,18 @@ public final class Session {
      */
     @SuppressWarnings("all")
     public <T> T computeIfAbsent(Object key, Function<Object, T> mapper) {
-        return (T) data.computeIfAbsent(key, mapper);
+        final boolean[] computed = {false};
+        final T value = (T) data.computeIfAbsent(key, k -> {
+            final T newValue = mapper.apply(k);
+            computed[0] = newValue != null;
+            return newValue;
+        });
+
+        if (computed[0]) {
+            changed();
+        }
+
+        return value;
     }
 
     /**
@@ -138,7 +198,18 @@ public final class Session {
      */
     @SuppressWarnings("all")
     public <T> T computeIfPresent(Object key, BiFunction<Object, T, T> mapper) {
-        return (T) data.computeIfPresent(key, (BiFunction) mapper);
+        final boolean[] modified = {false};
+        final T value = (T) data.computeIfPresent(key, (k, oldValue) -> {
+            final Object newValue = mapper.apply(k, (T) oldValue);
+            modified[0] = newValue != oldValue;
+            return newValue;
+        });
+
+        if (modified[0]) {
+            changed();
+        }
+
+        return value;
     }
 
     /**
@@ -159,7 +230,18 @@ public final class Session {
      */
     @SuppressWarnings("all")
     public <T> T compute(Object key, BiFunction<Object, T, T> mapper) {
-        return (T) data.compute(key, (BiFunction) mapper);
+        final boolean[] modified = {false};
+        final T value = (T) data.compute(key, (k, oldValue) -> {
+            final Object newValue = mapper.apply(k, (T) oldValue);
+            modified[0] = newValue != oldValue;
+            return newValue;
+        });
+
+        if (modified[0]) {
+            changed();
+        }
+
+        return value;
     }
 
     /**
@@ -169,7 +251,11 @@ public final class Session {
      * @return this instance of session
      */
     public Session putAll(Map<Object, Object> data) {
-        this.data.putAll(data);
+        if (!data.isEmpty()) {
+            this.data.putAll(data);
+            changed();
+        }
+
         return this;
     }
 
@@ -229,7 +315,10 @@ public final class Session {
      * @return this instance of session
      */
     public Session remove(Object key) {
-        data.remove(key);
+        if (data.remove(key) != null) {
+            changed();
+        }
+
         return this;
     }
 
@@ -239,7 +328,11 @@ public final class Session {
      * @return this instance of session
      */
     public Session clear() {
-        data.clear();
+        if (!data.isEmpty()) {
+            data.clear();
+            changed();
+        }
+
         return this;
     }
 
@@ -316,6 +409,26 @@ public final class Session {
         data.forEach(action);
     }
 
+    // called only when data was actually changed, otherwise transient session would be stored for nothing
+    private void changed() {
+        modified.set(true);
+
+        final Runnable listener = firstChangeListener;
+        if (listener == null) {
+            return;
+        }
+
+        synchronized (this) {
+            if (firstChangeListener == null) {
+                return;
+            }
+
+            firstChangeListener = null;
+        }
+
+        listener.run();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
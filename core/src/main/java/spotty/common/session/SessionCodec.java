@@ -0,0 +1,302 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.common.session;
+
+import spotty.common.exception.SpottyException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static spotty.common.validation.Validation.notNull;
+
+/**
+ * Compact binary encoding of {@link Session}: id, expiration and data.
+ * Common types (strings, numbers, booleans, bytes, uuids, instants) are written with one byte tag,
+ * other values must be {@link Serializable} and are written with java serialization.
+ */
+public final class SessionCodec {
+    private static final byte VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte FLOAT = 6;
+    private static final byte SHORT = 7;
+    private static final byte BYTE = 8;
+    private static final byte CHARACTER = 9;
+    private static final byte BYTES = 10;
+    private static final byte UUID_TYPE = 11;
+    private static final byte INSTANT = 12;
+    private static final byte SERIALIZABLE = 13;
+
+    private SessionCodec() {
+
+    }
+
+    /**
+     * @param session session to encode
+     * @return session in binary form
+     */
+    public static byte[] encode(Session session) {
+        notNull("session", session);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            encode(session, out);
+        } catch (IOException e) {
+            throw new SpottyException("session encoding error", e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * write session to the output
+     *
+     * @param session session to encode
+     * @param out     output to write
+     */
+    public static void encode(Session session, DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeLong(session.id.getMostSignificantBits());
+        out.writeLong(session.id.getLeastSignificantBits());
+        out.writeLong(session.expires() == null ? -1 : session.expires().toEpochMilli());
+
+        // session could be changed concurrently, so count must be taken from the same copy as entries
+        final List<Map.Entry<Object, Object>> entries = new ArrayList<>(session.entrySet());
+        writeVarInt(out, entries.size());
+        for (Map.Entry<Object, Object> entry : entries) {
+            writeValue(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    /**
+     * @param bytes session in binary form
+     * @return decoded session
+     */
+    public static Session decode(byte[] bytes) {
+        notNull("bytes", bytes);
+
+        try {
+            return decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new SpottyException("session decoding error", e);
+        }
+    }
+
+    /**
+     * read session from the input
+     *
+     * @param in input to read
+     * @return decoded session
+     */
+    public static Session decode(DataInput in) throws IOException {
+        final byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported session format version " + version);
+        }
+
+        final Session session = new Session(new UUID(in.readLong(), in.readLong()));
+        final long expires = in.readLong();
+        if (expires >= 0) {
+            session.expires(Instant.ofEpochMilli(expires));
+        }
+
+        final int size = readVarInt(in);
+        for (int i = 0; i < size; i++) {
+            final Object key = readValue(in);
+            final Object value = readValue(in);
+            if (key != null && value != null) {
+                session.put(key, value);
+            }
+        }
+
+        // decoded session is the same as its source
+        session.resetModified();
+
+        return session;
+    }
+
+    /**
+     * write single value with its type tag
+     */
+    public static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeBytes(out, ((String) value).getBytes(UTF_8));
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) value);
+        } else if (value instanceof UUID) {
+            out.writeByte(UUID_TYPE);
+            out.writeLong(((UUID) value).getMostSignificantBits());
+            out.writeLong(((UUID) value).getLeastSignificantBits());
+        } else if (value instanceof Instant) {
+            out.writeByte(INSTANT);
+            out.writeLong(((Instant) value).getEpochSecond());
+            out.writeInt(((Instant) value).getNano());
+        } else if (value instanceof Serializable) {
+            out.writeByte(SERIALIZABLE);
+            writeBytes(out, serialize(value));
+        } else {
+            throw new SpottyException("session value of %s is not serializable", value.getClass().getName());
+        }
+    }
+
+    /**
+     * read single value written by {@link #writeValue(DataOutput, Object)}
+     */
+    public static Object readValue(DataInput in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(in), UTF_8);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHARACTER:
+                return in.readChar();
+            case BYTES:
+                return readBytes(in);
+            case UUID_TYPE:
+                return new UUID(in.readLong(), in.readLong());
+            case INSTANT:
+                return Instant.ofEpochSecond(in.readLong(), in.readInt());
+            case SERIALIZABLE:
+                return deserialize(readBytes(in));
+            default:
+                throw new IOException("unknown session value type " + type);
+        }
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        final byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * write non-negative int with 1-5 bytes, small values take one byte
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.writeByte(value);
+    }
+
+    /**
+     * read int written by {@link #writeVarInt(DataOutput, int)}
+     */
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("negative length " + value);
+                }
+
+                return value;
+            }
+        }
+
+        throw new IOException("malformed var int");
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException {
+        try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
@@ -61,8 +61,55 @@ public class SpottyFixedByteOutputStream extends OutputStream {
         size += len;
     }
 
+    /**
+     * print text in UTF-8, ASCII characters are written directly to the buffer without intermediate byte array
+     *
+     * @param text text to print
+     */
     public void print(String text) {
-        write(text.getBytes(UTF_8));
+        final int length = text.length();
+        ensureCapacity(length);
+
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c >= 0x80) {
+                // not ASCII, encode the rest of the text
+                write(text.substring(i).getBytes(UTF_8));
+                return;
+            }
+
+            data[size++] = (byte) c;
+        }
+    }
+
+    /**
+     * print decimal representation of the number without intermediate string
+     *
+     * @param value number to print
+     */
+    public void print(int value) {
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) {
+                print(Integer.toString(value));
+                return;
+            }
+
+            write('-');
+            value = -value;
+        }
+
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+
+        ensureCapacity(digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            data[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+
+        size += digits;
     }
 
     public void println(String text) {
@@ -15,18 +15,21 @@
  */
 package spotty.common.utils;
 
-import spotty.common.exception.SpottyException;
 import spotty.common.exception.SpottyHttpException;
+import spotty.common.http.ContentEncoding;
+import spotty.common.http.HttpHeaders;
 import spotty.common.http.HttpMethod;
 
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
 
 import static java.util.Collections.unmodifiableMap;
+import static spotty.common.http.ContentEncoding.DEFLATE;
+import static spotty.common.http.ContentEncoding.GZIP;
 import static spotty.common.http.HttpHeaders.CONTENT_LENGTH;
+import static spotty.common.http.HttpHeaders.VARY;
 import static spotty.common.http.HttpStatus.BAD_REQUEST;
+import static spotty.common.http.HttpStatus.UNSUPPORTED_MEDIA_TYPE;
 
 public final class HeaderUtils {
 
@@ -38,6 +41,45 @@ public final class HeaderUtils {
         }
     }
 
+    /**
+     * parse content-encoding of request body
+     *
+     * @param contentEncoding content-encoding header value
+     * @return content encoding or null for identity
+     * @throws SpottyHttpException with 415 status when encoding is not supported
+     */
+    public static ContentEncoding parseContentEncoding(String contentEncoding) {
+        final String value = contentEncoding.trim();
+        if (value.isEmpty() || "identity".equalsIgnoreCase(value)) {
+            return null;
+        }
+
+        if (GZIP.code.equalsIgnoreCase(value) || "x-gzip".equalsIgnoreCase(value)) {
+            return GZIP;
+        }
+
+        if (DEFLATE.code.equalsIgnoreCase(value)) {
+            return DEFLATE;
+        }
+
+        throw new SpottyHttpException(UNSUPPORTED_MEDIA_TYPE, "unsupported content-encoding " + contentEncoding);
+    }
+
+    /**
+     * add header name to Vary header if it is not listed there yet
+     *
+     * @param headers    response headers
+     * @param headerName request header that response representation depends on
+     */
+    public static void appendVary(HttpHeaders headers, String headerName) {
+        final String vary = headers.get(VARY);
+        if (vary == null) {
+            headers.add(VARY, headerName);
+        } else if (!containsIgnoreCase(vary, headerName)) {
+            headers.add(VARY, vary + ", " + headerName);
+        }
+    }
+
     public static HttpMethod parseHttpMethod(String method) {
         final HttpMethod res = HttpMethod.resolve(method.toUpperCase());
         if (res == null) {
@@ -47,14 +89,6 @@ public final class HeaderUtils {
         return res;
     }
 
-    public static URI parseUri(String uri) {
-        try {
-            return new URI(uri);
-        } catch (URISyntaxException e) {
-            throw new SpottyException("invalid uri syntax %s", e, uri);
-        }
-    }
-
     public static Map<String, String> parseCookies(String cookiesString) {
         final Map<String, String> cookies = new HashMap<>();
         for (String cookie : cookiesString.split(";")) {
@@ -67,4 +101,14 @@ public final class HeaderUtils {
 
         return unmodifiableMap(cookies);
     }
+
+    private static boolean containsIgnoreCase(String value, String part) {
+        for (int i = 0; i <= value.length() - part.length(); i++) {
+            if (value.regionMatches(true, i, part, 0, part.length())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
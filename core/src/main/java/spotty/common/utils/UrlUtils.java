@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.common.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Decoding of request target parts: path and query string.
+ */
+public final class UrlUtils {
+
+    private UrlUtils() {
+
+    }
+
+    /**
+     * percent-decode part of the string, malformed escape sequences are kept as is
+     *
+     * @param source      string to decode
+     * @param from        start index, inclusive
+     * @param to          end index, exclusive
+     * @param plusAsSpace true to decode '+' as space like application/x-www-form-urlencoded does
+     * @return decoded string, the same substring when there is nothing to decode
+     */
+    public static String decode(String source, int from, int to, boolean plusAsSpace) {
+        int i = from;
+        while (i < to) {
+            final char c = source.charAt(i);
+            if (c == '%' || (plusAsSpace && c == '+')) {
+                break;
+            }
+
+            i++;
+        }
+
+        // nothing to decode, the most common case
+        if (i == to) {
+            return source.substring(from, to);
+        }
+
+        final StringBuilder sb = new StringBuilder(to - from);
+        sb.append(source, from, i);
+
+        byte[] bytes = null;
+        while (i < to) {
+            final char c = source.charAt(i);
+            if (c == '%' && isEscape(source, i, to)) {
+                // sequence of escaped bytes is decoded at once, one char could be encoded with several bytes
+                if (bytes == null) {
+                    bytes = new byte[(to - i) / 3];
+                }
+
+                int length = 0;
+                while (i < to && source.charAt(i) == '%' && isEscape(source, i, to)) {
+                    bytes[length++] = (byte) ((hex(source.charAt(i + 1)) << 4) + hex(source.charAt(i + 2)));
+                    i += 3;
+                }
+
+                sb.append(new String(bytes, 0, length, UTF_8));
+            } else if (c == '+' && plusAsSpace) {
+                sb.append(' ');
+                i++;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static boolean isEscape(String source, int index, int to) {
+        return index + 2 < to && hex(source.charAt(index + 1)) >= 0 && hex(source.charAt(index + 2)) >= 0;
+    }
+
+    private static int hex(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+
+        return -1;
+    }
+}
@@ -18,6 +18,8 @@ package spotty.server;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spotty.common.exception.SpottyException;
+import spotty.common.response.ConstantHeaders;
+import spotty.server.compress.Decompressor;
 import spotty.server.connection.Connection;
 import spotty.server.connection.socket.SocketFactory;
 import spotty.server.connection.socket.SpottySocket;
@@ -72,15 +74,30 @@ public final class Server implements Closeable {
     private final ServerEvents serverEvents = new ServerEvents();
 
     private final int maxRequestBodySize;
+    private final ConstantHeaders constantHeaders;
+    private final Decompressor decompressor;
     private final RequestHandler requestHandler;
     private final ExceptionHandlerRegistry exceptionHandlerRegistry;
     private final ReactorWorker reactorWorker;
     private final InetSocketAddress socketAddress;
 
     public Server(int port, int maxRequestBodySize, RequestHandler requestHandler, ExceptionHandlerRegistry exceptionHandlerRegistry, ReactorWorker reactorWorker) {
+        this(port, maxRequestBodySize, ConstantHeaders.EMPTY, requestHandler, exceptionHandlerRegistry, reactorWorker);
+    }
+
+    public Server(int port, int maxRequestBodySize, ConstantHeaders constantHeaders, RequestHandler requestHandler, ExceptionHandlerRegistry exceptionHandlerRegistry, ReactorWorker reactorWorker) {
+        this(port, maxRequestBodySize, constantHeaders, null, requestHandler, exceptionHandlerRegistry, reactorWorker);
+    }
+
+    /**
+     * @param decompressor inflates compressed request bodies, null to pass request bodies as is
+     */
+    public Server(int port, int maxRequestBodySize, ConstantHeaders constantHeaders, Decompressor decompressor, RequestHandler requestHandler, ExceptionHandlerRegistry exceptionHandlerRegistry, ReactorWorker reactorWorker) {
         validate(maxRequestBodySize > 0, "maximum request body size must be greater then 0");
 
         this.maxRequestBodySize = maxRequestBodySize;
+        this.constantHeaders = notNull("constantHeaders", constantHeaders);
+        this.decompressor = decompressor;
         this.requestHandler = notNull("requestHandler", requestHandler);
         this.exceptionHandlerRegistry = notNull("exceptionHandlerRegistry", exceptionHandlerRegistry);
         this.reactorWorker = notNull("reactorWorker", reactorWorker);
@@ -269,6 +286,8 @@ public final class Server implements Closeable {
             .reactorWorker(reactorWorker)
             .exceptionHandlerRegistry(exceptionHandlerRegistry)
             .maxRequestBodySize(maxRequestBodySize)
+            .constantHeaders(constantHeaders)
+            .decompressor(decompressor)
             .build();
 
         LOG.debug("{} accepted, count={}", connection, connections.incrementAndGet());
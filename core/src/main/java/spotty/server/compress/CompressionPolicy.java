@@ -0,0 +1,306 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.compress;
+
+import spotty.common.http.ContentEncoding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.zip.Deflater.BEST_COMPRESSION;
+import static java.util.zip.Deflater.DEFAULT_COMPRESSION;
+import static java.util.zip.Deflater.NO_COMPRESSION;
+import static spotty.common.http.ContentEncoding.DEFLATE;
+import static spotty.common.http.ContentEncoding.GZIP;
+import static spotty.common.validation.Validation.isBlank;
+import static spotty.common.validation.Validation.notNull;
+import static spotty.common.validation.Validation.validate;
+
+/**
+ * Server level compression policy: response body is compressed when client accepts gzip or deflate
+ * (Accept-Encoding with q-values, RFC 7231 Section 5.3.4), body is not smaller than minimum size
+ * and its content type is compressible. Responses that set Content-Encoding by themselves are not affected.
+ */
+public final class CompressionPolicy {
+    private static final int DEFAULT_MIN_SIZE = 1024;
+
+    private static final List<String> DEFAULT_COMPRESSIBLE_TYPES = unmodifiableList(asList(
+        "text/*",
+        "application/json",
+        "application/javascript",
+        "application/xml",
+        "application/xhtml+xml",
+        "application/rss+xml",
+        "application/atom+xml",
+        "application/x-www-form-urlencoded",
+        "image/svg+xml"
+    ));
+
+    // must be initialized after default types
+    public static final CompressionPolicy DISABLED = builder().enabled(false).build();
+
+    private static final String GZIP_CODING = "gzip";
+    private static final String DEFLATE_CODING = "deflate";
+    private static final String ANY_CODING = "*";
+
+    private final boolean enabled;
+    private final int minSize;
+    private final int level;
+    private final List<String> compressibleTypes;
+    private final List<String> excludedTypes;
+
+    private CompressionPolicy(Builder builder) {
+        validate(builder.minSize >= 0, "minSize must be >= 0");
+        validate(
+            builder.level == DEFAULT_COMPRESSION || (builder.level >= NO_COMPRESSION && builder.level <= BEST_COMPRESSION),
+            "invalid compression level %s", builder.level
+        );
+
+        this.enabled = builder.enabled;
+        this.minSize = builder.minSize;
+        this.level = builder.level;
+        this.compressibleTypes = unmodifiableList(new ArrayList<>(builder.compressibleTypes));
+        this.excludedTypes = unmodifiableList(new ArrayList<>(builder.excludedTypes));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int minSize() {
+        return minSize;
+    }
+
+    public int level() {
+        return level;
+    }
+
+    /**
+     * @param contentType response content type, parameters like charset are ignored
+     * @param bodySize    response body size
+     * @return true when response body is worth to compress, so it depends on client Accept-Encoding
+     */
+    public boolean isCompressible(String contentType, int bodySize) {
+        if (!enabled || bodySize < minSize || isBlank(contentType)) {
+            return false;
+        }
+
+        int end = contentType.indexOf(';');
+        if (end == -1) {
+            end = contentType.length();
+        }
+
+        final String mediaType = contentType.substring(0, end).trim();
+
+        return !matches(excludedTypes, mediaType) && matches(compressibleTypes, mediaType);
+    }
+
+    /**
+     * choose encoding by client Accept-Encoding header, gzip is preferred when qualities are equal
+     *
+     * @param acceptEncoding Accept-Encoding header value
+     * @return chosen encoding or null when client does not accept gzip or deflate
+     */
+    public ContentEncoding negotiate(String acceptEncoding) {
+        return negotiate(acceptEncoding, true, true);
+    }
+
+    /**
+     * choose encoding by client Accept-Encoding header among available ones,
+     * for example when only gzip variant of static file is precompressed
+     *
+     * @param acceptEncoding   Accept-Encoding header value
+     * @param gzipAvailable    true if gzip encoding is available
+     * @param deflateAvailable true if deflate encoding is available
+     * @return chosen encoding or null when client does not accept any of available encodings
+     */
+    public ContentEncoding negotiate(String acceptEncoding, boolean gzipAvailable, boolean deflateAvailable) {
+        if (isBlank(acceptEncoding)) {
+            return null;
+        }
+
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+
+        int start = 0;
+        final int length = acceptEncoding.length();
+        while (start < length) {
+            int end = acceptEncoding.indexOf(',', start);
+            if (end == -1) {
+                end = length;
+            }
+
+            int codingEnd = acceptEncoding.indexOf(';', start);
+            if (codingEnd == -1 || codingEnd > end) {
+                codingEnd = end;
+            }
+
+            final float quality = quality(acceptEncoding, codingEnd, end);
+            if (regionEquals(acceptEncoding, start, codingEnd, GZIP_CODING)) {
+                gzip = quality;
+            } else if (regionEquals(acceptEncoding, start, codingEnd, DEFLATE_CODING)) {
+                deflate = quality;
+            } else if (regionEquals(acceptEncoding, start, codingEnd, ANY_CODING)) {
+                any = quality;
+            }
+
+            start = end + 1;
+        }
+
+        // "*" matches codings that are not listed explicitly
+        if (gzip == -1) {
+            gzip = any;
+        }
+
+        if (deflate == -1) {
+            deflate = any;
+        }
+
+        if (!gzipAvailable) {
+            gzip = -1;
+        }
+
+        if (!deflateAvailable) {
+            deflate = -1;
+        }
+
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    private static float quality(String value, int start, int end) {
+        // ;q=0.5 among other parameters, parameter name is case-insensitive
+        while (start < end) {
+            int paramEnd = value.indexOf(';', start + 1);
+            if (paramEnd == -1 || paramEnd > end) {
+                paramEnd = end;
+            }
+
+            final int eq = value.indexOf('=', start);
+            if (eq != -1 && eq < paramEnd && regionEquals(value, start + 1, eq, "q")) {
+                try {
+                    final float quality = Float.parseFloat(value.substring(eq + 1, paramEnd).trim());
+                    return quality < 0 || quality > 1 ? 0 : quality;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+
+            start = paramEnd;
+        }
+
+        return 1;
+    }
+
+    private static boolean regionEquals(String value, int start, int end, String coding) {
+        while (start < end && value.charAt(start) == ' ') {
+            start++;
+        }
+
+        while (end > start && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+
+        return end - start == coding.length() && value.regionMatches(true, start, coding, 0, coding.length());
+    }
+
+    private static boolean matches(List<String> patterns, String mediaType) {
+        for (int i = 0; i < patterns.size(); i++) {
+            final String pattern = patterns.get(i);
+            if (pattern.endsWith("/*")) {
+                if (mediaType.regionMatches(true, 0, pattern, 0, pattern.length() - 1)) {
+                    return true;
+                }
+            } else if (pattern.equalsIgnoreCase(mediaType)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public static final class Builder {
+        private boolean enabled = true;
+        private int minSize = DEFAULT_MIN_SIZE;
+        private int level = DEFAULT_COMPRESSION;
+        private final List<String> compressibleTypes = new ArrayList<>(DEFAULT_COMPRESSIBLE_TYPES);
+        private final List<String> excludedTypes = new ArrayList<>();
+
+        private Builder() {
+
+        }
+
+        public Builder enabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        /**
+         * @param minSize responses smaller than this size in bytes are not compressed
+         * @return Builder
+         */
+        public Builder minSize(int minSize) {
+            this.minSize = minSize;
+            return this;
+        }
+
+        /**
+         * @param level compression level 0-9 or -1 for default one
+         * @return Builder
+         */
+        public Builder level(int level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * replace default list of compressible types
+         *
+         * @param types media types, ex: text/html or text/* for all subtypes
+         * @return Builder
+         */
+        public Builder compressibleTypes(String... types) {
+            this.compressibleTypes.clear();
+            this.compressibleTypes.addAll(asList(notNull("types", types)));
+            return this;
+        }
+
+        /**
+         * exclude media types from compression, ex: text/event-stream
+         *
+         * @param types media types, ex: image/png or image/* for all subtypes
+         * @return Builder
+         */
+        public Builder excludedTypes(String... types) {
+            this.excludedTypes.addAll(asList(notNull("types", types)));
+            return this;
+        }
+
+        public CompressionPolicy build() {
+            return new CompressionPolicy(this);
+        }
+    }
+}
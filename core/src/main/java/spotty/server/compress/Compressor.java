@@ -17,39 +17,146 @@ package spotty.server.compress;
 
 import spotty.common.exception.SpottyException;
 import spotty.common.http.ContentEncoding;
-import spotty.common.stream.output.SpottyByteArrayOutputStream;
 
-import java.io.OutputStream;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
+import static java.util.zip.Deflater.BEST_COMPRESSION;
+import static java.util.zip.Deflater.DEFAULT_COMPRESSION;
+import static java.util.zip.Deflater.NO_COMPRESSION;
 import static spotty.common.validation.Validation.notNull;
+import static spotty.common.validation.Validation.validate;
 
+/**
+ * Compresses response body by gzip or deflate.
+ *
+ * <p>{@link Deflater} holds about 256Kb of native memory, so instead of a new one per response
+ * (that {@link java.util.zip.GZIPOutputStream} does) every worker thread keeps its own deflaters
+ * and an output buffer and reuses them. Compressed data is written straight to that buffer,
+ * so the only allocation per response is the compressed body itself.</p>
+ */
 public final class Compressor {
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    // RFC 1952: magic number, deflate method, no flags, no mtime, no extra flags, unknown OS
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private final ThreadLocal<Context> contexts;
+
+    public Compressor() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level compression level 0-9 or -1 for default one
+     */
+    public Compressor(int level) {
+        validate(level == DEFAULT_COMPRESSION || (level >= NO_COMPRESSION && level <= BEST_COMPRESSION), "invalid compression level %s", level);
+
+        this.contexts = ThreadLocal.withInitial(() -> new Context(level));
+    }
 
     public byte[] compress(ContentEncoding encoding, byte[] body) throws Exception {
         notNull("encoding", encoding);
 
-        final SpottyByteArrayOutputStream out = new SpottyByteArrayOutputStream(body.length);
-        final OutputStream compressor;
+        final Context context = contexts.get();
+        final int size;
         switch (encoding) {
             case GZIP:
-                compressor = new GZIPOutputStream(out);
+                size = context.gzip(body);
                 break;
             case DEFLATE:
-                compressor = new DeflaterOutputStream(out);
+                size = context.deflate(body);
                 break;
             default:
                 throw new SpottyException(encoding + " unsupported compression algorithm");
         }
 
-        try {
-            compressor.write(body);
-        } finally {
-            compressor.close();
+        final byte[] compressed = Arrays.copyOf(context.buffer, size);
+        context.release();
+
+        return compressed;
+    }
+
+    private static final class Context {
+        private final int level;
+        private final CRC32 crc = new CRC32();
+
+        // deflaters are created on demand, most of the threads use one encoding only
+        private Deflater gzipDeflater;
+        private Deflater deflater;
+
+        private byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+
+        private Context(int level) {
+            this.level = level;
+        }
+
+        private int gzip(byte[] body) {
+            if (gzipDeflater == null) {
+                gzipDeflater = new Deflater(level, true);
+            }
+
+            System.arraycopy(GZIP_HEADER, 0, buffer, 0, GZIP_HEADER.length);
+            int size = deflate(gzipDeflater, body, GZIP_HEADER.length);
+
+            crc.reset();
+            crc.update(body, 0, body.length);
+
+            ensureCapacity(size + GZIP_TRAILER_SIZE);
+            size = writeInt(size, (int) crc.getValue());
+            size = writeInt(size, body.length);
+
+            return size;
         }
 
-        return out.toByteArray();
+        private int deflate(byte[] body) {
+            if (deflater == null) {
+                deflater = new Deflater(level, false);
+            }
+
+            return deflate(deflater, body, 0);
+        }
+
+        private int deflate(Deflater deflater, byte[] body, int offset) {
+            deflater.reset();
+            deflater.setInput(body, 0, body.length);
+            deflater.finish();
+
+            int size = offset;
+            while (!deflater.finished()) {
+                ensureCapacity(size + 1);
+                size += deflater.deflate(buffer, size, buffer.length - size);
+            }
+
+            return size;
+        }
+
+        // little-endian as required by gzip trailer
+        private int writeInt(int offset, int value) {
+            buffer[offset] = (byte) value;
+            buffer[offset + 1] = (byte) (value >> 8);
+            buffer[offset + 2] = (byte) (value >> 16);
+            buffer[offset + 3] = (byte) (value >> 24);
+
+            return offset + 4;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, capacity));
+            }
+        }
+
+        // do not keep a huge buffer of a single big response for the thread lifetime
+        private void release() {
+            if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+                buffer = new byte[DEFAULT_BUFFER_SIZE];
+            }
+        }
     }
 
 }
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.compress;
+
+import spotty.common.exception.SpottyHttpException;
+import spotty.common.http.ContentEncoding;
+import spotty.common.stream.output.SpottyByteArrayOutputStream;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static spotty.common.http.ContentEncoding.GZIP;
+import static spotty.common.http.HttpStatus.BAD_REQUEST;
+import static spotty.common.http.HttpStatus.PAYLOAD_TOO_LARGE;
+import static spotty.common.validation.Validation.notNull;
+import static spotty.common.validation.Validation.validate;
+
+/**
+ * Inflates gzip or deflate request bodies while they are read from the socket,
+ * so the compressed body is never kept in memory as a whole.
+ *
+ * <p>Decompressed body is limited by maximum size, and separately by maximum compression ratio,
+ * that stops decompression bombs (a few kilobytes that inflate to gigabytes) early, long before the size limit.
+ * {@link Inflater}s hold native memory, so they are pooled and shared by all connections.</p>
+ */
+public final class Decompressor {
+    private static final int MAX_POOL_SIZE = 64;
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    // ratio is not representative for small bodies, headers and dictionaries are making it noisy
+    private static final int RATIO_CHECK_THRESHOLD = 64 * 1024;
+
+    private final int maxDecompressedSize;
+    private final int maxCompressionRatio;
+
+    private final InflaterPool gzipInflaters = new InflaterPool(true);
+    private final InflaterPool deflateInflaters = new InflaterPool(false);
+
+    /**
+     * @param maxDecompressedSize maximum size of decompressed body in bytes
+     * @param maxCompressionRatio maximum ratio of decompressed size to compressed one
+     */
+    public Decompressor(int maxDecompressedSize, int maxCompressionRatio) {
+        validate(maxDecompressedSize > 0, "maxDecompressedSize must be greater then 0");
+        validate(maxCompressionRatio > 0, "maxCompressionRatio must be greater then 0");
+
+        this.maxDecompressedSize = maxDecompressedSize;
+        this.maxCompressionRatio = maxCompressionRatio;
+    }
+
+    /**
+     * @return new decoder, it is not thread safe and supposed to be reused by one connection
+     */
+    public Decoder decoder() {
+        return new Decoder();
+    }
+
+    public final class Decoder {
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private final CRC32 crc = new CRC32();
+        private final SpottyByteArrayOutputStream out = new SpottyByteArrayOutputStream(CHUNK_SIZE);
+
+        // gzip header and trailer can be split between socket reads
+        private final SpottyByteArrayOutputStream pending = new SpottyByteArrayOutputStream(16);
+
+        private ContentEncoding encoding;
+        private Inflater inflater;
+        private State state;
+        private long consumed;
+
+        private Decoder() {
+
+        }
+
+        public void start(ContentEncoding encoding) {
+            release();
+
+            this.encoding = notNull("encoding", encoding);
+            this.inflater = pool(encoding).borrow();
+            this.state = encoding == GZIP ? State.HEADER : State.BODY;
+            this.consumed = 0;
+
+            crc.reset();
+            out.reset();
+            pending.reset();
+        }
+
+        public boolean isStarted() {
+            return inflater != null;
+        }
+
+        /**
+         * inflate next part of compressed body
+         *
+         * @param data compressed data
+         * @param off  offset
+         * @param len  length
+         */
+        public void write(byte[] data, int off, int len) {
+            validate(isStarted(), "decoder is not started");
+
+            consumed += len;
+            final int end = off + len;
+            while (off < end) {
+                switch (state) {
+                    case HEADER:
+                        off = readHeader(data, off, end);
+                        break;
+                    case BODY:
+                        off = inflate(data, off, end);
+                        break;
+                    case TRAILER:
+                        off = readTrailer(data, off, end);
+                        break;
+                    case DONE:
+                        throw new SpottyHttpException(BAD_REQUEST, "unexpected data after the end of %s body", encoding.code);
+                }
+            }
+        }
+
+        /**
+         * @return decompressed body
+         */
+        public byte[] finish() {
+            validate(isStarted(), "decoder is not started");
+
+            try {
+                if (state != State.DONE) {
+                    throw new SpottyHttpException(BAD_REQUEST, "unexpected end of %s body", encoding.code);
+                }
+
+                return Arrays.copyOf(out.sourceData(), out.size());
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * return inflater to the pool, must be called when body reading is aborted
+         */
+        public void release() {
+            if (inflater != null) {
+                pool(encoding).release(inflater);
+                inflater = null;
+            }
+
+            out.reset();
+            pending.reset();
+        }
+
+        private int readHeader(byte[] data, int off, int end) {
+            final int before = pending.size();
+            pending.write(data, off, end - off);
+
+            final int headerLength = gzipHeaderLength(pending.sourceData(), pending.size());
+            if (headerLength == -1) {
+                return end;
+            }
+
+            state = State.BODY;
+
+            // bytes after the header belong to compressed data
+            return off + headerLength - before;
+        }
+
+        private int inflate(byte[] data, int off, int end) {
+            inflater.setInput(data, off, end - off);
+
+            try {
+                while (!inflater.finished()) {
+                    final int n = inflater.inflate(chunk);
+                    if (n == 0) {
+                        if (inflater.needsInput()) {
+                            return end;
+                        }
+
+                        if (inflater.needsDictionary()) {
+                            throw new SpottyHttpException(BAD_REQUEST, "preset dictionary is not supported");
+                        }
+                    }
+
+                    out.write(chunk, 0, n);
+                    if (encoding == GZIP) {
+                        crc.update(chunk, 0, n);
+                    }
+
+                    checkLimits();
+                }
+            } catch (DataFormatException e) {
+                throw new SpottyHttpException(BAD_REQUEST, e, "invalid %s body", encoding.code);
+            }
+
+            state = encoding == GZIP ? State.TRAILER : State.DONE;
+            pending.reset();
+
+            return end - inflater.getRemaining();
+        }
+
+        private int readTrailer(byte[] data, int off, int end) {
+            final int len = Math.min(8 - pending.size(), end - off);
+            pending.write(data, off, len);
+            if (pending.size() < 8) {
+                return end;
+            }
+
+            final byte[] trailer = pending.sourceData();
+            if (readInt(trailer, 0) != (int) crc.getValue() || readInt(trailer, 4) != out.size()) {
+                throw new SpottyHttpException(BAD_REQUEST, "corrupted gzip body");
+            }
+
+            state = State.DONE;
+
+            return off + len;
+        }
+
+        private void checkLimits() {
+            if (out.size() > maxDecompressedSize) {
+                throw new SpottyHttpException(PAYLOAD_TOO_LARGE, "maximum decompressed body size is %s bytes", maxDecompressedSize);
+            }
+
+            if (out.size() > RATIO_CHECK_THRESHOLD && out.size() > consumed * maxCompressionRatio) {
+                throw new SpottyHttpException(PAYLOAD_TOO_LARGE, "body compression ratio is bigger than %s", maxCompressionRatio);
+            }
+        }
+
+        private InflaterPool pool(ContentEncoding encoding) {
+            return encoding == GZIP ? gzipInflaters : deflateInflaters;
+        }
+    }
+
+    /**
+     * RFC 1952 Section 2.3
+     *
+     * @return header length or -1 if header is incomplete
+     */
+    private static int gzipHeaderLength(byte[] data, int size) {
+        if (size < 10) {
+            return -1;
+        }
+
+        if ((data[0] & 0xff) != 0x1f || (data[1] & 0xff) != 0x8b || data[2] != 8) {
+            throw new SpottyHttpException(BAD_REQUEST, "invalid gzip header");
+        }
+
+        final int flags = data[3] & 0xff;
+        int length = 10;
+
+        // FEXTRA
+        if ((flags & 4) != 0) {
+            if (size < length + 2) {
+                return -1;
+            }
+
+            length += 2 + ((data[length] & 0xff) | (data[length + 1] & 0xff) << 8);
+        }
+
+        // FNAME and FCOMMENT are zero-terminated
+        for (int flag = 8; flag <= 16; flag <<= 1) {
+            if ((flags & flag) != 0) {
+                while (length < size && data[length] != 0) {
+                    length++;
+                }
+
+                if (length >= size) {
+                    return -1;
+                }
+
+                length++;
+            }
+        }
+
+        // FHCRC
+        if ((flags & 2) != 0) {
+            length += 2;
+        }
+
+        return length <= size ? length : -1;
+    }
+
+    private static int readInt(byte[] data, int off) {
+        return (data[off] & 0xff)
+            | (data[off + 1] & 0xff) << 8
+            | (data[off + 2] & 0xff) << 16
+            | (data[off + 3] & 0xff) << 24;
+    }
+
+    private enum State {
+        HEADER, BODY, TRAILER, DONE
+    }
+
+    private static final class InflaterPool {
+        private final boolean nowrap;
+        private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private InflaterPool(boolean nowrap) {
+            this.nowrap = nowrap;
+        }
+
+        private Inflater borrow() {
+            final Inflater inflater = inflaters.poll();
+            if (inflater == null) {
+                return new Inflater(nowrap);
+            }
+
+            size.decrementAndGet();
+            return inflater;
+        }
+
+        private void release(Inflater inflater) {
+            if (size.incrementAndGet() > MAX_POOL_SIZE) {
+                size.decrementAndGet();
+                inflater.end();
+                return;
+            }
+
+            inflater.reset();
+            inflaters.offer(inflater);
+        }
+    }
+}
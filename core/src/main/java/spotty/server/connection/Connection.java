@@ -21,9 +21,12 @@ import org.slf4j.LoggerFactory;
 import spotty.common.exception.SpottyException;
 import spotty.common.exception.SpottyHttpException;
 import spotty.common.exception.SpottyStreamException;
+import spotty.common.http.ContentEncoding;
+import spotty.common.http.HttpHeaders;
 import spotty.common.http.HttpProtocol;
 import spotty.common.request.SpottyDefaultRequest;
 import spotty.common.request.params.QueryParams;
+import spotty.common.response.ConstantHeaders;
 import spotty.common.response.ResponseHeadersWriter;
 import spotty.common.response.SpottyResponse;
 import spotty.common.state.StateHandlerGraph;
@@ -33,6 +36,7 @@ import spotty.common.stream.output.SpottyByteArrayOutputStream;
 import spotty.common.stream.output.SpottyFixedByteOutputStream;
 import spotty.common.utils.ExceptionalCallable;
 import spotty.common.utils.ExceptionalRunnable;
+import spotty.server.compress.Decompressor;
 import spotty.server.connection.socket.SpottySocket;
 import spotty.server.connection.state.ConnectionState;
 import spotty.server.event.ServerEvents;
@@ -44,7 +48,6 @@ import spotty.server.worker.ReactorWorker;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -56,16 +59,19 @@ import static java.nio.channels.SelectionKey.OP_CONNECT;
 import static java.util.stream.Collectors.joining;
 import static spotty.common.http.ConnectionValue.CLOSE;
 import static spotty.common.http.HttpHeaders.CONNECTION;
+import static spotty.common.http.HttpHeaders.CONTENT_ENCODING;
 import static spotty.common.http.HttpHeaders.CONTENT_LENGTH;
 import static spotty.common.http.HttpHeaders.CONTENT_TYPE;
 import static spotty.common.http.HttpHeaders.COOKIE;
+import static spotty.common.http.HttpMethod.HEAD;
 import static spotty.common.http.HttpStatus.BAD_REQUEST;
 import static spotty.common.request.validator.RequestValidator.validate;
+import static spotty.common.utils.HeaderUtils.parseContentEncoding;
 import static spotty.common.utils.HeaderUtils.parseContentLength;
 import static spotty.common.utils.HeaderUtils.parseCookies;
 import static spotty.common.utils.HeaderUtils.parseHttpMethod;
-import static spotty.common.utils.HeaderUtils.parseUri;
 import static spotty.common.utils.Memoized.lazy;
+import static spotty.common.utils.UrlUtils.decode;
 import static spotty.common.validation.Validation.notNull;
 import static spotty.server.connection.state.ConnectionState.BODY_READY;
 import static spotty.server.connection.state.ConnectionState.BODY_READY_TO_READ;
@@ -111,6 +117,8 @@ public final class Connection extends StateMachine<ConnectionState> implements C
     private final ExceptionHandlerRegistry exceptionHandlerRegistry;
     private final ServerEvents serverEvents;
     private final int maxRequestBodySize;
+    private final ConstantHeaders constantHeaders;
+    private final Decompressor.Decoder decoder;
     private ByteBuffer readBuffer;
     private RequestHandler requestHandler;
     private SelectionKey selectionKey;
@@ -118,6 +126,9 @@ public final class Connection extends StateMachine<ConnectionState> implements C
     private ByteBuffer headersByteBuffer;
     private ByteBuffer bodyByteBuffer;
 
+    private ContentEncoding requestContentEncoding;
+    private int compressedBodyRemaining;
+
     private Connection(Builder builder) throws SpottyStreamException {
         super(INITIALIZED);
 
@@ -127,6 +138,8 @@ public final class Connection extends StateMachine<ConnectionState> implements C
         this.exceptionHandlerRegistry = notNull("exceptionHandlerService", builder.exceptionHandlerRegistry);
         this.serverEvents = notNull("serverEvents", builder.serverEvents);
         this.maxRequestBodySize = builder.maxRequestBodySize;
+        this.constantHeaders = notNull("constantHeaders", builder.constantHeaders);
+        this.decoder = builder.decompressor == null ? null : builder.decompressor.decoder();
 
         this.readBuffer = ByteBuffer.allocate(builder.bufferSize);
 
@@ -230,6 +243,7 @@ public final class Connection extends StateMachine<ConnectionState> implements C
     // optimization to not spawn callback objects each time
     private final Runnable afterExceptionHandler = () -> {
         readBuffer.clear(); // reset buffer
+        releaseDecoder();
 
         // close connection to not be abused with big wrong request
         // for example request with content length bigger than max limit
@@ -247,9 +261,16 @@ public final class Connection extends StateMachine<ConnectionState> implements C
     @Override
     public void close() {
         socket.close();
+        releaseDecoder();
         changeState(CLOSED);
     }
 
+    private void releaseDecoder() {
+        if (decoder != null) {
+            decoder.release();
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -408,8 +429,18 @@ public final class Connection extends StateMachine<ConnectionState> implements C
             request.contentType(request.headers().remove(CONTENT_TYPE));
         }
 
+        // without decompressor body is passed to the handler as is
+        requestContentEncoding = null;
+        if (decoder != null && request.headers().has(CONTENT_ENCODING)) {
+            requestContentEncoding = parseContentEncoding(request.headers().get(CONTENT_ENCODING));
+        }
+
         if (request.headers().has(COOKIE)) {
-            request.cookies(parseCookies(request.headers().remove(COOKIE)));
+            // client could split cookies into several headers
+            final String cookies = String.join("; ", request.headers().getAll(COOKIE));
+            request.headers().remove(COOKIE);
+
+            request.cookies(parseCookies(cookies));
         }
 
         validate(request);
@@ -433,6 +464,14 @@ public final class Connection extends StateMachine<ConnectionState> implements C
             throw new SpottyHttpException(BAD_REQUEST, "invalid request, content-length is 0, but body not empty");
         }
 
+        // compressed body is inflated while reading, so it is never buffered as is
+        if (requestContentEncoding != null && request.contentLength() > 0) {
+            decoder.start(requestContentEncoding);
+            compressedBodyRemaining = request.contentLength();
+
+            return changeState(READING_BODY);
+        }
+
         if (request.contentLength() > body.capacity()) {
             body.capacity(request.contentLength());
         }
@@ -452,6 +491,10 @@ public final class Connection extends StateMachine<ConnectionState> implements C
     private boolean readBody() {
         checkStateIs(READING_BODY);
 
+        if (decoder != null && decoder.isStarted()) {
+            return readCompressedBody();
+        }
+
         if (readBuffer.hasRemaining()) {
             body.writeRemaining(readBuffer);
         }
@@ -463,10 +506,33 @@ public final class Connection extends StateMachine<ConnectionState> implements C
         return false;
     }
 
+    private boolean readCompressedBody() {
+        if (readBuffer.hasRemaining()) {
+            final int len = Math.min(readBuffer.remaining(), compressedBodyRemaining);
+            decoder.write(readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(), len);
+
+            readBuffer.position(readBuffer.position() + len);
+            compressedBodyRemaining -= len;
+        }
+
+        if (compressedBodyRemaining == 0) {
+            return changeState(BODY_READY);
+        }
+
+        return false;
+    }
+
     private boolean finishBuildRequest() {
         checkStateIs(BODY_READY);
 
-        request.body(body.toByteArray());
+        if (decoder != null && decoder.isStarted()) {
+            final byte[] decompressed = decoder.finish();
+            request.body(decompressed);
+            request.contentLength(decompressed.length);
+            request.headers().remove(CONTENT_ENCODING);
+        } else {
+            request.body(body.toByteArray());
+        }
 
         body.capacity(DEFAULT_BUFFER_SIZE);
         body.reset();
@@ -497,6 +563,13 @@ public final class Connection extends StateMachine<ConnectionState> implements C
     private final Runnable handlerRequest = () -> {
         exceptionHandler(actionExceptionHandler);
 
+        // response to HEAD request must not contain body, error responses as well
+        if (request.method() == HEAD && response.hasBody()) {
+            response
+                .contentLength(response.contentLength())
+                .body((byte[]) null);
+        }
+
         request.reset();
         changeState(READY_TO_WRITE);
     };
@@ -509,7 +582,7 @@ public final class Connection extends StateMachine<ConnectionState> implements C
     private boolean readyToWrite() {
         checkStateIs(READY_TO_WRITE);
 
-        ResponseHeadersWriter.write(responseHeadersBuffer, response);
+        ResponseHeadersWriter.write(responseHeadersBuffer, response, constantHeaders);
         if (headersByteBuffer == null || headersByteBuffer.capacity() != responseHeadersBuffer.capacity()) {
             // wrap by link, changing byte[] is affecting writeHeadersBuffer
             headersByteBuffer = ByteBuffer.wrap(
@@ -526,6 +599,9 @@ public final class Connection extends StateMachine<ConnectionState> implements C
 
         if (response.body() != null) {
             this.bodyByteBuffer = ByteBuffer.wrap(response.body());
+        } else if (response.bodyBuffer() != null) {
+            // response owns duplicate of the buffer, so it can be written as is
+            this.bodyByteBuffer = response.bodyBuffer();
         }
 
         return changeState(RESPONSE_WRITING_HEADERS);
@@ -602,12 +678,15 @@ public final class Connection extends StateMachine<ConnectionState> implements C
     private void parseHeadLine(String line) {
         LOG.debug("head line: {}", line);
 
-        final String[] method = line.split(" ");
-        if (method.length != 3 || !line.contains("/")) {
+        final int methodEnd = line.indexOf(' ');
+        final int targetEnd = methodEnd == -1 ? -1 : line.indexOf(' ', methodEnd + 1);
+        if (methodEnd <= 0 || targetEnd <= methodEnd + 1 || targetEnd == line.length() - 1
+            || line.indexOf(' ', targetEnd + 1) != -1 || !line.contains("/")) {
             throw new SpottyHttpException(BAD_REQUEST, "invalid request head line: %s", line);
         }
 
-        final HttpProtocol protocol = HttpProtocol.of(method[2]);
+        final String rawProtocol = line.substring(targetEnd + 1);
+        final HttpProtocol protocol = HttpProtocol.of(rawProtocol);
         if (protocol == null) {
             throw new SpottyHttpException(
                 BAD_REQUEST,
@@ -616,30 +695,70 @@ public final class Connection extends StateMachine<ConnectionState> implements C
             );
         }
 
-        final String scheme = method[2].split("/")[0].toLowerCase();
-        final URI uri = parseUri(method[1]);
+        final String scheme = rawProtocol.split("/")[0].toLowerCase();
 
         request
             .scheme(scheme)
-            .method(parseHttpMethod(method[0]))
-            .path(uri.getPath())
-            .queryParams(QueryParams.parse(uri.getQuery()))
+            .method(parseHttpMethod(line.substring(0, methodEnd)))
             .protocol(protocol)
         ;
+
+        parseRequestTarget(line, methodEnd + 1, targetEnd);
+    }
+
+    /**
+     * request target is parsed in place: path is decoded, query string is kept raw and parsed on first access
+     */
+    private void parseRequestTarget(String line, int from, int to) {
+        int pathStart = from;
+
+        // absolute form: http://host:port/path?query
+        if (line.charAt(from) != '/') {
+            final int authority = line.indexOf("://", from);
+            if (authority != -1 && authority < to) {
+                final int slash = line.indexOf('/', authority + 3);
+                pathStart = slash == -1 || slash > to ? to : slash;
+            }
+        }
+
+        int fragment = line.indexOf('#', pathStart);
+        if (fragment == -1 || fragment > to) {
+            fragment = to;
+        }
+
+        int query = line.indexOf('?', pathStart);
+        if (query == -1 || query > fragment) {
+            query = fragment;
+        }
+
+        request
+            .path(pathStart == query ? "/" : decode(line, pathStart, query, false))
+            .queryParams(QueryParams.parse(line, Math.min(query + 1, fragment), fragment));
     }
 
     private void parseHeader(String line) {
         LOG.debug("request header: {}", line);
 
-        final String[] header = line.split(":", 2);
-        if (header.length != 2) {
+        final int colon = line.indexOf(':');
+        if (colon == -1) {
             throw new SpottyHttpException(BAD_REQUEST, "invalid header line: %s", line);
         }
 
-        final String name = header[0].trim().toLowerCase();
-        final String value = header[1].trim();
+        int nameStart = 0;
+        int nameEnd = colon;
+        while (nameStart < nameEnd && line.charAt(nameStart) <= ' ') {
+            nameStart++;
+        }
+        while (nameEnd > nameStart && line.charAt(nameEnd - 1) <= ' ') {
+            nameEnd--;
+        }
+
+        // well-known names are interned, so no new string is allocated for them
+        final String name = HttpHeaders.normalizeName(line, nameStart, nameEnd);
+        final String value = line.substring(colon + 1).trim();
 
-        request.addHeader(name, value);
+        // header can be sent multiple times, keep all values
+        request.headers().append(name, value);
     }
 
     private void exceptionHandler(ExceptionalRunnable runnable) {
@@ -689,6 +808,8 @@ public final class Connection extends StateMachine<ConnectionState> implements C
         private ExceptionHandlerRegistry exceptionHandlerRegistry;
         private ServerEvents serverEvents;
         private int maxRequestBodySize;
+        private ConstantHeaders constantHeaders = ConstantHeaders.EMPTY;
+        private Decompressor decompressor;
         private int bufferSize = DEFAULT_BUFFER_SIZE;
 
         public static Builder connection() {
@@ -725,6 +846,19 @@ public final class Connection extends StateMachine<ConnectionState> implements C
             return this;
         }
 
+        public Builder constantHeaders(ConstantHeaders constantHeaders) {
+            this.constantHeaders = constantHeaders;
+            return this;
+        }
+
+        /**
+         * @param decompressor inflates gzip and deflate request bodies, null to pass request body as is
+         */
+        public Builder decompressor(Decompressor decompressor) {
+            this.decompressor = decompressor;
+            return this;
+        }
+
         public Builder bufferSize(int bufferSize) {
             this.bufferSize = bufferSize;
             return this;
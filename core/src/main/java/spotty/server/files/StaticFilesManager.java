@@ -16,7 +16,9 @@
 package spotty.server.files;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
 import spotty.common.exception.SpottyNotFoundException;
+import spotty.server.compress.CompressionPolicy;
 import spotty.server.files.detector.FileTypeDetector;
 import spotty.server.files.detector.TypeDetector;
 import spotty.server.files.finder.ResourceFinder;
@@ -25,26 +27,95 @@ import spotty.server.files.finder.impl.InnerResourceFinder;
 import spotty.server.files.loader.FileLoader;
 import spotty.server.files.loader.impl.CacheFileLoader;
 import spotty.server.files.loader.impl.DefaultFileLoader;
+import spotty.server.files.loader.impl.MappedFileLoader;
+import spotty.server.files.loader.impl.StaticBundle;
+import spotty.server.files.watcher.FilesWatcher;
 import spotty.server.router.SpottyRouter;
 
+import java.io.Closeable;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
 import static spotty.common.utils.RouterUtils.REGEX;
 import static spotty.common.validation.Validation.notBlank;
 import static spotty.common.validation.Validation.notNull;
 
-public final class StaticFilesManager {
+public final class StaticFilesManager implements Closeable {
+    // characters that make route template a regex: params, wildcards and regex special characters
+    private static final String REGEX_CHARS = ":*.?+^$|()[]{}\\";
+
     private final TypeDetector typeDetector = new FileTypeDetector();
-    private FileLoader fileLoader = new DefaultFileLoader(typeDetector);
+    private final List<String> externalDirs = new ArrayList<>();
+    // used by files watcher thread
+    private final List<ExternalResourceFinder> externalFinders = new CopyOnWriteArrayList<>();
+    private volatile FileLoader fileLoader;
+    private FilesWatcher filesWatcher;
 
     private final SpottyRouter router;
+    private final CompressionPolicy compressionPolicy;
 
     public StaticFilesManager(SpottyRouter router) {
+        this(router, CompressionPolicy.DISABLED);
+    }
+
+    /**
+     * @param router            router to register files routes
+     * @param compressionPolicy policy to precompress cached files,
+     *                          sibling file.gz is served to clients that accept gzip regardless of policy
+     */
+    public StaticFilesManager(SpottyRouter router, CompressionPolicy compressionPolicy) {
         this.router = notNull("router", router);
+        this.compressionPolicy = notNull("compressionPolicy", compressionPolicy);
+        this.fileLoader = new DefaultFileLoader(typeDetector, compressionPolicy);
     }
 
     public void enableCache(long cacheTtl, long cacheSize) {
-        this.fileLoader = new CacheFileLoader(typeDetector, cacheTtl, cacheSize);
+        this.fileLoader = new CacheFileLoader(typeDetector, compressionPolicy, cacheTtl, cacheSize);
+    }
+
+    /**
+     * keep cached files off-heap, files on disk are memory mapped
+     *
+     * @param cacheTtl      cache time to live in seconds
+     * @param maxCacheBytes maximum total size of cached files in bytes
+     */
+    public void enableMappedCache(long cacheTtl, long maxCacheBytes) {
+        this.fileLoader = new MappedFileLoader(typeDetector, compressionPolicy, cacheTtl, maxCacheBytes);
+    }
+
+    /**
+     * watch external files directories and invalidate cached files as soon as they are changed on disk,
+     * so files can be cached with long ttl and still be updated without restart
+     */
+    public synchronized void enableFilesWatcher() {
+        if (filesWatcher != null) {
+            return;
+        }
+
+        filesWatcher = new FilesWatcher(
+            file -> {
+                fileLoader.invalidate(file);
+                invalidateMissingFiles();
+            },
+            () -> {
+                fileLoader.invalidateAll();
+                invalidateMissingFiles();
+            }
+        );
+        externalDirs.forEach(dir -> filesWatcher.register(Paths.get(dir)));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (filesWatcher != null) {
+            filesWatcher.close();
+            filesWatcher = null;
+        }
     }
 
     public void staticFiles(String templatePath) {
@@ -55,8 +126,53 @@ public final class StaticFilesManager {
         registerFilesRoute(new InnerResourceFinder(), filesDir, templatePath);
     }
 
-    public void externalStaticFiles(String filesDir, String templatePath) {
-        registerFilesRoute(new ExternalResourceFinder(), filesDir, templatePath);
+    public synchronized void externalStaticFiles(String filesDir, String templatePath) {
+        final ExternalResourceFinder resourceFinder = new ExternalResourceFinder();
+        registerFilesRoute(resourceFinder, filesDir, templatePath);
+        externalFinders.add(resourceFinder);
+
+        externalDirs.add(filesDir);
+        if (filesWatcher != null) {
+            filesWatcher.register(Paths.get(filesDir));
+        }
+    }
+
+    /**
+     * load all files from classpath directory once and serve them from memory
+     *
+     * @param filesDir     path to files in resources directory
+     * @param templatePath route path
+     */
+    public void staticBundle(String filesDir, String templatePath) {
+        registerBundleRoute(StaticBundle.fromClasspath(filesDir, typeDetector, compressionPolicy), templatePath);
+    }
+
+    /**
+     * load all files from directory once and serve them from memory
+     *
+     * @param filesDir     directory path to files
+     * @param templatePath route path
+     */
+    public void externalStaticBundle(String filesDir, String templatePath) {
+        registerBundleRoute(StaticBundle.fromDirectory(filesDir, typeDetector, compressionPolicy), templatePath);
+    }
+
+    /**
+     * created file must not be reported as missing until missing files cache expires
+     */
+    private void invalidateMissingFiles() {
+        externalFinders.forEach(ExternalResourceFinder::invalidateMissing);
+    }
+
+    private void registerBundleRoute(StaticBundle bundle, String templatePath) {
+        notBlank("templatePath", templatePath);
+
+        if (!templatePath.endsWith("/*")) {
+            templatePath += "/*";
+        }
+
+        final Function<String, String> filePath = filePathResolver(templatePath);
+        router.get(templatePath, (request, response) -> bundle.loadFile(filePath.apply(request.path()), request, response));
     }
 
     private void registerFilesRoute(ResourceFinder resourceFinder, String filesDir, String templatePath) {
@@ -68,24 +184,48 @@ public final class StaticFilesManager {
             templatePath += "/*";
         }
 
-        final String path = templatePath;
-        router.get(path, (request, response) -> {
-            final URL file = resourceFinder.find(filesDir + getFilePath(path, request.path()));
+        final Function<String, String> filePath = filePathResolver(templatePath);
+        router.get(templatePath, (request, response) -> {
+            final URL file = resourceFinder.find(filesDir + filePath.apply(request.path()));
             if (file == null) {
                 throw new SpottyNotFoundException("file not found %s", request.path());
             }
 
-            return fileLoader.loadFile(file, response);
+            return fileLoader.loadFile(file, request, response);
         });
     }
 
     @VisibleForTesting
     String getFilePath(String templatePath, String urlPath) {
-        final String path = templatePath.substring(0, templatePath.length() - 2) // remove /* at the end
-            .replace("*", "(.+?)")
-            .replaceAll(REGEX, "(.+?)");
+        return filePathResolver(templatePath).apply(urlPath);
+    }
+
+    /**
+     * prepare route prefix stripping once, so file path is resolved without building regex on each request
+     *
+     * @param templatePath route path that ends with /*
+     * @return function that removes route prefix from url path
+     */
+    private static Function<String, String> filePathResolver(String templatePath) {
+        final String prefix = templatePath.substring(0, templatePath.length() - 2); // remove /* at the end
+
+        // plain prefix without params and wildcards does not need regex at all
+        if (CharMatcher.anyOf(REGEX_CHARS).matchesNoneOf(prefix)) {
+            return urlPath -> {
+                final int index = urlPath.indexOf(prefix);
+                if (index == -1) {
+                    return urlPath;
+                }
+
+                return urlPath.substring(0, index) + urlPath.substring(index + prefix.length());
+            };
+        }
+
+        final Pattern pattern = Pattern.compile(
+            prefix.replace("*", "(.+?)").replaceAll(REGEX, "(.+?)")
+        );
 
-        return urlPath.replaceFirst(path, "");
+        return urlPath -> pattern.matcher(urlPath).replaceFirst("");
     }
 
 }
@@ -15,20 +15,97 @@
  */
 package spotty.server.files.detector;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.tika.Tika;
 
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Supplier;
 
+import static java.util.Collections.unmodifiableMap;
 import static spotty.common.utils.Memoized.lazy;
+import static spotty.common.validation.Validation.notNull;
 
+/**
+ * Detects file type by extension of well known web files first, so Tika is not loaded for them at all.
+ * Other files are detected by Tika with content sniffing as a fallback, and results are cached by file url.
+ */
 public final class FileTypeDetector implements TypeDetector {
 
+    private static final int CACHE_SIZE = 1024;
+    private static final Map<String, String> TYPES_BY_EXTENSION = typesByExtension();
+
     private static final Supplier<Tika> tika = lazy(() -> new Tika());
 
+    // key is url string, URL.equals and hashCode may resolve host name
+    private final Cache<String, String> cache = CacheBuilder.newBuilder()
+        .maximumSize(CACHE_SIZE)
+        .build();
+
     @Override
     public String detect(URL path) throws Exception {
-        return tika.get().detect(path);
+        notNull("path", path);
+
+        final String type = TYPES_BY_EXTENSION.get(extension(path.getPath()));
+        if (type != null) {
+            return type;
+        }
+
+        try {
+            return cache.get(path.toExternalForm(), () -> tika.get().detect(path));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    private static String extension(String path) {
+        final int dot = path.lastIndexOf('.');
+        if (dot == -1 || dot < path.lastIndexOf('/')) {
+            return "";
+        }
+
+        return path.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static Map<String, String> typesByExtension() {
+        final Map<String, String> types = new HashMap<>();
+        types.put("html", "text/html");
+        types.put("htm", "text/html");
+        types.put("css", "text/css");
+        types.put("js", "text/javascript");
+        types.put("mjs", "text/javascript");
+        types.put("txt", "text/plain");
+        types.put("csv", "text/csv");
+        types.put("json", "application/json");
+        types.put("map", "application/json");
+        types.put("xml", "application/xml");
+        types.put("pdf", "application/pdf");
+        types.put("wasm", "application/wasm");
+        types.put("svg", "image/svg+xml");
+        types.put("png", "image/png");
+        types.put("jpg", "image/jpeg");
+        types.put("jpeg", "image/jpeg");
+        types.put("gif", "image/gif");
+        types.put("webp", "image/webp");
+        types.put("avif", "image/avif");
+        types.put("ico", "image/vnd.microsoft.icon");
+        types.put("woff", "font/woff");
+        types.put("woff2", "font/woff2");
+        types.put("ttf", "font/ttf");
+        types.put("otf", "font/otf");
+        types.put("mp3", "audio/mpeg");
+        types.put("mp4", "video/mp4");
+        types.put("webm", "video/webm");
+
+        return unmodifiableMap(types);
     }
 
 }
@@ -15,21 +15,63 @@
  */
 package spotty.server.files.finder.impl;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import spotty.server.files.finder.ResourceFinder;
 
 import java.io.File;
 import java.net.URL;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static spotty.common.validation.Validation.validate;
+
+/**
+ * Finds files on disk. Missing files are remembered for a short time,
+ * so a flood of requests to not existing files does not hit the file system on each request.
+ */
 public final class ExternalResourceFinder implements ResourceFinder {
+    private static final long DEFAULT_MISSING_TTL_MILLIS = 1000;
+    private static final int MISSING_CACHE_SIZE = 10_000;
+
+    private final Cache<String, Boolean> missing;
+
+    public ExternalResourceFinder() {
+        this(DEFAULT_MISSING_TTL_MILLIS);
+    }
+
+    /**
+     * @param missingTtlMillis time in milliseconds to remember not existing files, 0 to check file on each request
+     */
+    public ExternalResourceFinder(long missingTtlMillis) {
+        validate(missingTtlMillis >= 0, "missingTtlMillis must be positive or 0");
+
+        this.missing = CacheBuilder.newBuilder()
+            .maximumSize(missingTtlMillis == 0 ? 0 : MISSING_CACHE_SIZE)
+            .expireAfterWrite(missingTtlMillis, MILLISECONDS)
+            .build();
+    }
 
     @Override
     public URL find(String filePath) throws Exception {
+        if (missing.getIfPresent(filePath) != null) {
+            return null;
+        }
+
         final File resource = new File(filePath);
         if (resource.exists()) {
             return resource.toURI().toURL();
         }
 
+        missing.put(filePath, Boolean.TRUE);
         return null;
     }
 
+    /**
+     * forget not existing files, e.g. when files have been created on disk.
+     * Paths of requests are not normalized, so all of them are checked again on the next request
+     */
+    public void invalidateMissing() {
+        missing.invalidateAll();
+    }
+
 }
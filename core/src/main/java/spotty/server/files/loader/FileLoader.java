@@ -15,10 +15,35 @@
  */
 package spotty.server.files.loader;
 
+import spotty.common.request.SpottyRequest;
 import spotty.common.response.SpottyResponse;
 
 import java.net.URL;
 
 public interface FileLoader {
     byte[] loadFile(URL file, SpottyResponse response) throws Exception;
+
+    /**
+     * load file content for given request, loader can choose precompressed variant of the file
+     * when client accepts it
+     */
+    default byte[] loadFile(URL file, SpottyRequest request, SpottyResponse response) throws Exception {
+        return loadFile(file, response);
+    }
+
+    /**
+     * drop cached file, so it is loaded again on the next request, loaders without cache do nothing
+     *
+     * @param file changed file
+     */
+    default void invalidate(URL file) {
+
+    }
+
+    /**
+     * drop all cached files, loaders without cache do nothing
+     */
+    default void invalidateAll() {
+
+    }
 }
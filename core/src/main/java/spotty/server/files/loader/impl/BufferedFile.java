@@ -0,0 +1,139 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.files.loader.impl;
+
+import com.google.common.hash.Hashing;
+import spotty.common.request.SpottyRequest;
+import spotty.common.response.SpottyResponse;
+import spotty.server.compress.CompressionPolicy;
+import spotty.server.files.loader.impl.RangeRequests.ByteRange;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static spotty.common.http.ContentEncoding.GZIP;
+import static spotty.common.http.HttpHeaders.ACCEPT_ENCODING;
+import static spotty.common.http.HttpHeaders.ACCEPT_RANGES;
+import static spotty.common.utils.HeaderUtils.appendVary;
+import static spotty.server.files.loader.impl.ConditionalRequests.addValidators;
+import static spotty.server.files.loader.impl.ConditionalRequests.formatLastModified;
+import static spotty.server.files.loader.impl.ConditionalRequests.isNotModified;
+import static spotty.server.files.loader.impl.ConditionalRequests.notModified;
+import static spotty.server.files.loader.impl.RangeRequests.BYTES;
+import static spotty.server.files.loader.impl.RangeRequests.isRangeRequest;
+import static spotty.server.files.loader.impl.RangeRequests.partialContent;
+import static spotty.server.files.loader.impl.RangeRequests.ranges;
+import static spotty.server.files.loader.impl.RangeRequests.singleRange;
+import static spotty.server.files.loader.impl.RangeRequests.source;
+
+/**
+ * File content kept in read-only buffers together with its gzip variant and validators, calculated once.
+ * Content is sent as buffer body, so responses share the buffer and it is not copied to heap.
+ */
+final class BufferedFile {
+    final String contentType;
+    final long lastModifiedTime;
+    final String lastModified;
+    final ByteBuffer content;
+    final ByteBuffer gzip;
+    final String etag;
+    final String gzipEtag;
+
+    BufferedFile(String contentType, long lastModified, ByteBuffer content, ByteBuffer gzip) {
+        this.contentType = contentType;
+        this.lastModifiedTime = lastModified;
+        this.lastModified = formatLastModified(lastModified);
+        this.content = content.asReadOnlyBuffer();
+        this.gzip = gzip == null ? null : gzip.asReadOnlyBuffer();
+
+        final String hash = Hashing.murmur3_128().hashBytes(content.duplicate()).toString();
+        this.etag = '"' + hash + '"';
+        this.gzipEtag = '"' + hash + "-" + GZIP.code + '"';
+    }
+
+    /**
+     * @return size of content and gzip variant in bytes
+     */
+    long size() {
+        return (long) content.capacity() + (gzip == null ? 0 : gzip.capacity());
+    }
+
+    /**
+     * send identity content without negotiation
+     */
+    void send(SpottyResponse response) {
+        response.contentType(contentType);
+        addValidators(response, etag, lastModified);
+
+        response.body(content);
+    }
+
+    /**
+     * send content for given request: 304 for actual client copy, gzip variant when client accepts it,
+     * or requested ranges of identity content
+     *
+     * @return multipart content for multiple ranges, otherwise null and body is set to the response as buffer
+     */
+    byte[] send(SpottyRequest request, SpottyResponse response, CompressionPolicy compressionPolicy) throws Exception {
+        response.contentType(contentType);
+
+        boolean useGzip = false;
+        if (gzip != null) {
+            appendVary(response.headers(), ACCEPT_ENCODING);
+
+            // ranges are served from identity representation
+            useGzip = !isRangeRequest(request)
+                && compressionPolicy.negotiate(request.headers().get(ACCEPT_ENCODING), true, false) == GZIP;
+        }
+
+        final String currentEtag = useGzip ? gzipEtag : etag;
+        addValidators(response, currentEtag, lastModified);
+
+        if (isNotModified(request, currentEtag, lastModifiedTime)) {
+            notModified(response);
+            return null;
+        }
+
+        response.headers().add(ACCEPT_RANGES, BYTES);
+
+        if (useGzip) {
+            response.encoded(GZIP).body(gzip);
+            return null;
+        }
+
+        final int length = content.remaining();
+        final List<ByteRange> ranges = ranges(request, length, currentEtag, lastModified);
+        if (ranges != null && ranges.size() == 1) {
+            // slice of the buffer, without copying
+            final ByteRange range = ranges.get(0);
+            singleRange(response, range, length);
+
+            final ByteBuffer slice = content.duplicate();
+            slice.position((int) range.start).limit((int) range.end + 1);
+
+            response.body(slice);
+            return null;
+        }
+
+        if (ranges != null) {
+            return partialContent(response, ranges, length, source(content));
+        }
+
+        response.body(content);
+        return null;
+    }
+
+}
@@ -18,29 +18,70 @@ package spotty.server.files.loader.impl;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.hash.Hashing;
+import spotty.common.http.ContentEncoding;
+import spotty.common.request.SpottyRequest;
 import spotty.common.response.SpottyResponse;
 import spotty.common.utils.IOUtils;
+import spotty.server.compress.CompressionPolicy;
+import spotty.server.compress.Compressor;
 import spotty.server.files.detector.TypeDetector;
 import spotty.server.files.loader.FileLoader;
+import spotty.server.files.loader.impl.RangeRequests.ByteRange;
 
 import java.net.URL;
+import java.util.List;
 
 import static java.time.ZoneOffset.UTC;
 import static java.time.ZonedDateTime.now;
 import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.zip.Deflater.BEST_COMPRESSION;
+import static spotty.common.http.ContentEncoding.DEFLATE;
+import static spotty.common.http.ContentEncoding.GZIP;
+import static spotty.common.http.HttpHeaders.ACCEPT_ENCODING;
+import static spotty.common.http.HttpHeaders.ACCEPT_RANGES;
 import static spotty.common.http.HttpHeaders.CACHE_CONTROL;
 import static spotty.common.http.HttpHeaders.EXPIRES;
+import static spotty.common.utils.HeaderUtils.appendVary;
 import static spotty.common.validation.Validation.isNotNull;
 import static spotty.common.validation.Validation.notNull;
+import static spotty.server.files.loader.impl.ConditionalRequests.addValidators;
+import static spotty.server.files.loader.impl.ConditionalRequests.formatLastModified;
+import static spotty.server.files.loader.impl.ConditionalRequests.isNotModified;
+import static spotty.server.files.loader.impl.ConditionalRequests.lastModified;
+import static spotty.server.files.loader.impl.ConditionalRequests.notModified;
+import static spotty.server.files.loader.impl.PrecompressedFiles.findGzip;
+import static spotty.server.files.loader.impl.PrecompressedFiles.findOriginal;
+import static spotty.server.files.loader.impl.RangeRequests.BYTES;
+import static spotty.server.files.loader.impl.RangeRequests.isRangeRequest;
+import static spotty.server.files.loader.impl.RangeRequests.partialContent;
+import static spotty.server.files.loader.impl.RangeRequests.ranges;
+import static spotty.server.files.loader.impl.RangeRequests.source;
 
+/**
+ * Caches file content together with its compressed variants, so static files are compressed once
+ * and not on each request. Sibling file.gz is used as gzip variant when it exists.
+ *
+ * <p>Strong ETag is a hash of the content that is calculated once when file is cached,
+ * so conditional requests are answered with 304 without touching the file.</p>
+ */
 public final class CacheFileLoader implements FileLoader {
 
     private final String cacheControl;
+    private final CompressionPolicy compressionPolicy;
     private final LoadingCache<URL, Data> cache;
 
+    // files are compressed once, so it is worth to spend more time for better compression
+    private final Compressor compressor = new Compressor(BEST_COMPRESSION);
+
     public CacheFileLoader(TypeDetector typeDetector, long cacheTtl, long cacheSize) {
+        this(typeDetector, CompressionPolicy.DISABLED, cacheTtl, cacheSize);
+    }
+
+    public CacheFileLoader(TypeDetector typeDetector, CompressionPolicy compressionPolicy, long cacheTtl, long cacheSize) {
         notNull("typeDetector", typeDetector);
+        this.compressionPolicy = notNull("compressionPolicy", compressionPolicy);
 
         cacheControl = "private, max-age=" + cacheTtl;
         cache = CacheBuilder.newBuilder()
@@ -52,9 +93,24 @@ public final class CacheFileLoader implements FileLoader {
                 public Data load(URL file) throws Exception {
                     final String mimeType = typeDetector.detect(file);
                     final String expires = RFC_1123_DATE_TIME.format(now(UTC).plusSeconds(cacheTtl));
+                    final long lastModified = lastModified(file);
                     final byte[] content = IOUtils.toByteArray(file);
 
-                    return new Data(expires, mimeType, content);
+                    final URL gzipFile = findGzip(file);
+                    if (gzipFile != null) {
+                        return new Data(expires, lastModified, mimeType, content, IOUtils.toByteArray(gzipFile), null);
+                    }
+
+                    if (compressionPolicy.isCompressible(mimeType, content.length)) {
+                        final byte[] gzip = compressor.compress(GZIP, content);
+
+                        // content is compressed already by its format
+                        if (gzip.length < content.length) {
+                            return new Data(expires, lastModified, mimeType, content, gzip, compressor.compress(DEFLATE, content));
+                        }
+                    }
+
+                    return new Data(expires, lastModified, mimeType, content, null, null);
                 }
             });
     }
@@ -64,6 +120,85 @@ public final class CacheFileLoader implements FileLoader {
         notNull("file", file);
         notNull("response", response);
 
+        final Data data = load(file, response);
+        addValidators(response, data.etag, data.lastModified);
+
+        return data.content;
+    }
+
+    @Override
+    public byte[] loadFile(URL file, SpottyRequest request, SpottyResponse response) throws Exception {
+        notNull("file", file);
+        notNull("request", request);
+        notNull("response", response);
+
+        final Data data = load(file, response);
+
+        ContentEncoding contentEncoding = null;
+        if (data.gzip != null) {
+            appendVary(response.headers(), ACCEPT_ENCODING);
+        }
+
+        // ranges are served from identity representation
+        if (data.gzip != null && !isRangeRequest(request)) {
+            contentEncoding = compressionPolicy.negotiate(
+                request.headers().get(ACCEPT_ENCODING),
+                true,
+                data.deflate != null
+            );
+        }
+
+        final String etag = data.etag(contentEncoding);
+        addValidators(response, etag, data.lastModified);
+
+        if (isNotModified(request, etag, data.lastModifiedTime)) {
+            notModified(response);
+            return null;
+        }
+
+        response.headers().add(ACCEPT_RANGES, BYTES);
+
+        if (contentEncoding == GZIP) {
+            response.encoded(GZIP);
+            return data.gzip;
+        }
+
+        if (contentEncoding == DEFLATE) {
+            response.encoded(DEFLATE);
+            return data.deflate;
+        }
+
+        final List<ByteRange> ranges = ranges(request, data.content.length, etag, data.lastModified);
+        if (ranges != null) {
+            return partialContent(response, ranges, data.content.length, source(data.content));
+        }
+
+        return data.content;
+    }
+
+    @Override
+    public void invalidate(URL file) {
+        notNull("file", file);
+
+        cache.invalidate(file);
+
+        // precompressed variant is cached together with original file
+        try {
+            final URL original = findOriginal(file);
+            if (original != null) {
+                cache.invalidate(original);
+            }
+        } catch (Exception e) {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private Data load(URL file, SpottyResponse response) throws Exception {
         try {
             final Data data = cache.get(file);
 
@@ -71,7 +206,7 @@ public final class CacheFileLoader implements FileLoader {
             response.headers().add(EXPIRES, data.expires);
             response.contentType(data.contentType);
 
-            return data.content;
+            return data;
         } catch (Exception e) {
             if (isNotNull(e.getCause())) {
                 throw (Exception) e.getCause();
@@ -83,13 +218,43 @@ public final class CacheFileLoader implements FileLoader {
 
     private static class Data {
         final String expires;
+        final long lastModifiedTime;
+        final String lastModified;
         final String contentType;
         final byte[] content;
+        final byte[] gzip;
+        final byte[] deflate;
+
+        // each encoding is a different representation, so it has its own strong entity tag
+        final String etag;
+        final String gzipEtag;
+        final String deflateEtag;
 
-        private Data(String expires, String contentType, byte[] content) {
+        private Data(String expires, long lastModified, String contentType, byte[] content, byte[] gzip, byte[] deflate) {
             this.expires = expires;
+            this.lastModifiedTime = lastModified;
+            this.lastModified = formatLastModified(lastModified);
             this.contentType = contentType;
             this.content = content;
+            this.gzip = gzip;
+            this.deflate = deflate;
+
+            final String hash = Hashing.murmur3_128().hashBytes(content).toString();
+            this.etag = '"' + hash + '"';
+            this.gzipEtag = '"' + hash + "-" + GZIP.code + '"';
+            this.deflateEtag = '"' + hash + "-" + DEFLATE.code + '"';
+        }
+
+        String etag(ContentEncoding contentEncoding) {
+            if (contentEncoding == GZIP) {
+                return gzipEtag;
+            }
+
+            if (contentEncoding == DEFLATE) {
+                return deflateEtag;
+            }
+
+            return etag;
         }
     }
 
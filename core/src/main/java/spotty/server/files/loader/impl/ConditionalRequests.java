@@ -0,0 +1,181 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.files.loader.impl;
+
+import spotty.common.request.SpottyRequest;
+import spotty.common.response.SpottyResponse;
+
+import java.io.File;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.jar.JarEntry;
+
+import static java.time.ZoneOffset.UTC;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static spotty.common.http.HttpHeaders.ETAG;
+import static spotty.common.http.HttpHeaders.IF_MODIFIED_SINCE;
+import static spotty.common.http.HttpHeaders.IF_NONE_MATCH;
+import static spotty.common.http.HttpHeaders.LAST_MODIFIED;
+import static spotty.common.http.HttpStatus.NOT_MODIFIED;
+
+/**
+ * Conditional GET for static files, RFC 7232:
+ * validators are sent with each file, and client that has actual copy of the file receives 304 without body
+ */
+final class ConditionalRequests {
+    private static final String FILE_PROTOCOL = "file";
+    private static final String WEAK_PREFIX = "W/";
+
+    private ConditionalRequests() {
+
+    }
+
+    /**
+     * take modification time from file system or jar entry without opening the file
+     *
+     * @param file file url
+     * @return last modified time in milliseconds, 0 if it is unknown
+     */
+    static long lastModified(URL file) throws Exception {
+        if (FILE_PROTOCOL.equals(file.getProtocol())) {
+            return new File(file.toURI()).lastModified();
+        }
+
+        final URLConnection connection = file.openConnection();
+        if (connection instanceof JarURLConnection) {
+            final JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+            return entry == null ? 0 : Math.max(entry.getTime(), 0);
+        }
+
+        return 0;
+    }
+
+    /**
+     * @param lastModified last modified time in milliseconds, 0 if unknown
+     * @return Last-Modified header value or null if time is unknown
+     */
+    static String formatLastModified(long lastModified) {
+        if (lastModified <= 0) {
+            return null;
+        }
+
+        return RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(lastModified).atOffset(UTC));
+    }
+
+    /**
+     * add validators to response
+     *
+     * @param response     response
+     * @param etag         entity tag with quotes
+     * @param lastModified Last-Modified header value, can be null
+     */
+    static void addValidators(SpottyResponse response, String etag, String lastModified) {
+        response.headers().add(ETAG, etag);
+        if (lastModified != null) {
+            response.headers().add(LAST_MODIFIED, lastModified);
+        }
+    }
+
+    /**
+     * If-None-Match has precedence, If-Modified-Since is evaluated only when If-None-Match is absent
+     *
+     * @param request      request
+     * @param etag         current entity tag with quotes
+     * @param lastModified current last modified time in milliseconds, 0 if unknown
+     * @return true when client has actual copy of the file
+     */
+    static boolean isNotModified(SpottyRequest request, String etag, long lastModified) {
+        final String ifNoneMatch = request.headers().get(IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return matches(ifNoneMatch, etag);
+        }
+
+        final String ifModifiedSince = request.headers().get(IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null || lastModified <= 0) {
+            return false;
+        }
+
+        try {
+            final long since = RFC_1123_DATE_TIME.parse(ifModifiedSince.trim(), Instant::from).getEpochSecond();
+
+            // http dates have seconds precision
+            return lastModified / 1000 <= since;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * turn response into 304 Not Modified without body, validators stay as they are
+     *
+     * @param response response
+     */
+    static void notModified(SpottyResponse response) {
+        response
+            .status(NOT_MODIFIED)
+            .contentType(null)
+            .contentLength(-1)
+            .body((byte[]) null);
+    }
+
+    /**
+     * weak comparison, RFC 7232 Section 2.3.2
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        final String opaqueTag = opaqueTag(etag, 0, etag.length());
+
+        int start = 0;
+        while (start < ifNoneMatch.length()) {
+            int end = ifNoneMatch.indexOf(',', start);
+            if (end == -1) {
+                end = ifNoneMatch.length();
+            }
+
+            while (start < end && ifNoneMatch.charAt(start) == ' ') {
+                start++;
+            }
+
+            int tagEnd = end;
+            while (tagEnd > start && ifNoneMatch.charAt(tagEnd - 1) == ' ') {
+                tagEnd--;
+            }
+
+            if (tagEnd - start == 1 && ifNoneMatch.charAt(start) == '*') {
+                return true;
+            }
+
+            final String tag = opaqueTag(ifNoneMatch, start, tagEnd);
+            if (tag.equals(opaqueTag)) {
+                return true;
+            }
+
+            start = end + 1;
+        }
+
+        return false;
+    }
+
+    private static String opaqueTag(String value, int start, int end) {
+        if (value.startsWith(WEAK_PREFIX, start)) {
+            start += WEAK_PREFIX.length();
+        }
+
+        return value.substring(start, end);
+    }
+}
@@ -15,21 +15,54 @@
  */
 package spotty.server.files.loader.impl;
 
+import spotty.common.request.SpottyRequest;
 import spotty.common.response.SpottyResponse;
 import spotty.common.utils.IOUtils;
+import spotty.server.compress.CompressionPolicy;
 import spotty.server.files.detector.TypeDetector;
 import spotty.server.files.loader.FileLoader;
+import spotty.server.files.loader.impl.RangeRequests.ByteRange;
 
+import java.io.File;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.util.List;
 
+import static java.nio.file.StandardOpenOption.READ;
+import static spotty.common.http.ContentEncoding.GZIP;
+import static spotty.common.http.HttpHeaders.ACCEPT_ENCODING;
+import static spotty.common.http.HttpHeaders.ACCEPT_RANGES;
+import static spotty.common.utils.HeaderUtils.appendVary;
 import static spotty.common.validation.Validation.notNull;
+import static spotty.server.files.loader.impl.ConditionalRequests.addValidators;
+import static spotty.server.files.loader.impl.ConditionalRequests.formatLastModified;
+import static spotty.server.files.loader.impl.ConditionalRequests.isNotModified;
+import static spotty.server.files.loader.impl.ConditionalRequests.lastModified;
+import static spotty.server.files.loader.impl.ConditionalRequests.notModified;
+import static spotty.server.files.loader.impl.PrecompressedFiles.findGzip;
+import static spotty.server.files.loader.impl.RangeRequests.BYTES;
+import static spotty.server.files.loader.impl.RangeRequests.isRangeRequest;
+import static spotty.server.files.loader.impl.RangeRequests.partialContent;
+import static spotty.server.files.loader.impl.RangeRequests.ranges;
+import static spotty.server.files.loader.impl.RangeRequests.source;
 
+/**
+ * Reads file on each request. Content is not hashed here, so ETag is weak and based on modification time,
+ * it is checked before the file is read.
+ */
 public final class DefaultFileLoader implements FileLoader {
+    private static final String FILE_PROTOCOL = "file";
 
     private final TypeDetector typeDetector;
+    private final CompressionPolicy compressionPolicy;
 
     public DefaultFileLoader(TypeDetector typeDetector) {
+        this(typeDetector, CompressionPolicy.DISABLED);
+    }
+
+    public DefaultFileLoader(TypeDetector typeDetector, CompressionPolicy compressionPolicy) {
         this.typeDetector = notNull("typeDetector", typeDetector);
+        this.compressionPolicy = notNull("compressionPolicy", compressionPolicy);
     }
 
     @Override
@@ -41,4 +74,68 @@ public final class DefaultFileLoader implements FileLoader {
         return IOUtils.toByteArray(file);
     }
 
+    @Override
+    public byte[] loadFile(URL file, SpottyRequest request, SpottyResponse response) throws Exception {
+        notNull("file", file);
+        notNull("request", request);
+        notNull("response", response);
+
+        final URL gzip = findGzip(file);
+        if (gzip != null) {
+            appendVary(response.headers(), ACCEPT_ENCODING);
+        }
+
+        final long lastModified = lastModified(file);
+        String etag = null;
+        String lastModifiedValue = null;
+        if (lastModified > 0) {
+            etag = "W/\"" + Long.toHexString(lastModified) + '"';
+            lastModifiedValue = formatLastModified(lastModified);
+            addValidators(response, etag, lastModifiedValue);
+
+            if (isNotModified(request, etag, lastModified)) {
+                notModified(response);
+                return null;
+            }
+        }
+
+        response.contentType(typeDetector.detect(file));
+
+        // ranges are served from identity representation
+        if (gzip != null && !isRangeRequest(request)
+            && compressionPolicy.negotiate(request.headers().get(ACCEPT_ENCODING), true, false) == GZIP) {
+            response.encoded(GZIP);
+            return IOUtils.toByteArray(gzip);
+        }
+
+        response.headers().add(ACCEPT_RANGES, BYTES);
+
+        if (isRangeRequest(request)) {
+            final File localFile = localFile(file);
+            if (localFile == null) {
+                final byte[] content = IOUtils.toByteArray(file);
+                final List<ByteRange> ranges = ranges(request, content.length, etag, lastModifiedValue);
+
+                return ranges == null ? content : partialContent(response, ranges, content.length, source(content));
+            }
+
+            if (localFile.isFile()) {
+                final long length = localFile.length();
+                final List<ByteRange> ranges = ranges(request, length, etag, lastModifiedValue);
+                if (ranges != null) {
+                    // read requested ranges only, not the whole file
+                    try (final FileChannel channel = FileChannel.open(localFile.toPath(), READ)) {
+                        return partialContent(response, ranges, length, source(channel));
+                    }
+                }
+            }
+        }
+
+        return IOUtils.toByteArray(file);
+    }
+
+    private static File localFile(URL file) throws Exception {
+        return FILE_PROTOCOL.equals(file.getProtocol()) ? new File(file.toURI()) : null;
+    }
+
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.files.loader.impl;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import spotty.common.exception.SpottyException;
+import spotty.common.request.SpottyRequest;
+import spotty.common.response.SpottyResponse;
+import spotty.common.utils.IOUtils;
+import spotty.server.compress.CompressionPolicy;
+import spotty.server.files.detector.TypeDetector;
+import spotty.server.files.loader.FileLoader;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.time.ZoneOffset.UTC;
+import static java.time.ZonedDateTime.now;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static spotty.common.http.HttpHeaders.CACHE_CONTROL;
+import static spotty.common.http.HttpHeaders.EXPIRES;
+import static spotty.common.validation.Validation.isNotNull;
+import static spotty.common.validation.Validation.notNull;
+import static spotty.common.validation.Validation.validate;
+import static spotty.server.files.loader.impl.ConditionalRequests.lastModified;
+import static spotty.server.files.loader.impl.PrecompressedFiles.findGzip;
+import static spotty.server.files.loader.impl.PrecompressedFiles.findOriginal;
+
+/**
+ * Files cache that keeps content off-heap: files on disk are memory mapped, other resources (ex: from jar)
+ * are copied to direct buffers. Cache is limited by total size of files in bytes, not by number of files,
+ * and buffers are written to the socket without copying to heap, so heap usage does not depend on served files.
+ *
+ * <p>Content is served as is, only sibling file.gz is used as compressed variant.</p>
+ */
+public final class MappedFileLoader implements FileLoader {
+    private static final String FILE_PROTOCOL = "file";
+
+    // approximate heap cost of cache entry: headers, etag and buffer objects
+    private static final int ENTRY_OVERHEAD = 512;
+
+    private final String cacheControl;
+    private final CompressionPolicy compressionPolicy;
+    private final LoadingCache<URL, Data> cache;
+
+    public MappedFileLoader(TypeDetector typeDetector, long cacheTtl, long maxCacheBytes) {
+        this(typeDetector, CompressionPolicy.DISABLED, cacheTtl, maxCacheBytes);
+    }
+
+    /**
+     * @param typeDetector      file type detector
+     * @param compressionPolicy policy to negotiate precompressed variants
+     * @param cacheTtl          cache time to live in seconds
+     * @param maxCacheBytes     maximum total size of cached files in bytes
+     */
+    public MappedFileLoader(TypeDetector typeDetector, CompressionPolicy compressionPolicy, long cacheTtl, long maxCacheBytes) {
+        notNull("typeDetector", typeDetector);
+        validate(maxCacheBytes > 0, "maxCacheBytes must be greater then 0");
+
+        this.compressionPolicy = notNull("compressionPolicy", compressionPolicy);
+        this.cacheControl = "private, max-age=" + cacheTtl;
+        this.cache = CacheBuilder.newBuilder()
+            // weight limit is split between segments, single segment lets cache files up to the whole limit
+            .concurrencyLevel(1)
+            .maximumWeight(maxCacheBytes)
+            .<URL, Data>weigher((file, data) -> data.weight)
+            .expireAfterWrite(cacheTtl, SECONDS)
+            .build(new CacheLoader<URL, Data>() {
+                @Override
+                public Data load(URL file) throws Exception {
+                    final String mimeType = typeDetector.detect(file);
+                    final String expires = RFC_1123_DATE_TIME.format(now(UTC).plusSeconds(cacheTtl));
+                    final long lastModified = lastModified(file);
+                    final ByteBuffer content = map(file);
+
+                    final URL gzipFile = findGzip(file);
+                    final ByteBuffer gzip = gzipFile == null ? null : map(gzipFile);
+
+                    return new Data(expires, new BufferedFile(mimeType, lastModified, content, gzip));
+                }
+            });
+    }
+
+    @Override
+    public byte[] loadFile(URL file, SpottyResponse response) throws Exception {
+        notNull("file", file);
+        notNull("response", response);
+
+        load(file, response).send(response);
+        return null;
+    }
+
+    @Override
+    public byte[] loadFile(URL file, SpottyRequest request, SpottyResponse response) throws Exception {
+        notNull("file", file);
+        notNull("request", request);
+        notNull("response", response);
+
+        return load(file, response).send(request, response, compressionPolicy);
+    }
+
+    /**
+     * @return total size of cached files in bytes
+     */
+    public long cachedBytes() {
+        long size = 0;
+        for (Data data : cache.asMap().values()) {
+            size += data.weight - ENTRY_OVERHEAD;
+        }
+
+        return size;
+    }
+
+    @Override
+    public void invalidate(URL file) {
+        notNull("file", file);
+
+        cache.invalidate(file);
+
+        // precompressed variant is cached together with original file
+        try {
+            final URL original = findOriginal(file);
+            if (original != null) {
+                cache.invalidate(original);
+            }
+        } catch (Exception e) {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private BufferedFile load(URL file, SpottyResponse response) throws Exception {
+        try {
+            final Data data = cache.get(file);
+
+            response.headers().add(CACHE_CONTROL, cacheControl);
+            response.headers().add(EXPIRES, data.expires);
+
+            return data.file;
+        } catch (Exception e) {
+            if (isNotNull(e.getCause())) {
+                throw (Exception) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    private static ByteBuffer map(URL file) throws Exception {
+        if (FILE_PROTOCOL.equals(file.getProtocol())) {
+            final File localFile = new File(file.toURI());
+            if (localFile.length() > Integer.MAX_VALUE) {
+                throw new SpottyException("file %s is too large to be cached", file);
+            }
+
+            // mapping stays valid after the channel is closed
+            try (final FileChannel channel = FileChannel.open(localFile.toPath(), READ)) {
+                return channel.map(READ_ONLY, 0, channel.size());
+            }
+        }
+
+        final byte[] content = IOUtils.toByteArray(file);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content).flip();
+
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static class Data {
+        final String expires;
+        final BufferedFile file;
+        final int weight;
+
+        private Data(String expires, BufferedFile file) {
+            this.expires = expires;
+            this.file = file;
+            this.weight = (int) Math.min(file.size() + ENTRY_OVERHEAD, Integer.MAX_VALUE);
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.files.loader.impl;
+
+import java.io.File;
+import java.net.URL;
+
+/**
+ * Precompressed static files are placed next to originals with .gz extension, ex: app.js and app.js.gz
+ */
+final class PrecompressedFiles {
+    private static final String FILE_PROTOCOL = "file";
+    private static final String GZIP_EXTENSION = ".gz";
+
+    private PrecompressedFiles() {
+
+    }
+
+    /**
+     * find precompressed gzip sibling of the file, only files on disk are supported
+     *
+     * @param file original file
+     * @return url of file.gz or null if it does not exist
+     */
+    static URL findGzip(URL file) throws Exception {
+        if (!FILE_PROTOCOL.equals(file.getProtocol()) || file.getPath().endsWith(GZIP_EXTENSION)) {
+            return null;
+        }
+
+        final File gzip = new File(new File(file.toURI()).getPath() + GZIP_EXTENSION);
+        if (gzip.isFile()) {
+            return gzip.toURI().toURL();
+        }
+
+        return null;
+    }
+
+    /**
+     * @param file precompressed file, ex: app.js.gz
+     * @return url of original file, ex: app.js, or null if file is not precompressed
+     */
+    static URL findOriginal(URL file) throws Exception {
+        if (!FILE_PROTOCOL.equals(file.getProtocol()) || !file.getPath().endsWith(GZIP_EXTENSION)) {
+            return null;
+        }
+
+        final String path = new File(file.toURI()).getPath();
+        return new File(path.substring(0, path.length() - GZIP_EXTENSION.length())).toURI().toURL();
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.files.loader.impl;
+
+import spotty.common.request.SpottyRequest;
+import spotty.common.response.SpottyResponse;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Collections.emptyList;
+import static spotty.common.http.HttpHeaders.CONTENT_RANGE;
+import static spotty.common.http.HttpHeaders.CONTENT_TYPE;
+import static spotty.common.http.HttpHeaders.IF_RANGE;
+import static spotty.common.http.HttpHeaders.RANGE;
+import static spotty.common.http.HttpMethod.GET;
+import static spotty.common.http.HttpStatus.PARTIAL_CONTENT;
+import static spotty.common.http.HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE;
+
+/**
+ * Byte range requests for static files, RFC 7233: single range is sent as 206 with Content-Range,
+ * multiple ranges as multipart/byteranges. Only requested bytes are read from the source.
+ */
+final class RangeRequests {
+    static final String BYTES = "bytes";
+
+    private static final String BYTES_PREFIX = BYTES + "=";
+    private static final String WEAK_PREFIX = "W/";
+    private static final String MULTIPART_BYTERANGES = "multipart/byteranges; boundary=";
+    private static final String CRLF = "\r\n";
+
+    // too many ranges in one request is a sign of abuse
+    private static final int MAX_RANGES = 16;
+
+    // partial content is sent as byte array, reserve space for multipart headers
+    private static final long MAX_PARTIAL_CONTENT_SIZE = Integer.MAX_VALUE - 64 * 1024;
+
+    private RangeRequests() {
+
+    }
+
+    /**
+     * source of representation bytes, for example file on disk or cached content
+     */
+    @FunctionalInterface
+    interface Source {
+        void read(long position, byte[] target, int offset, int length) throws Exception;
+    }
+
+    static Source source(byte[] content) {
+        return (position, target, offset, length) -> System.arraycopy(content, (int) position, target, offset, length);
+    }
+
+    static Source source(ByteBuffer content) {
+        return (position, target, offset, length) -> {
+            final ByteBuffer buffer = content.duplicate();
+            buffer.position((int) position);
+            buffer.get(target, offset, length);
+        };
+    }
+
+    static Source source(FileChannel channel) {
+        return (position, target, offset, length) -> {
+            final ByteBuffer buffer = ByteBuffer.wrap(target, offset, length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position() - offset) < 0) {
+                    throw new EOFException("file was truncated while reading range");
+                }
+            }
+        };
+    }
+
+    /**
+     * Range is honored only for GET, so server can choose representation without ranges for other requests
+     *
+     * @param request request
+     * @return true when client requests part of the representation
+     */
+    static boolean isRangeRequest(SpottyRequest request) {
+        return request.method() == GET && request.headers().has(RANGE);
+    }
+
+    /**
+     * @param request      request
+     * @param length       representation length
+     * @param etag         current entity tag, can be null
+     * @param lastModified current Last-Modified header value, can be null
+     * @return requested ranges, empty list when no one is satisfiable,
+     * or null when Range must be ignored and the whole representation is sent
+     */
+    static List<ByteRange> ranges(SpottyRequest request, long length, String etag, String lastModified) {
+        if (!isRangeRequest(request)) {
+            return null;
+        }
+
+        final String ifRange = request.headers().get(IF_RANGE);
+        if (ifRange != null && !ifRangeMatches(ifRange.trim(), etag, lastModified)) {
+            return null;
+        }
+
+        return parse(request.headers().get(RANGE), length);
+    }
+
+    /**
+     * turn response into partial content of the representation
+     *
+     * @param response response with content type of the representation
+     * @param ranges   satisfiable ranges, or empty list to respond 416
+     * @param length   representation length
+     * @param source   representation bytes
+     * @return body of the response
+     */
+    static byte[] partialContent(SpottyResponse response, List<ByteRange> ranges, long length, Source source) throws Exception {
+        if (ranges.isEmpty()) {
+            response
+                .status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                .contentType(null)
+                .body((byte[]) null)
+                .headers().add(CONTENT_RANGE, BYTES + " */" + length);
+
+            return null;
+        }
+
+        if (ranges.size() == 1) {
+            final ByteRange range = ranges.get(0);
+            singleRange(response, range, length);
+
+            final byte[] body = new byte[(int) range.length()];
+            source.read(range.start, body, 0, body.length);
+
+            return body;
+        }
+
+        response.status(PARTIAL_CONTENT);
+
+        final String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        final String contentType = response.contentType();
+
+        // part headers are ASCII, so their length in chars is length in bytes
+        final List<String> partHeaders = new ArrayList<>(ranges.size());
+        long size = 0;
+        for (ByteRange range : ranges) {
+            final StringBuilder sb = new StringBuilder()
+                .append(CRLF).append("--").append(boundary).append(CRLF);
+            if (contentType != null) {
+                sb.append(CONTENT_TYPE).append(": ").append(contentType).append(CRLF);
+            }
+            sb.append(CONTENT_RANGE).append(": ").append(range.contentRange(length)).append(CRLF).append(CRLF);
+
+            partHeaders.add(sb.toString());
+            size += sb.length() + range.length();
+        }
+
+        final String end = CRLF + "--" + boundary + "--" + CRLF;
+        size += end.length();
+
+        final byte[] body = new byte[(int) size];
+        int offset = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            final ByteRange range = ranges.get(i);
+            offset = writeAscii(partHeaders.get(i), body, offset);
+
+            source.read(range.start, body, offset, (int) range.length());
+            offset += (int) range.length();
+        }
+        writeAscii(end, body, offset);
+
+        response.contentType(MULTIPART_BYTERANGES + boundary);
+
+        return body;
+    }
+
+    /**
+     * mark response as partial content with single range, body is set by caller
+     *
+     * @param response response
+     * @param range    satisfiable range
+     * @param length   representation length
+     */
+    static void singleRange(SpottyResponse response, ByteRange range, long length) {
+        response
+            .status(PARTIAL_CONTENT)
+            .headers().add(CONTENT_RANGE, range.contentRange(length));
+    }
+
+    /**
+     * If-Range uses strong comparison, weak entity tag never matches, RFC 7233 Section 3.2
+     */
+    private static boolean ifRangeMatches(String ifRange, String etag, String lastModified) {
+        if (ifRange.startsWith("\"") || ifRange.startsWith(WEAK_PREFIX)) {
+            return etag != null && !etag.startsWith(WEAK_PREFIX) && etag.equals(ifRange);
+        }
+
+        return ifRange.equals(lastModified);
+    }
+
+    /**
+     * @return ranges, empty if no one is satisfiable, null if header is invalid or must be ignored
+     */
+    private static List<ByteRange> parse(String header, long length) {
+        final String value = header.trim();
+        if (!value.regionMatches(true, 0, BYTES_PREFIX, 0, BYTES_PREFIX.length())) {
+            return null;
+        }
+
+        final List<ByteRange> ranges = new ArrayList<>();
+        long total = 0;
+
+        int start = BYTES_PREFIX.length();
+        while (start < value.length()) {
+            int end = value.indexOf(',', start);
+            if (end == -1) {
+                end = value.length();
+            }
+
+            final String spec = value.substring(start, end).trim();
+            start = end + 1;
+
+            if (spec.isEmpty()) {
+                continue;
+            }
+
+            final int dash = spec.indexOf('-');
+            if (dash == -1) {
+                return null;
+            }
+
+            long first;
+            long last;
+            try {
+                if (dash == 0) {
+                    // suffix range: last N bytes
+                    final long suffix = Long.parseLong(spec.substring(1).trim());
+                    if (suffix < 0) {
+                        return null;
+                    }
+
+                    first = Math.max(length - suffix, 0);
+                    last = suffix == 0 ? -1 : length - 1;
+                } else {
+                    first = Long.parseLong(spec.substring(0, dash).trim());
+                    last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1).trim());
+                    if (last < first) {
+                        return null;
+                    }
+
+                    last = Math.min(last, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            if (first < 0) {
+                return null;
+            }
+
+            // not satisfiable range
+            if (first >= length || last < first) {
+                continue;
+            }
+
+            final ByteRange range = new ByteRange(first, last);
+            total += range.length();
+
+            ranges.add(range);
+        }
+
+        // overlapped or too many ranges are served as full representation
+        if (ranges.size() > MAX_RANGES || total > length || total > MAX_PARTIAL_CONTENT_SIZE) {
+            return null;
+        }
+
+        return ranges.isEmpty() ? emptyList() : ranges;
+    }
+
+    private static int writeAscii(String text, byte[] target, int offset) {
+        final byte[] bytes = text.getBytes(US_ASCII);
+        System.arraycopy(bytes, 0, target, offset, bytes.length);
+
+        return offset + bytes.length;
+    }
+
+    static final class ByteRange {
+        // inclusive
+        final long start;
+        final long end;
+
+        ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end - start + 1;
+        }
+
+        String contentRange(long length) {
+            return BYTES + " " + start + "-" + end + "/" + length;
+        }
+    }
+}
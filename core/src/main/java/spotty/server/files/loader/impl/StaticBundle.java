@@ -0,0 +1,256 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.files.loader.impl;
+
+import spotty.common.exception.SpottyException;
+import spotty.common.exception.SpottyNotFoundException;
+import spotty.common.request.SpottyRequest;
+import spotty.common.response.SpottyResponse;
+import spotty.common.utils.IOUtils;
+import spotty.server.compress.CompressionPolicy;
+import spotty.server.compress.Compressor;
+import spotty.server.files.detector.TypeDetector;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import static java.util.Collections.unmodifiableMap;
+import static java.util.zip.Deflater.BEST_COMPRESSION;
+import static spotty.common.http.ContentEncoding.GZIP;
+import static spotty.common.validation.Validation.notBlank;
+import static spotty.common.validation.Validation.notNull;
+
+/**
+ * Immutable index of static files that are loaded once at startup from classpath directory or directory on disk.
+ * Request to a file is a single map lookup, content with gzip variant and validators are prepared in advance
+ * and kept off-heap, so responses share the same buffers.
+ *
+ * <p>Intended for fixed set of files, for example single page application assets packed into jar.</p>
+ */
+public final class StaticBundle {
+    private static final String FILE_PROTOCOL = "file";
+    private static final String JAR_PROTOCOL = "jar";
+    private static final String GZIP_EXTENSION = ".gz";
+
+    private final Map<String, BufferedFile> files;
+    private final CompressionPolicy compressionPolicy;
+    private final long size;
+
+    private StaticBundle(Map<String, BufferedFile> files, CompressionPolicy compressionPolicy) {
+        this.files = unmodifiableMap(files);
+        this.compressionPolicy = compressionPolicy;
+        this.size = files.values().stream().mapToLong(BufferedFile::size).sum();
+    }
+
+    /**
+     * load all files from classpath directory, both from directory and jar
+     *
+     * @param filesDir          classpath directory, ex: /public
+     * @param typeDetector      file type detector
+     * @param compressionPolicy policy to precompress files, sibling file.gz is used regardless of policy
+     * @return bundle with files, paths are relative to filesDir, ex: /js/app.js
+     */
+    public static StaticBundle fromClasspath(String filesDir, TypeDetector typeDetector, CompressionPolicy compressionPolicy) {
+        notNull("filesDir", filesDir);
+
+        final String dir = filesDir.startsWith("/") ? filesDir : "/" + filesDir;
+        final URL root = StaticBundle.class.getResource(dir);
+        if (root == null) {
+            throw new SpottyException("static files directory %s not found in classpath", filesDir);
+        }
+
+        final Builder builder = new Builder(typeDetector, compressionPolicy);
+        try {
+            if (FILE_PROTOCOL.equals(root.getProtocol())) {
+                builder.addDirectory(Paths.get(root.toURI()));
+            } else if (JAR_PROTOCOL.equals(root.getProtocol())) {
+                builder.addJarDirectory(root);
+            } else {
+                throw new SpottyException("unsupported static files location %s", root);
+            }
+        } catch (SpottyException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SpottyException("static files loading error %s", e, filesDir);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * load all files from directory on disk
+     *
+     * @param filesDir          directory path
+     * @param typeDetector      file type detector
+     * @param compressionPolicy policy to precompress files, sibling file.gz is used regardless of policy
+     * @return bundle with files, paths are relative to filesDir, ex: /js/app.js
+     */
+    public static StaticBundle fromDirectory(String filesDir, TypeDetector typeDetector, CompressionPolicy compressionPolicy) {
+        notBlank("filesDir", filesDir);
+
+        final Builder builder = new Builder(typeDetector, compressionPolicy);
+        try {
+            builder.addDirectory(Paths.get(filesDir));
+        } catch (Exception e) {
+            throw new SpottyException("static files loading error %s", e, filesDir);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * send file for given request
+     *
+     * @param path file path relative to bundle directory, ex: /js/app.js
+     * @return multipart content for multiple ranges, otherwise null and body is set to the response
+     * @throws SpottyNotFoundException if file is not in the bundle
+     */
+    public byte[] loadFile(String path, SpottyRequest request, SpottyResponse response) throws Exception {
+        final BufferedFile file = files.get(path);
+        if (file == null) {
+            throw new SpottyNotFoundException("file not found %s", request.path());
+        }
+
+        return file.send(request, response, compressionPolicy);
+    }
+
+    public boolean contains(String path) {
+        return files.containsKey(path);
+    }
+
+    /**
+     * @return count of files in the bundle
+     */
+    public int filesCount() {
+        return files.size();
+    }
+
+    /**
+     * @return total size of files content and gzip variants in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    private static final class Builder {
+        private final Map<String, URL> urls = new HashMap<>();
+        private final Map<String, byte[]> contents = new HashMap<>();
+        private final Map<String, Long> lastModified = new HashMap<>();
+
+        private final TypeDetector typeDetector;
+        private final CompressionPolicy compressionPolicy;
+
+        // files are compressed once, so it is worth to spend more time for better compression
+        private final Compressor compressor = new Compressor(BEST_COMPRESSION);
+
+        private Builder(TypeDetector typeDetector, CompressionPolicy compressionPolicy) {
+            this.typeDetector = notNull("typeDetector", typeDetector);
+            this.compressionPolicy = notNull("compressionPolicy", compressionPolicy);
+        }
+
+        private void addDirectory(Path root) throws Exception {
+            try (final Stream<Path> paths = Files.walk(root)) {
+                final Path[] files = paths.filter(Files::isRegularFile).toArray(Path[]::new);
+                for (Path file : files) {
+                    final String path = "/" + root.relativize(file).toString().replace(File.separatorChar, '/');
+                    add(path, file.toUri().toURL(), Files.readAllBytes(file), Files.getLastModifiedTime(file).toMillis());
+                }
+            }
+        }
+
+        private void addJarDirectory(URL root) throws Exception {
+            final URLConnection connection = root.openConnection();
+            connection.setUseCaches(false);
+
+            final JarURLConnection jarConnection = (JarURLConnection) connection;
+            final String entryName = jarConnection.getEntryName();
+            final String prefix = entryName == null ? "" : entryName + "/";
+
+            try (final JarFile jar = jarConnection.getJarFile()) {
+                final Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final JarEntry entry = entries.nextElement();
+                    if (entry.isDirectory() || !entry.getName().startsWith(prefix)) {
+                        continue;
+                    }
+
+                    try (final InputStream in = jar.getInputStream(entry)) {
+                        final URL url = new URL(JAR_PROTOCOL + ":" + jarConnection.getJarFileURL() + "!/" + entry.getName());
+                        add("/" + entry.getName().substring(prefix.length()), url, IOUtils.toByteArray(in), entry.getTime());
+                    }
+                }
+            }
+        }
+
+        private void add(String path, URL url, byte[] content, long modified) {
+            urls.put(path, url);
+            contents.put(path, content);
+            lastModified.put(path, modified);
+        }
+
+        private StaticBundle build() {
+            final Map<String, BufferedFile> files = new HashMap<>();
+            try {
+                for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+                    final String path = entry.getKey();
+                    final byte[] content = entry.getValue();
+                    final String contentType = typeDetector.detect(urls.get(path));
+
+                    byte[] gzip = contents.get(path + GZIP_EXTENSION);
+                    if (gzip == null && !path.endsWith(GZIP_EXTENSION) && compressionPolicy.isCompressible(contentType, content.length)) {
+                        gzip = compressor.compress(GZIP, content);
+
+                        // content is compressed already by its format
+                        if (gzip.length >= content.length) {
+                            gzip = null;
+                        }
+                    }
+
+                    files.put(path, new BufferedFile(contentType, lastModified.get(path), direct(content), direct(gzip)));
+                }
+            } catch (Exception e) {
+                throw new SpottyException("static files preparing error", e);
+            }
+
+            return new StaticBundle(files, compressionPolicy);
+        }
+
+        private static ByteBuffer direct(byte[] content) {
+            if (content == null) {
+                return null;
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+            buffer.put(content).flip();
+
+            return buffer;
+        }
+    }
+
+}
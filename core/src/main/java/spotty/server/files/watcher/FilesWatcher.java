@@ -0,0 +1,175 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.files.watcher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spotty.common.exception.SpottyException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static spotty.common.utils.ThreadUtils.threadPool;
+import static spotty.common.validation.Validation.notNull;
+
+/**
+ * Watches directories with static files recursively and notifies about changed files,
+ * so cached files can be invalidated exactly when they are changed on disk instead of by ttl.
+ *
+ * <p>Events are lost when the file system overflows events queue, in this case all files are considered changed.</p>
+ */
+public final class FilesWatcher implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(FilesWatcher.class);
+
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final WatchService watchService;
+    private final Thread watcherThread;
+
+    private final Consumer<URL> onChange;
+    private final Runnable onOverflow;
+
+    /**
+     * @param onChange   called with url of created, modified or deleted file
+     * @param onOverflow called when events were lost and any file could be changed
+     */
+    public FilesWatcher(Consumer<URL> onChange, Runnable onOverflow) {
+        this.onChange = notNull("onChange", onChange);
+        this.onOverflow = notNull("onOverflow", onOverflow);
+
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new SpottyException("files watcher initialization error", e);
+        }
+
+        this.watcherThread = threadPool("spotty-files-watcher").newThread(this::watch);
+        this.watcherThread.start();
+    }
+
+    /**
+     * watch directory and all its subdirectories, new subdirectories are watched as soon as they are created
+     *
+     * @param directory directory to watch
+     */
+    public void register(Path directory) {
+        notNull("directory", directory);
+
+        try {
+            registerAll(directory.toAbsolutePath());
+        } catch (IOException e) {
+            throw new SpottyException("unable to watch directory %s", e, directory);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (Exception e) {
+            // ignore
+        }
+
+        watcherThread.interrupt();
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final WatchKey key = watchService.take();
+                final Path directory = directories.get(key);
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    handle(directory, event);
+                }
+
+                if (!key.reset()) {
+                    directories.remove(key);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // watcher is closed
+        } catch (Exception e) {
+            LOG.error("files watcher error", e);
+        }
+    }
+
+    private void handle(Path directory, WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW || directory == null) {
+            notifyOverflow();
+            return;
+        }
+
+        final Path path = directory.resolve((Path) event.context());
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+            try {
+                registerAll(path);
+            } catch (ClosedWatchServiceException e) {
+                throw e;
+            } catch (Exception e) {
+                // directory could be deleted right after creation, changes inside it could be missed
+                LOG.warn("files watcher registration error {}", path, e);
+                notifyOverflow();
+            }
+        }
+
+        notifyChange(path);
+    }
+
+    private void notifyOverflow() {
+        try {
+            onOverflow.run();
+        } catch (Exception e) {
+            LOG.warn("files watcher overflow handling error", e);
+        }
+    }
+
+    private void notifyChange(Path path) {
+        try {
+            onChange.accept(path.toFile().toURI().toURL());
+        } catch (Exception e) {
+            LOG.warn("files watcher change handling error {}", path, e);
+        }
+    }
+
+    private void registerAll(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
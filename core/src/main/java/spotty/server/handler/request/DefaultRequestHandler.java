@@ -21,6 +21,7 @@ import spotty.common.request.SpottyDefaultRequest;
 import spotty.common.request.SpottyRequest;
 import spotty.common.response.SpottyResponse;
 import spotty.common.router.route.RouteEntry;
+import spotty.server.compress.CompressionPolicy;
 import spotty.server.compress.Compressor;
 import spotty.server.router.SpottyRouter;
 import spotty.server.session.SessionManager;
@@ -28,18 +29,28 @@ import spotty.server.session.SessionManager;
 import java.util.Collection;
 
 import static spotty.common.http.HttpHeaders.ACCEPT;
+import static spotty.common.http.HttpHeaders.ACCEPT_ENCODING;
 import static spotty.common.http.HttpHeaders.CONTENT_ENCODING;
+import static spotty.common.http.HttpMethod.HEAD;
+import static spotty.common.http.HttpStatus.PARTIAL_CONTENT;
+import static spotty.common.utils.HeaderUtils.appendVary;
 import static spotty.common.validation.Validation.notNull;
 
 public final class DefaultRequestHandler implements RequestHandler {
 
     private final SpottyRouter router;
     private final Compressor compressor;
+    private final CompressionPolicy compressionPolicy;
     private final SessionManager sessionManager;
 
     public DefaultRequestHandler(SpottyRouter router, Compressor compressor, SessionManager sessionManager) {
+        this(router, compressor, CompressionPolicy.DISABLED, sessionManager);
+    }
+
+    public DefaultRequestHandler(SpottyRouter router, Compressor compressor, CompressionPolicy compressionPolicy, SessionManager sessionManager) {
         this.router = notNull("router", router);
         this.compressor = notNull("compress", compressor);
+        this.compressionPolicy = notNull("compressionPolicy", compressionPolicy);
         this.sessionManager = notNull("sessionManager", sessionManager);
     }
 
@@ -63,7 +74,11 @@ public final class DefaultRequestHandler implements RequestHandler {
             executeFilters(routeEntry.beforeFilters(), request, response);
             result = routeEntry.route().handle(request, response);
         } finally {
-            executeFilters(routeEntry.afterFilters(), request, response);
+            try {
+                executeFilters(routeEntry.afterFilters(), request, response);
+            } finally {
+                sessionManager.save(request, response);
+            }
         }
 
         byte[] body = response.body();
@@ -75,7 +90,19 @@ public final class DefaultRequestHandler implements RequestHandler {
             return;
         }
 
-        if (response.headers().has(CONTENT_ENCODING)) {
+        negotiateContentEncoding(request, response, body);
+
+        if (request.method() == HEAD) {
+            // response to HEAD has headers only, so do not compress the body that will be discarded,
+            // compressed length is unknown in this case and content-length is omitted
+            response
+                .contentLength(isCompressionRequired(response) ? -1 : body.length)
+                .body((byte[]) null);
+
+            return;
+        }
+
+        if (isCompressionRequired(response)) {
             final ContentEncoding contentEncoding = ContentEncoding.of(response.headers().get(CONTENT_ENCODING));
 
             body = compressor.compress(contentEncoding, body);
@@ -84,6 +111,32 @@ public final class DefaultRequestHandler implements RequestHandler {
         response.body(body);
     }
 
+    /**
+     * choose Content-Encoding by server compression policy, if route did not set it by itself
+     */
+    private void negotiateContentEncoding(SpottyRequest request, SpottyResponse response, byte[] body) {
+        // partial content is a slice of identity representation
+        if (response.status() == PARTIAL_CONTENT) {
+            return;
+        }
+
+        if (response.headers().has(CONTENT_ENCODING) || !compressionPolicy.isCompressible(response.contentType(), body.length)) {
+            return;
+        }
+
+        // response representation depends on Accept-Encoding even if client does not accept compression
+        appendVary(response.headers(), ACCEPT_ENCODING);
+
+        final ContentEncoding contentEncoding = compressionPolicy.negotiate(request.headers().get(ACCEPT_ENCODING));
+        if (contentEncoding != null) {
+            response.headers().add(CONTENT_ENCODING, contentEncoding.code);
+        }
+    }
+
+    private static boolean isCompressionRequired(SpottyResponse response) {
+        return response.headers().has(CONTENT_ENCODING) && !response.isEncoded();
+    }
+
     private void executeFilters(Collection<Filter> filters, SpottyRequest request, SpottyResponse response) throws Exception {
         for (Filter filter : filters) {
             filter.handle(request, response);
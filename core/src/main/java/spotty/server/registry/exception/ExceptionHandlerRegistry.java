@@ -22,43 +22,104 @@ import spotty.server.handler.exception.ExceptionHandler;
 import java.util.HashMap;
 import java.util.Map;
 
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.unmodifiableMap;
+import static spotty.common.validation.Validation.notNull;
+import static spotty.common.validation.Validation.validate;
+
+/**
+ * registry of exception handlers, it is read on every failed request from all worker threads,
+ * so registered handlers are copy-on-write and resolved handlers are cached per exception class in a {@link ClassValue},
+ * that makes lookup lock-free and allocation-free after the first resolution
+ */
 public final class ExceptionHandlerRegistry {
     @VisibleForTesting
-    final Map<Class<? extends Exception>, ExceptionHandler<? extends Exception>> handlers = new HashMap<>();
+    volatile Map<Class<?>, ExceptionHandler<? extends Exception>> handlers = emptyMap();
+
+    private volatile Resolver resolver = new Resolver(handlers);
 
     public <T extends Exception> void register(Class<T> exceptionClass, ExceptionHandler<T> handler) {
-        handlers.put(exceptionClass, handler);
+        put(notNull("exceptionClass", exceptionClass), notNull("handler", handler));
+    }
+
+    /**
+     * register handler for all exceptions that implement given interface,
+     * handler registered for exception class or its closer parent takes precedence
+     *
+     * @param exceptionInterface marker interface of exceptions
+     * @param handler            exception handler
+     */
+    public void registerInterface(Class<?> exceptionInterface, ExceptionHandler<? extends Exception> handler) {
+        notNull("exceptionInterface", exceptionInterface);
+        validate(exceptionInterface.isInterface(), "%s is not an interface", exceptionInterface.getName());
+
+        put(exceptionInterface, notNull("handler", handler));
     }
 
     @SuppressWarnings("unchecked")
     public <T extends Exception> ExceptionHandler<? super T> getHandler(Class<T> exceptionClass) {
-        ExceptionHandler<?> handler;
-        if (handlers.containsKey(exceptionClass)) {
-            handler = handlers.get(exceptionClass);
-        } else {
-            handler = findHandler(exceptionClass);
-            if (handler == null) {
-                throw new SpottyException("not found exception handler");
-            }
-
-            // cache result
-            handlers.put(exceptionClass, handler);
+        final ExceptionHandler<?> handler = resolver.get(exceptionClass);
+        if (handler == null) {
+            throw new SpottyException("not found exception handler");
         }
 
         return (ExceptionHandler<? super T>) handler;
     }
 
-    private ExceptionHandler<? extends Exception> findHandler(Class<?> exceptionClass) {
-        final Class<?> superclass = exceptionClass.getSuperclass();
-        if (superclass == null) {
-            return null;
+    private synchronized void put(Class<?> type, ExceptionHandler<? extends Exception> handler) {
+        final Map<Class<?>, ExceptionHandler<? extends Exception>> copy = new HashMap<>(handlers);
+        copy.put(type, handler);
+
+        handlers = unmodifiableMap(copy);
+
+        // drop resolved handlers, registration is rare and mostly happens before server start
+        resolver = new Resolver(handlers);
+    }
+
+    private static final class Resolver extends ClassValue<ExceptionHandler<?>> {
+        private final Map<Class<?>, ExceptionHandler<? extends Exception>> handlers;
+
+        private Resolver(Map<Class<?>, ExceptionHandler<? extends Exception>> handlers) {
+            this.handlers = handlers;
         }
 
-        if (handlers.containsKey(superclass)) {
-            return handlers.get(superclass);
+        @Override
+        protected ExceptionHandler<?> computeValue(Class<?> exceptionClass) {
+            // walk from the exception class to its parents,
+            // on each level class itself is checked first and then its interfaces
+            for (Class<?> type = exceptionClass; type != null; type = type.getSuperclass()) {
+                final ExceptionHandler<?> handler = handlers.get(type);
+                if (handler != null) {
+                    return handler;
+                }
+
+                final ExceptionHandler<?> interfaceHandler = findByInterfaces(type);
+                if (interfaceHandler != null) {
+                    return interfaceHandler;
+                }
+            }
+
+            return null;
         }
 
-        return findHandler(superclass);
+        private ExceptionHandler<?> findByInterfaces(Class<?> type) {
+            final Class<?>[] interfaces = type.getInterfaces();
+            for (Class<?> anInterface : interfaces) {
+                final ExceptionHandler<?> handler = handlers.get(anInterface);
+                if (handler != null) {
+                    return handler;
+                }
+            }
+
+            for (Class<?> anInterface : interfaces) {
+                final ExceptionHandler<?> handler = findByInterfaces(anInterface);
+                if (handler != null) {
+                    return handler;
+                }
+            }
+
+            return null;
+        }
     }
 
 }
@@ -17,8 +17,11 @@ package spotty.server.router;
 
 import com.google.common.annotations.VisibleForTesting;
 import spotty.common.exception.SpottyHttpException;
+import spotty.common.exception.SpottyMethodNotAllowedException;
 import spotty.common.exception.SpottyNotFoundException;
 import spotty.common.exception.SpottyRouteDuplicationException;
+import spotty.common.http.AcceptHeader;
+import spotty.common.http.AcceptHeader.MediaRange;
 import spotty.common.http.HttpMethod;
 import spotty.common.router.route.Route;
 import spotty.common.router.route.RouteEntry;
@@ -27,6 +30,10 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
 
+import static spotty.common.http.HttpHeaders.ALLOW;
+import static spotty.common.http.HttpMethod.GET;
+import static spotty.common.http.HttpMethod.HEAD;
+import static spotty.common.http.HttpMethod.OPTIONS;
 import static spotty.common.utils.RouterUtils.normalizePath;
 import static spotty.common.validation.Validation.notBlank;
 import static spotty.common.validation.Validation.notNull;
@@ -89,6 +96,11 @@ final class Routable {
         }
 
         routesWithAcceptType.put(acceptType, routeEntry);
+
+        // created with the node, so filters of the path are attached to it like to any other route
+        if (routeNode.optionsRoute == null) {
+            routeNode.optionsRoute = optionsRoute(routeNode);
+        }
     }
 
     /**
@@ -177,7 +189,7 @@ final class Routable {
      * @param method       The HTTP method of the request
      * @param acceptType   The accept type of the request
      * @return             The route entry matching the given path, method, and accept type
-     * @throws SpottyHttpException if the route is not found
+     * @throws SpottyHttpException if the route is not found or http method is not allowed for the path
      */
     RouteEntry getRoute(String rawPath, HttpMethod method, String acceptType) throws SpottyHttpException {
         RouteNode routeNode = this.routes.get(rawPath);
@@ -189,17 +201,27 @@ final class Routable {
             throw new SpottyNotFoundException("route not found for %s", rawPath);
         }
 
-        final Map<String, RouteEntry> entry = routeNode.handlers.get(method);
-        if (entry == null) {
-            throw new SpottyNotFoundException("route not found for %s %s", method, rawPath);
+        Map<String, RouteEntry> entry = routeNode.handlers.get(method);
+        if (entry == null && method == HEAD) {
+            // HEAD is answered by GET route, request handler skips the body
+            entry = routeNode.handlers.get(GET);
         }
 
-        final String accept = acceptType == null ? DEFAULT_ACCEPT_TYPE : acceptType;
-        RouteEntry routeEntry = entry.get(accept);
-        if (routeEntry == null) {
-            routeEntry = entry.get(DEFAULT_ACCEPT_TYPE);
+        if (entry == null) {
+            if (routeNode.handlers.isEmpty()) {
+                throw new SpottyNotFoundException("route not found for %s %s", method, rawPath);
+            }
+
+            if (method == OPTIONS && routeNode.optionsRoute != null) {
+                return routeNode.optionsRoute;
+            }
+
+            throw new SpottyMethodNotAllowedException(routeNode.allow(), "method %s is not allowed for %s", method, rawPath);
         }
 
+        // request without Accept header is served by route registered for any accept type
+        final String accept = acceptType == null ? DEFAULT_ACCEPT_TYPE : acceptType;
+        final RouteEntry routeEntry = acceptType == null ? entry.get(DEFAULT_ACCEPT_TYPE) : negotiate(entry, acceptType);
         if (routeEntry == null) {
             throw new SpottyNotFoundException("route not found for %s(%s) %s", method, accept, rawPath);
         }
@@ -207,6 +229,74 @@ final class Routable {
         return routeEntry;
     }
 
+    /**
+     * Choose route by Accept header, RFC 7231 Section 5.3.2.
+     * Route with the highest quality of the most specific matched media range wins.
+     * Route registered for any accept type is used when the client has no explicit preference (matched by *&#47;* only)
+     * or no other route is acceptable.
+     *
+     * @param routes       routes of one http method mapped by accept type
+     * @param acceptHeader the accept header of the request
+     * @return most suitable route or null if no one is acceptable
+     */
+    private static RouteEntry negotiate(Map<String, RouteEntry> routes, String acceptHeader) {
+        // fast path, Accept header is equal to the registered accept type
+        final RouteEntry exactly = routes.get(acceptHeader);
+        if (exactly != null) {
+            return exactly;
+        }
+
+        final RouteEntry anyType = routes.get(DEFAULT_ACCEPT_TYPE);
+        if (anyType != null && routes.size() == 1) {
+            return anyType;
+        }
+
+        final AcceptHeader accept = AcceptHeader.parse(acceptHeader);
+
+        RouteEntry best = null;
+        MediaRange bestRange = null;
+        for (Map.Entry<String, RouteEntry> route : routes.entrySet()) {
+            if (DEFAULT_ACCEPT_TYPE.equals(route.getKey())) {
+                continue;
+            }
+
+            final MediaRange range = accept.match(route.getKey());
+            if (range == null || !range.isAcceptable()) {
+                continue;
+            }
+
+            if (bestRange == null || range.isPreferredOver(bestRange)) {
+                best = route.getValue();
+                bestRange = range;
+            }
+        }
+
+        if (best == null || (anyType != null && bestRange.isWildcard())) {
+            return anyType;
+        }
+
+        return best;
+    }
+
+    /**
+     * Route to answer OPTIONS request with Allow header, when OPTIONS route is not registered for the path.
+     * Allow header is built on each request, so the route stays actual when routes are added or removed.
+     *
+     * @param routeNode found route node
+     * @return options route of the node
+     */
+    private static RouteEntry optionsRoute(RouteNode routeNode) {
+        return new RouteEntry()
+            .pathTemplate(routeNode.pathNormalized)
+            .pathNormalized(routeNode.pathNormalized)
+            .httpMethod(OPTIONS)
+            .acceptType(DEFAULT_ACCEPT_TYPE)
+            .route((request, response) -> {
+                response.addHeader(ALLOW, routeNode.allow());
+                return null;
+            });
+    }
+
     @SuppressWarnings("unchecked")
     private static <P, K, V> Function<P, Map<K, V>> createEmptyMap() {
         return (Function<P, Map<K, V>>) (Function<?, ?>) CREATE_NEW_MAP;
@@ -18,11 +18,17 @@ package spotty.server.router;
 import spotty.common.http.HttpMethod;
 import spotty.common.router.route.RouteEntry;
 
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import static java.util.Collections.emptyMap;
+import static java.util.stream.Collectors.joining;
+import static spotty.common.http.HttpMethod.GET;
+import static spotty.common.http.HttpMethod.HEAD;
+import static spotty.common.http.HttpMethod.OPTIONS;
 
 /**
  * Represents a node in the Trie-based router.
@@ -47,6 +53,9 @@ class RouteNode {
     // Map of child nodes indexed by character keys
     Map<Character, RouteNode> children = emptyMap();
 
+    // Route to answer OPTIONS request when it is not registered explicitly, created with the first route of the node
+    volatile RouteEntry optionsRoute;
+
     RouteNode(char key) {
         this.key = key;
     }
@@ -65,6 +74,30 @@ class RouteNode {
         children.put(node.key, node);
     }
 
+    /**
+     * Collects http methods registered for the node.
+     * HEAD is allowed when GET is registered and OPTIONS is always allowed,
+     * because both of them are answered automatically.
+     *
+     * @return value for Allow header, ex: GET, HEAD, OPTIONS
+     */
+    String allow() {
+        final Set<HttpMethod> methods = EnumSet.of(OPTIONS);
+        handlers.forEach((method, routes) -> {
+            if (!routes.isEmpty()) {
+                methods.add(method);
+            }
+        });
+
+        if (methods.contains(GET)) {
+            methods.add(HEAD);
+        }
+
+        return methods.stream()
+            .map(HttpMethod::name)
+            .collect(joining(", "));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
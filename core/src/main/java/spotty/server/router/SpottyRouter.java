@@ -29,6 +29,7 @@ import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 import static com.google.common.collect.Lists.asList;
@@ -490,24 +491,24 @@ public final class SpottyRouter {
     }
 
     private void addFilterToRoute(Pattern matcher, HttpMethod method, String acceptType, Filter filter, BiConsumer<RouteEntry, Filter> adder) {
-        routable.trieRoutes.forEachRouteIf(
-            route -> {
-                if (!matcher.matcher(route.pathNormalized()).matches()) {
-                    return false;
-                }
-
-                if (method != null && method != route.httpMethod()) {
-                    return false;
-                }
-
-                if (acceptType == null) {
-                    return true;
-                }
-
-                return acceptType.equals(route.acceptType());
-            },
-            route -> adder.accept(route, filter)
-        );
+        final Predicate<RouteEntry> matches = route -> {
+            if (!matcher.matcher(route.pathNormalized()).matches()) {
+                return false;
+            }
+
+            if (method != null && method != route.httpMethod()) {
+                return false;
+            }
+
+            if (acceptType == null) {
+                return true;
+            }
+
+            return acceptType.equals(route.acceptType());
+        };
+
+        routable.trieRoutes.forEachRouteIf(matches, route -> adder.accept(route, filter));
+        routable.trieRoutes.forEachImplicitRouteIf(matches, route -> adder.accept(route, filter));
     }
 
     @VisibleForTesting
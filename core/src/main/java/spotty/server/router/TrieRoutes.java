@@ -176,6 +176,7 @@ class TrieRoutes {
         while (node != null && node != root) {
             node.pathNormalized = null;
             node.handlers = emptyMap();
+            node.optionsRoute = null;
             node.isRoute = false;
 
             if (node.children.isEmpty()) {
@@ -219,6 +220,23 @@ class TrieRoutes {
         }
     }
 
+    /**
+     * same as {@link #forEachRouteIf(Predicate, Consumer)} for routes that are not registered explicitly,
+     * like route that answers OPTIONS request
+     */
+    void forEachImplicitRouteIf(Predicate<RouteEntry> predicate, Consumer<RouteEntry> consumer) {
+        final Deque<RouteNode> queue = new LinkedList<>(root.children.values());
+        while (!queue.isEmpty()) {
+            final RouteNode current = queue.remove();
+            queue.addAll(current.children.values());
+
+            final RouteEntry optionsRoute = current.optionsRoute;
+            if (current.isRoute && optionsRoute != null && predicate.test(optionsRoute)) {
+                consumer.accept(optionsRoute);
+            }
+        }
+    }
+
     @VisibleForTesting
     List<String> toNormalizedPaths() {
         final List<String> result = new ArrayList<>();
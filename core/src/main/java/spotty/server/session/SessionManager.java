@@ -23,10 +23,18 @@ import spotty.common.exception.SpottyValidationException;
 import spotty.common.request.SpottyDefaultRequest;
 import spotty.common.response.SpottyResponse;
 import spotty.common.session.Session;
+import spotty.server.session.cookie.SessionCookieCodec;
+import spotty.server.session.snapshot.SessionSnapshot;
+import spotty.server.session.store.SessionStore;
+import spotty.server.session.store.impl.InMemorySessionStore;
+import spotty.server.session.store.replication.ReplicatedSessionStore;
+import spotty.server.session.store.replication.ReplicationTransport;
 
 import java.io.Closeable;
+import java.nio.file.Paths;
 import java.time.Instant;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -39,6 +47,7 @@ import static spotty.common.http.HttpHeaders.SPOTTY_SESSION_ID;
 import static spotty.common.utils.ThreadUtils.threadPool;
 import static spotty.common.validation.Validation.isNull;
 import static spotty.common.validation.Validation.notNull;
+import static spotty.common.validation.Validation.validate;
 
 public final class SessionManager implements Closeable {
     private static final Logger LOG = LoggerFactory.getLogger(SessionManager.class);
@@ -46,23 +55,44 @@ public final class SessionManager implements Closeable {
     private static final int DEFAULT_TICK = 10;
     private static final TimeUnit DEFAULT_TIME_UNIT = SECONDS;
     private static final long DEFAULT_SESSION_TTL = 60 * 60 * 24; // 1 Day
+    private static final long STOP_TIMEOUT_SECONDS = 10;
 
     @VisibleForTesting
-    final Map<UUID, Session> sessions = new ConcurrentHashMap<>();
+    final SessionStore sessions;
+    // local store without replication
+    private final SessionStore localSessions;
 
     private ScheduledExecutorService executor;
     private volatile boolean disabled = true;
+    private boolean restored = false;
+
+    // sessions changed since the last snapshot
+    private final Map<UUID, Session> changed = new ConcurrentHashMap<>();
+    private final SessionSnapshot snapshot;
+    private final int snapshotInterval;
+
+    // cookie sessions mode: session is kept in the cookie instead of the store
+    private final SessionCookieCodec cookieCodec;
 
     private final int sessionCheckTickDelay;
     private final TimeUnit timeUnit;
     private final long defaultSessionTtl;
     private final long defaultSessionCookieTtl;
+    private final boolean slidingSessionTtl;
 
     private SessionManager(Builder builder) {
         this.sessionCheckTickDelay = builder.sessionCheckTickDelay;
         this.timeUnit = notNull("timeUnit", builder.timeUnit);
         this.defaultSessionTtl = builder.defaultSessionTtl;
         this.defaultSessionCookieTtl = builder.defaultSessionCookieTtl;
+        this.slidingSessionTtl = builder.slidingSessionTtl;
+        this.localSessions = notNull("sessionStore", builder.sessionStore);
+        this.sessions = builder.replicationTransport == null
+            ? localSessions
+            : new ReplicatedSessionStore(localSessions, builder.replicationTransport);
+        this.snapshot = builder.snapshotFile == null ? null : new SessionSnapshot(Paths.get(builder.snapshotFile));
+        this.snapshotInterval = builder.snapshotInterval;
+        this.cookieCodec = builder.cookieCodec;
     }
 
     public static Builder builder() {
@@ -70,12 +100,18 @@ public final class SessionManager implements Closeable {
     }
 
     /**
-     * enable session and register session watcher to remove expired
+     * enable session and register session watcher to remove expired,
+     * sessions are restored from the snapshot file first if it is enabled
      */
     public void enableSession() {
         if (disabled) {
             disabled = false;
-            registerSessionWatcher();
+
+            // cookie sessions are not stored, so there is nothing to watch
+            if (cookieCodec == null) {
+                restoreSnapshot();
+                registerSessionWatcher();
+            }
         } else {
             LOG.warn("session enabled already");
         }
@@ -84,7 +120,7 @@ public final class SessionManager implements Closeable {
     public void disableSession() {
         disabled = true;
 
-        close();
+        stopSessionWatcher();
     }
 
     public void register(SpottyDefaultRequest request, SpottyResponse response) {
@@ -93,17 +129,71 @@ public final class SessionManager implements Closeable {
         }
 
         final String rawId = request.cookies().get(SPOTTY_SESSION_ID);
-        final Session session = isNull(rawId) ? newSession(response) : restoreSession(rawId);
+        if (cookieCodec != null) {
+            request.lazySession(() -> cookieSession(rawId));
+            return;
+        }
+
+        if (isNull(rawId)) {
+            request.lazySession(() -> newSession(response));
+            return;
+        }
+
+        final UUID sessionId = fromString(rawId);
+        request.lazySession(() -> restoreSession(sessionId, response));
+    }
+
+    /**
+     * save changes of the request session to the store after request handling,
+     * or write changed session to the cookie in cookie sessions mode.
+     * Session that has been only read is not saved, so it is not replicated or appended to the snapshot.
+     */
+    public void save(SpottyDefaultRequest request, SpottyResponse response) {
+        if (disabled || !request.isSessionLoaded()) {
+            return;
+        }
+
+        final Session session = request.session();
+        if (cookieCodec != null) {
+            if (session.resetModified()) {
+                response.cookie(sessionCookie(cookieCodec.encode(session)));
+            }
+
+            return;
+        }
 
-        request.session(session);
+        if (!session.isTransient() && session.resetModified()) {
+            sessions.put(session);
+            markChanged(session);
+        }
     }
 
     @Override
     public void close() {
+        stopSessionWatcher();
+
+        if (snapshot != null) {
+            writeSnapshot();
+            snapshot.close();
+        }
+
+        sessions.close();
+    }
+
+    private void stopSessionWatcher() {
+        if (executor == null) {
+            return;
+        }
+
+        // snapshot in progress must not be interrupted, otherwise changes are lost
+        executor.shutdown();
         try {
+            if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
             executor.shutdownNow();
-        } catch (Exception e) {
-            // ignore
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -113,44 +203,153 @@ public final class SessionManager implements Closeable {
     private void registerSessionWatcher() {
         executor = newSingleThreadScheduledExecutor(threadPool("session-watcher"));
         executor.scheduleWithFixedDelay(() -> {
-            final Instant now = Instant.now();
-            final Iterator<Map.Entry<UUID, Session>> iterator = sessions.entrySet().iterator();
-            while (iterator.hasNext()) {
-                final Session session = iterator.next().getValue();
-                if (now.isAfter(session.expires())) {
-                    iterator.remove();
-                }
+            try {
+                sessions.removeExpired(Instant.now());
+            } catch (Exception e) {
+                LOG.error("remove expired sessions error", e);
             }
         }, 0, sessionCheckTickDelay, timeUnit);
+
+        if (snapshot != null) {
+            executor.scheduleWithFixedDelay(this::writeSnapshot, snapshotInterval, snapshotInterval, SECONDS);
+        }
     }
 
+    private synchronized void restoreSnapshot() {
+        if (snapshot == null || restored) {
+            return;
+        }
+
+        // snapshot could be older than sessions of other nodes, so restored sessions are not replicated
+        final long start = System.currentTimeMillis();
+        final int count = snapshot.restore(localSessions, Instant.now());
+        restored = true;
+
+        LOG.info("{} sessions have been restored from {} in {}ms", count, snapshot.file(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * append sessions changed since the last snapshot to the snapshot file,
+     * compact the file when it contains mostly outdated records
+     */
+    private synchronized void writeSnapshot() {
+        if (changed.isEmpty() && !snapshot.isCompactionRequired(sessions.size())) {
+            return;
+        }
+
+        final List<Session> batch = new ArrayList<>(changed.size());
+        changed.forEach((id, session) -> {
+            // session changed again concurrently stays in the map for the next snapshot
+            if (changed.remove(id, session)) {
+                batch.add(session);
+            }
+        });
+
+        try {
+            snapshot.append(batch);
+
+            if (snapshot.isCompactionRequired(sessions.size())) {
+                snapshot.compact(sessions);
+            }
+        } catch (Exception e) {
+            batch.forEach(session -> changed.putIfAbsent(session.id, session));
+            LOG.error("session snapshot error", e);
+        }
+    }
+
+    private void markChanged(Session session) {
+        if (snapshot != null) {
+            changed.put(session.id, session);
+        }
+    }
+
+    /**
+     * new session is transient: it is stored and its cookie is sent only when request changes the session
+     */
     private Session newSession(SpottyResponse response) {
         final Session session = new Session();
         session.ttl(defaultSessionTtl);
 
-        sessions.put(session.id, session);
+        return session.onFirstChange(() -> {
+            sessions.put(session);
+            response.cookie(sessionCookie(session.id.toString()));
+        });
+    }
+
+    /**
+     * session from the cookie, cookie is rewritten only when request changes the session,
+     * broken, forged or expired cookie gives new session
+     */
+    private Session cookieSession(String cookie) {
+        final Instant now = Instant.now();
 
+        Session session = isNull(cookie) ? null : cookieCodec.decode(cookie);
+        if (session == null || (session.expires() != null && now.isAfter(session.expires()))) {
+            session = new Session();
+            session.ttl(defaultSessionTtl);
+
+            // new session is written to the cookie only when request changes it
+            session.resetModified();
+        }
+
+        if (slidingSessionTtl && isSlideRequired(session, now)) {
+            session.expires(now.plusSeconds(defaultSessionTtl));
+        }
+
+        return session;
+    }
+
+    private Cookie sessionCookie(String value) {
         final Cookie.Builder cookie = Cookie.builder()
             .name(SPOTTY_SESSION_ID)
-            .value(session.id.toString());
+            .value(value);
 
         if (defaultSessionCookieTtl > 0) {
             cookie.maxAge(defaultSessionCookieTtl);
         }
 
-        response.cookie(cookie.build());
+        return cookie.build();
+    }
 
-        return session;
+    /**
+     * unknown or expired session id is not restored, client gets new session with new id instead
+     */
+    private Session restoreSession(UUID sessionId, SpottyResponse response) {
+        final Session stored = sessions.get(sessionId);
+        if (stored == null) {
+            return newSession(response);
+        }
+
+        final Instant now = Instant.now();
+        if (stored.expires() != null && now.isAfter(stored.expires())) {
+            // expired, but not removed by session watcher yet
+            sessions.remove(sessionId);
+            return newSession(response);
+        }
+
+        if (slidingSessionTtl) {
+            slideExpiration(stored, now);
+        }
+
+        return stored;
     }
 
-    private Session restoreSession(String rawId) {
-        final UUID sessionId = fromString(rawId);
-        return sessions.computeIfAbsent(sessionId, id -> {
-            final Session session = new Session(id);
-            session.ttl(defaultSessionTtl);
+    /**
+     * extend session expiration on use, but not on each request: store is touched only when
+     * at least tenth part of ttl has passed, so sessions are not moved between expiration buckets too often
+     */
+    private void slideExpiration(Session session, Instant now) {
+        if (isSlideRequired(session, now)) {
+            sessions.touch(session.id, now.plusSeconds(defaultSessionTtl));
+            markChanged(session);
+        }
+    }
 
-            return session;
-        });
+    private boolean isSlideRequired(Session session, Instant now) {
+        final Instant expires = now.plusSeconds(defaultSessionTtl);
+        final long threshold = Math.max(1, defaultSessionTtl / 10);
+
+        return session.expires() == null || session.expires().plusSeconds(threshold).isBefore(expires);
     }
 
     private UUID fromString(String rawId) {
@@ -166,6 +365,12 @@ public final class SessionManager implements Closeable {
         private TimeUnit timeUnit = DEFAULT_TIME_UNIT;
         private long defaultSessionTtl = DEFAULT_SESSION_TTL;
         private long defaultSessionCookieTtl = 0;
+        private SessionStore sessionStore = new InMemorySessionStore();
+        private boolean slidingSessionTtl = false;
+        private String snapshotFile;
+        private int snapshotInterval;
+        private ReplicationTransport replicationTransport;
+        private SessionCookieCodec cookieCodec;
 
         private Builder() {
 
@@ -187,7 +392,56 @@ public final class SessionManager implements Closeable {
             return this;
         }
 
+        public Builder slidingSessionTtl(boolean slidingSessionTtl) {
+            this.slidingSessionTtl = slidingSessionTtl;
+            return this;
+        }
+
+        public Builder sessionStore(SessionStore sessionStore) {
+            this.sessionStore = sessionStore;
+            return this;
+        }
+
+        /**
+         * persist sessions to the file to restore them after restart
+         *
+         * @param snapshotFile     path to the snapshot file
+         * @param snapshotInterval interval in seconds to append changed sessions to the file
+         */
+        public Builder sessionSnapshot(String snapshotFile, int snapshotInterval) {
+            validate(snapshotInterval > 0, "snapshot interval must be greater then 0");
+
+            this.snapshotFile = notNull("snapshotFile", snapshotFile);
+            this.snapshotInterval = snapshotInterval;
+            return this;
+        }
+
+        /**
+         * replicate sessions to other nodes through given transport, local session store keeps sessions of all nodes
+         *
+         * @param replicationTransport transport to exchange session changes with other nodes
+         */
+        public Builder sessionReplication(ReplicationTransport replicationTransport) {
+            this.replicationTransport = notNull("replicationTransport", replicationTransport);
+            return this;
+        }
+
+        /**
+         * keep sessions in signed or encrypted cookies instead of server side store
+         *
+         * @param cookieCodec codec to write session to the cookie
+         */
+        public Builder cookieSessions(SessionCookieCodec cookieCodec) {
+            this.cookieCodec = notNull("cookieCodec", cookieCodec);
+            return this;
+        }
+
         public SessionManager build() {
+            validate(
+                cookieCodec == null || (snapshotFile == null && replicationTransport == null),
+                "cookie sessions are not stored, so they can not be persisted or replicated"
+            );
+
             return new SessionManager(this);
         }
     }
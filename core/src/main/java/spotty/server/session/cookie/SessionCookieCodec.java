@@ -0,0 +1,244 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.session.cookie;
+
+import spotty.common.exception.SpottyException;
+import spotty.common.exception.SpottySessionException;
+import spotty.common.session.Session;
+import spotty.common.session.SessionCodec;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.crypto.Cipher.DECRYPT_MODE;
+import static javax.crypto.Cipher.ENCRYPT_MODE;
+import static spotty.common.validation.Validation.notNull;
+import static spotty.common.validation.Validation.validate;
+
+/**
+ * Encodes whole session to the cookie value, so server doesn't keep sessions at all.
+ * Session is written in {@link SessionCodec} binary form and signed with HMAC-SHA256,
+ * or encrypted with AES-GCM when session data must not be visible to the client.
+ *
+ * <p>Cookie value is base64url of: [format][session][signature] or [format][nonce][encrypted session with tag].
+ * Cookies are limited by browsers to about 4KB, so session data must be small.</p>
+ */
+public final class SessionCookieCodec {
+    public static final int DEFAULT_MAX_COOKIE_SIZE = 4000;
+    public static final int MIN_SECRET_LENGTH = 32;
+
+    private static final byte SIGNED = 1;
+    private static final byte ENCRYPTED = 2;
+
+    private static final String HMAC = "HmacSHA256";
+    private static final String AES_GCM = "AES/GCM/NoPadding";
+    private static final int SIGNATURE_LENGTH = 32;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec signatureKey;
+    private final SecretKeySpec encryptionKey;
+    private final boolean encrypt;
+    private final int maxCookieSize;
+
+    // Mac and Cipher are not thread safe
+    private final ThreadLocal<Mac> mac;
+    private final ThreadLocal<Cipher> cipher;
+
+    public SessionCookieCodec(byte[] secret, boolean encrypt) {
+        this(secret, encrypt, DEFAULT_MAX_COOKIE_SIZE);
+    }
+
+    /**
+     * @param secret        secret key, at least 32 bytes, must be the same on all servers
+     * @param encrypt       true to encrypt session, otherwise session is signed only and readable by client
+     * @param maxCookieSize maximum size of cookie value
+     */
+    public SessionCookieCodec(byte[] secret, boolean encrypt, int maxCookieSize) {
+        notNull("secret", secret);
+        validate(secret.length >= MIN_SECRET_LENGTH, "secret must have at least %s bytes", MIN_SECRET_LENGTH);
+        validate(maxCookieSize > 0, "maxCookieSize must be greater then 0");
+
+        // separate keys for signing and encryption are derived from one secret
+        this.signatureKey = new SecretKeySpec(derive(secret, "spotty-session-signature"), HMAC);
+        this.encryptionKey = new SecretKeySpec(Arrays.copyOf(derive(secret, "spotty-session-encryption"), 16), "AES");
+        this.encrypt = encrypt;
+        this.maxCookieSize = maxCookieSize;
+
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                final Mac mac = Mac.getInstance(HMAC);
+                mac.init(signatureKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new SpottySessionException("session cookie signature initialization error", e);
+            }
+        });
+
+        this.cipher = ThreadLocal.withInitial(() -> {
+            try {
+                return Cipher.getInstance(AES_GCM);
+            } catch (GeneralSecurityException e) {
+                throw new SpottySessionException("session cookie encryption initialization error", e);
+            }
+        });
+    }
+
+    /**
+     * @param session session to write to the cookie
+     * @return cookie value
+     * @throws SpottySessionException if session is too big for the cookie
+     */
+    public String encode(Session session) {
+        notNull("session", session);
+
+        final byte[] payload = SessionCodec.encode(session);
+        final String value = ENCODER.encodeToString(encrypt ? encrypt(payload) : sign(payload));
+        if (value.length() > maxCookieSize) {
+            throw new SpottySessionException("session cookie size %s exceeds limit %s, keep less data in the session", value.length(), maxCookieSize);
+        }
+
+        return value;
+    }
+
+    /**
+     * @param value cookie value
+     * @return session or null if value is broken, forged or written with another secret
+     */
+    public Session decode(String value) {
+        if (value == null || value.length() > maxCookieSize) {
+            return null;
+        }
+
+        try {
+            final byte[] bytes = DECODER.decode(value.getBytes(UTF_8));
+            if (bytes.length == 0) {
+                return null;
+            }
+
+            final byte[] payload;
+            if (bytes[0] == SIGNED && !encrypt) {
+                payload = verify(bytes);
+            } else if (bytes[0] == ENCRYPTED && encrypt) {
+                payload = decrypt(bytes);
+            } else {
+                return null;
+            }
+
+            return payload == null ? null : SessionCodec.decode(payload);
+        } catch (IllegalArgumentException | SpottyException e) {
+            return null;
+        }
+    }
+
+    public boolean isEncrypted() {
+        return encrypt;
+    }
+
+    public int maxCookieSize() {
+        return maxCookieSize;
+    }
+
+    private byte[] sign(byte[] payload) {
+        final byte[] bytes = new byte[1 + payload.length + SIGNATURE_LENGTH];
+        bytes[0] = SIGNED;
+        System.arraycopy(payload, 0, bytes, 1, payload.length);
+
+        final Mac mac = this.mac.get();
+        mac.update(bytes, 0, 1 + payload.length);
+        System.arraycopy(mac.doFinal(), 0, bytes, 1 + payload.length, SIGNATURE_LENGTH);
+
+        return bytes;
+    }
+
+    private byte[] verify(byte[] bytes) {
+        final int payloadEnd = bytes.length - SIGNATURE_LENGTH;
+        if (payloadEnd <= 1) {
+            return null;
+        }
+
+        final Mac mac = this.mac.get();
+        mac.update(bytes, 0, payloadEnd);
+        final byte[] expected = mac.doFinal();
+
+        if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(bytes, payloadEnd, bytes.length))) {
+            return null;
+        }
+
+        return Arrays.copyOfRange(bytes, 1, payloadEnd);
+    }
+
+    private byte[] encrypt(byte[] payload) {
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+
+        try {
+            final Cipher cipher = this.cipher.get();
+            cipher.init(ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, nonce));
+            cipher.updateAAD(new byte[]{ENCRYPTED});
+
+            final byte[] encrypted = cipher.doFinal(payload);
+
+            final byte[] bytes = new byte[1 + NONCE_LENGTH + encrypted.length];
+            bytes[0] = ENCRYPTED;
+            System.arraycopy(nonce, 0, bytes, 1, NONCE_LENGTH);
+            System.arraycopy(encrypted, 0, bytes, 1 + NONCE_LENGTH, encrypted.length);
+
+            return bytes;
+        } catch (GeneralSecurityException e) {
+            throw new SpottySessionException("session cookie encryption error", e);
+        }
+    }
+
+    private byte[] decrypt(byte[] bytes) {
+        if (bytes.length <= 1 + NONCE_LENGTH + TAG_BITS / 8) {
+            return null;
+        }
+
+        try {
+            final Cipher cipher = this.cipher.get();
+            cipher.init(DECRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, bytes, 1, NONCE_LENGTH));
+            cipher.updateAAD(bytes, 0, 1);
+
+            return cipher.doFinal(bytes, 1 + NONCE_LENGTH, bytes.length - 1 - NONCE_LENGTH);
+        } catch (GeneralSecurityException e) {
+            // tag mismatch: value is forged or encrypted with another secret
+            return null;
+        }
+    }
+
+    private static byte[] derive(byte[] secret, String purpose) {
+        try {
+            final Mac mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(secret, HMAC));
+            return mac.doFinal(purpose.getBytes(UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new SpottySessionException("session cookie key derivation error", e);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.session.snapshot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spotty.common.exception.SpottyException;
+import spotty.common.session.Session;
+import spotty.common.session.SessionCodec;
+import spotty.server.session.store.SessionStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static spotty.common.validation.Validation.notNull;
+
+/**
+ * Append-only file with sessions, so sessions survive restart.
+ * Changed sessions are appended periodically, the latest record of a session wins on restore,
+ * and the file is rewritten with actual sessions only when it has grown with outdated records.
+ *
+ * <p>File format: magic, version, then records of [payload length][crc32 of payload][session in {@link SessionCodec} format].
+ * Records that are not completely written (crash during append) are ignored and cut on restore,
+ * records that could not be decoded are skipped, and unreadable file is moved aside, so restore never fails startup.</p>
+ */
+public final class SessionSnapshot implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(SessionSnapshot.class);
+
+    private static final int MAGIC = 0x53505353; // SPSS
+    private static final byte VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 5;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final long MAP_WINDOW = 1 << 30; // 1GB
+    private static final int MIN_RECORDS_TO_COMPACT = 1024;
+
+    private final Path file;
+    private FileChannel channel;
+
+    // count of records in the file and count of sessions after the last compaction
+    private long records = 0;
+    private long liveRecords = 0;
+
+    public SessionSnapshot(Path file) {
+        this.file = notNull("file", file).toAbsolutePath();
+    }
+
+    /**
+     * load sessions from the snapshot file to the store, expired sessions are skipped,
+     * then file is rewritten with restored sessions only.
+     * Errors are logged, server starts with sessions that have been restored before the error.
+     *
+     * @param store store to put sessions
+     * @param now   current time to skip expired sessions
+     * @return count of restored sessions
+     */
+    public synchronized int restore(SessionStore store, Instant now) {
+        notNull("store", store);
+        notNull("now", now);
+
+        try {
+            if (Files.exists(file)) {
+                read(store, now);
+            }
+        } catch (Exception e) {
+            LOG.error("session snapshot {} restore error", file, e);
+            moveAside();
+        }
+
+        try {
+            compact(store);
+        } catch (Exception e) {
+            LOG.error("session snapshot {} compaction error", file, e);
+        }
+
+        return store.size();
+    }
+
+    /**
+     * append changed sessions to the snapshot file
+     *
+     * @param sessions changed sessions
+     */
+    public synchronized void append(Collection<Session> sessions) throws IOException {
+        notNull("sessions", sessions);
+        if (sessions.isEmpty()) {
+            return;
+        }
+
+        try {
+            final FileChannel channel = channel();
+            for (Session session : sessions) {
+                write(channel, record(session));
+                records++;
+            }
+
+            channel.force(false);
+        } catch (IOException e) {
+            // channel could be closed by the error (e.g. interrupt), so it is reopened on the next append
+            closeChannel();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if file contains much more records than sessions and should be compacted
+     */
+    public synchronized boolean isCompactionRequired(int sessionsCount) {
+        final long outdated = records - Math.max(liveRecords, sessionsCount);
+        return outdated > MIN_RECORDS_TO_COMPACT && outdated > sessionsCount;
+    }
+
+    /**
+     * rewrite snapshot file with actual sessions from the store
+     *
+     * @param store session store
+     */
+    public synchronized void compact(SessionStore store) throws IOException {
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        final long[] written = {0};
+        try (final FileChannel out = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            write(out, fileHeader());
+
+            final IOException[] error = {null};
+            store.forEach(session -> {
+                if (error[0] != null) {
+                    return;
+                }
+
+                try {
+                    write(out, record(session));
+                    written[0]++;
+                } catch (IOException e) {
+                    error[0] = e;
+                } catch (Exception e) {
+                    LOG.warn("session {} is skipped in snapshot", session.id, e);
+                }
+            });
+
+            if (error[0] != null) {
+                throw error[0];
+            }
+
+            out.force(true);
+        }
+
+        closeChannel();
+        Files.move(temp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+
+        records = written[0];
+        liveRecords = written[0];
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() {
+        closeChannel();
+    }
+
+    private void read(SessionStore store, Instant now) throws IOException {
+        long validSize = 0;
+        long count = 0;
+
+        try (final FileChannel in = FileChannel.open(file, READ)) {
+            final long size = in.size();
+            if (size < FILE_HEADER_SIZE) {
+                LOG.warn("session snapshot {} is empty", file);
+                return;
+            }
+
+            final ByteBuffer header = in.map(READ_ONLY, 0, FILE_HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.get() != VERSION) {
+                throw new SpottyException("unsupported session snapshot format %s", file);
+            }
+
+            long position = FILE_HEADER_SIZE;
+            validSize = position;
+
+            while (position < size) {
+                final MappedByteBuffer window = in.map(READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+
+                int consumed = 0;
+                while (window.remaining() >= RECORD_HEADER_SIZE) {
+                    final int start = window.position();
+                    final int length = window.getInt();
+                    final int crc = window.getInt();
+                    if (length <= 0 || length > window.remaining()) {
+                        window.position(start);
+                        break;
+                    }
+
+                    final byte[] payload = new byte[length];
+                    window.get(payload);
+                    if (crc != crc32(payload)) {
+                        window.position(start);
+                        break;
+                    }
+
+                    try {
+                        restore(store, SessionCodec.decode(payload), now);
+                        count++;
+                    } catch (SpottyException e) {
+                        // record is written completely, so the next records are still readable
+                        LOG.warn("session snapshot {} record is skipped", file, e);
+                    }
+
+                    consumed = window.position();
+                }
+
+                if (consumed == 0) {
+                    // record is broken or not completely written
+                    break;
+                }
+
+                position += consumed;
+                validSize = position;
+            }
+        }
+
+        if (validSize < Files.size(file)) {
+            LOG.warn("session snapshot {} has broken tail, {} bytes are ignored", file, Files.size(file) - validSize);
+        }
+
+        LOG.info("session snapshot {} has been read, {} records", file, count);
+    }
+
+    private static void restore(SessionStore store, Session session, Instant now) {
+        if (session.expires() != null && now.isAfter(session.expires())) {
+            // older record of the same session could be restored already
+            store.remove(session.id);
+        } else {
+            store.put(session);
+        }
+    }
+
+    /**
+     * keep unreadable file for investigation, new snapshot is started from scratch
+     */
+    private void moveAside() {
+        closeChannel();
+
+        final Path broken = file.resolveSibling(file.getFileName() + ".broken-" + System.currentTimeMillis());
+        try {
+            Files.move(file, broken, REPLACE_EXISTING);
+            LOG.warn("session snapshot {} has been moved to {}", file, broken);
+        } catch (IOException e) {
+            LOG.error("session snapshot {} could not be moved to {}", file, broken, e);
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            final boolean created = !Files.exists(file) || Files.size(file) == 0;
+            channel = FileChannel.open(file, CREATE, WRITE, APPEND);
+            if (created) {
+                write(channel, fileHeader());
+            }
+        }
+
+        return channel;
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("session snapshot close error", e);
+        }
+
+        channel = null;
+    }
+
+    private static ByteBuffer fileHeader() {
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).put(VERSION).flip();
+
+        return header;
+    }
+
+    private static ByteBuffer record(Session session) {
+        final byte[] payload = SessionCodec.encode(session);
+
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt(crc32(payload)).put(payload).flip();
+
+        return record;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int crc32(byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        return (int) crc.getValue();
+    }
+
+}
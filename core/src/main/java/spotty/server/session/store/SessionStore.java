@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.session.store;
+
+import spotty.common.session.Session;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Storage of server side sessions, implementations must be thread safe.
+ */
+public interface SessionStore extends Closeable {
+
+    /**
+     * @param id session id
+     * @return stored session or null if there is no such session
+     */
+    Session get(UUID id);
+
+    /**
+     * store new session or save changes of the session that was taken from the store
+     *
+     * @param session session to store
+     */
+    void put(Session session);
+
+    /**
+     * change session expiration without rewriting its data, for example sliding ttl
+     *
+     * @param id      session id
+     * @param expires new expiration time
+     */
+    void touch(UUID id, Instant expires);
+
+    /**
+     * @param id session id to remove
+     */
+    void remove(UUID id);
+
+    /**
+     * remove sessions that are expired at given time
+     *
+     * @param now current time
+     * @return count of removed sessions
+     */
+    int removeExpired(Instant now);
+
+    /**
+     * iterate over all stored sessions
+     *
+     * @param action the action to be performed for each session
+     */
+    void forEach(Consumer<Session> action);
+
+    /**
+     * @return count of stored sessions
+     */
+    int size();
+
+    @Override
+    default void close() {
+
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.session.store.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spotty.common.exception.SpottyException;
+import spotty.common.session.Session;
+import spotty.common.session.SessionCodec;
+import spotty.server.session.store.SessionStore;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static com.google.common.cache.RemovalCause.SIZE;
+import static spotty.common.validation.Validation.notNull;
+import static spotty.common.validation.Validation.validate;
+
+/**
+ * Compact session store for large number of sessions: recently used sessions are kept on heap as objects,
+ * other sessions are serialized to off-heap memory and restored on the next request.
+ * On heap each off-heap session takes only an index entry of a few dozen bytes.
+ *
+ * <p>Session values should be serializable by {@link SessionCodec}, session that could not be serialized
+ * or does not fit into off-heap memory stays on heap until it is removed or expired.</p>
+ */
+public final class CompactSessionStore implements SessionStore {
+    private static final Logger LOG = LoggerFactory.getLogger(CompactSessionStore.class);
+
+    private static final int DEFAULT_HOT_SET_SIZE = 10_000;
+    private static final long DEFAULT_MAX_OFF_HEAP_BYTES = 1L << 30; // 1GB
+
+    private final Cache<UUID, Session> hotSet;
+    private final ExpiryQueue expiryQueue = new ExpiryQueue();
+
+    // guarded by this
+    private final SessionIndex index = new SessionIndex();
+    private final OffHeapSlab slab;
+    // evicted from hot set, but could not be spilled to off-heap
+    private final Map<UUID, Session> pinned = new HashMap<>();
+
+    public CompactSessionStore() {
+        this(DEFAULT_HOT_SET_SIZE, DEFAULT_MAX_OFF_HEAP_BYTES);
+    }
+
+    /**
+     * @param hotSetSize      maximum count of sessions that are kept on heap as objects
+     * @param maxOffHeapBytes maximum off-heap memory for serialized sessions in bytes
+     */
+    public CompactSessionStore(int hotSetSize, long maxOffHeapBytes) {
+        validate(hotSetSize > 0, "hotSetSize must be greater then 0");
+        validate(maxOffHeapBytes > 0, "maxOffHeapBytes must be greater then 0");
+
+        this.slab = new OffHeapSlab(maxOffHeapBytes);
+        this.hotSet = CacheBuilder.newBuilder()
+            .maximumSize(hotSetSize)
+            .removalListener(this::onHotSetRemoval)
+            .build();
+    }
+
+    @Override
+    public Session get(UUID id) {
+        notNull("id", id);
+
+        final Session hot = hotSet.getIfPresent(id);
+        if (hot != null) {
+            return hot;
+        }
+
+        synchronized (this) {
+            // could be restored by concurrent request
+            final Session restored = hotSet.getIfPresent(id);
+            if (restored != null) {
+                return restored;
+            }
+
+            final Session pinnedSession = pinned.remove(id);
+            if (pinnedSession != null) {
+                hotSet.put(id, pinnedSession);
+                return pinnedSession;
+            }
+
+            final int slot = index.find(id);
+            if (slot == SessionIndex.NOT_FOUND) {
+                return null;
+            }
+
+            final long address = index.address(slot);
+            final Session session = decode(id, address);
+            slab.free(address);
+            index.remove(slot);
+
+            if (session == null) {
+                return null;
+            }
+
+            hotSet.put(id, session);
+
+            return session;
+        }
+    }
+
+    @Override
+    public void put(Session session) {
+        notNull("session", session);
+
+        // already hot session is neither off-heap nor pinned, so lock is not needed
+        if (hotSet.asMap().get(session.id) == session) {
+            return;
+        }
+
+        synchronized (this) {
+            // session was spilled while it was in use, object has latest changes
+            final boolean evicted = removeOffHeap(session.id) || pinned.remove(session.id) != null;
+            final Session previous = hotSet.asMap().put(session.id, session);
+
+            if (!evicted && previous != session) {
+                expire(session.id, session.expires());
+            }
+        }
+    }
+
+    @Override
+    public void touch(UUID id, Instant expires) {
+        notNull("id", id);
+        notNull("expires", expires);
+
+        final Session hot = hotSet.getIfPresent(id);
+        if (hot != null) {
+            hot.expires(expires);
+            expire(id, expires);
+            return;
+        }
+
+        synchronized (this) {
+            final Session pinnedSession = pinned.get(id);
+            if (pinnedSession != null) {
+                pinnedSession.expires(expires);
+                expire(id, expires);
+                return;
+            }
+
+            final int slot = index.find(id);
+            if (slot != SessionIndex.NOT_FOUND) {
+                index.expires(slot, expires.toEpochMilli());
+                expire(id, expires);
+            }
+        }
+    }
+
+    @Override
+    public void remove(UUID id) {
+        notNull("id", id);
+
+        hotSet.invalidate(id);
+
+        synchronized (this) {
+            removeOffHeap(id);
+            pinned.remove(id);
+        }
+    }
+
+    @Override
+    public int removeExpired(Instant now) {
+        notNull("now", now);
+
+        final long nowMillis = now.toEpochMilli();
+        final int[] removed = {0};
+        expiryQueue.pollExpired(nowMillis, id -> {
+            final Session hot = hotSet.getIfPresent(id);
+            if (hot != null) {
+                if (!now.isAfter(hot.expires())) {
+                    // expiration was changed without touch
+                    expire(id, hot.expires());
+                } else if (hotSet.asMap().remove(id, hot)) {
+                    removed[0]++;
+                }
+
+                return;
+            }
+
+            synchronized (this) {
+                final Session pinnedSession = pinned.get(id);
+                if (pinnedSession != null) {
+                    if (!now.isAfter(pinnedSession.expires())) {
+                        expire(id, pinnedSession.expires());
+                    } else {
+                        pinned.remove(id);
+                        removed[0]++;
+                    }
+
+                    return;
+                }
+
+                final int slot = index.find(id);
+                if (slot == SessionIndex.NOT_FOUND) {
+                    return;
+                }
+
+                final long expires = index.expires(slot);
+                if (nowMillis > expires) {
+                    removeOffHeap(id);
+                    removed[0]++;
+                } else {
+                    expiryQueue.add(id, expires);
+                }
+            }
+        });
+
+        return removed[0];
+    }
+
+    @Override
+    public void forEach(Consumer<Session> action) {
+        notNull("action", action);
+
+        hotSet.asMap().values().forEach(action);
+
+        final List<Session> sessions = new ArrayList<>();
+        synchronized (this) {
+            sessions.addAll(pinned.values());
+
+            for (int slot = 0; slot < index.capacity(); slot++) {
+                if (index.isUsed(slot)) {
+                    final Session session = decode(index.id(slot), index.address(slot));
+                    if (session != null) {
+                        sessions.add(session);
+                    }
+                }
+            }
+        }
+
+        sessions.forEach(action);
+    }
+
+    @Override
+    public synchronized int size() {
+        return (int) hotSet.size() + index.size() + pinned.size();
+    }
+
+    /**
+     * @return count of sessions that are kept on heap as objects
+     */
+    public long hotSetSize() {
+        return hotSet.size();
+    }
+
+    /**
+     * @return off-heap memory taken by serialized sessions in bytes
+     */
+    public synchronized long offHeapBytes() {
+        return slab.usedBytes();
+    }
+
+    @Override
+    public synchronized void close() {
+        hotSet.asMap().clear();
+        pinned.clear();
+        index.clear();
+        slab.clear();
+        expiryQueue.clear();
+    }
+
+    /**
+     * spill session evicted from hot set to off-heap memory
+     */
+    private void onHotSetRemoval(RemovalNotification<UUID, Session> notification) {
+        if (notification.getCause() != SIZE) {
+            return;
+        }
+
+        final Session session = notification.getValue();
+
+        // expired session could be missed by expiration while it is moved off-heap
+        if (session.expires() != null && Instant.now().isAfter(session.expires())) {
+            return;
+        }
+
+        synchronized (this) {
+            if (hotSet.getIfPresent(session.id) != null || index.find(session.id) != SessionIndex.NOT_FOUND) {
+                return;
+            }
+
+            // removal listener exceptions are swallowed by cache, so session must not be lost here
+            try {
+                final byte[] record = SessionCodec.encode(session);
+                final long expires = session.expires() == null ? Long.MAX_VALUE : session.expires().toEpochMilli();
+                index.add(session.id, slab.write(record), expires);
+            } catch (SpottyException e) {
+                LOG.warn("session {} is kept on heap: {}", session.id, e.getMessage());
+                pinned.put(session.id, session);
+            }
+        }
+    }
+
+    private Session decode(UUID id, long address) {
+        try {
+            return SessionCodec.decode(slab.read(address));
+        } catch (SpottyException e) {
+            LOG.error("session {} is dropped, could not restore it from off-heap", id, e);
+            return null;
+        }
+    }
+
+    private boolean removeOffHeap(UUID id) {
+        final int slot = index.find(id);
+        if (slot == SessionIndex.NOT_FOUND) {
+            return false;
+        }
+
+        slab.free(index.address(slot));
+        index.remove(slot);
+
+        return true;
+    }
+
+    private void expire(UUID id, Instant expires) {
+        if (expires != null) {
+            expiryQueue.add(id, expires.toEpochMilli());
+        }
+    }
+
+}
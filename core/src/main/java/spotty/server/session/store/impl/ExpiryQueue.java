@@ -0,0 +1,127 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.session.store.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * Sessions ids grouped by expiration time into buckets of fixed resolution and ordered by time,
+ * so removing of expired sessions touches only buckets that are in the past instead of scanning all sessions.
+ *
+ * <p>Ids are not removed from the old bucket when session expiration is changed, id is added to the new bucket
+ * instead. Store checks actual expiration of each polled id, so stale entries are skipped.</p>
+ */
+final class ExpiryQueue {
+    private static final long RESOLUTION_MILLIS = 1000;
+
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param id            session id
+     * @param expiresMillis session expiration time in milliseconds
+     */
+    void add(UUID id, long expiresMillis) {
+        final long key = Math.floorDiv(expiresMillis, RESOLUTION_MILLIS);
+        while (true) {
+            final Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+            if (bucket.add(id)) {
+                return;
+            }
+
+            // bucket has been polled concurrently, so new one will be created
+            buckets.remove(key, bucket);
+        }
+    }
+
+    /**
+     * remove all buckets that are fully expired at given time and pass their ids to the consumer
+     *
+     * @param nowMillis current time in milliseconds
+     * @param expired   consumer of ids that are probably expired, it must check actual session expiration
+     */
+    void pollExpired(long nowMillis, Consumer<UUID> expired) {
+        final long lastExpiredKey = Math.floorDiv(nowMillis, RESOLUTION_MILLIS) - 1;
+
+        Map.Entry<Long, Bucket> entry;
+        while ((entry = buckets.firstEntry()) != null && entry.getKey() <= lastExpiredKey) {
+            if (buckets.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().close(expired);
+            }
+        }
+    }
+
+    /**
+     * @return count of entries in all buckets, including stale ones
+     */
+    long entries() {
+        long entries = 0;
+        for (Bucket bucket : buckets.values()) {
+            entries += bucket.size();
+        }
+
+        return entries;
+    }
+
+    void clear() {
+        buckets.clear();
+    }
+
+    /**
+     * ids of one bucket as pairs of longs
+     */
+    private static final class Bucket {
+        private long[] ids = new long[8];
+        private int size = 0;
+        private boolean closed = false;
+
+        synchronized boolean add(UUID id) {
+            if (closed) {
+                return false;
+            }
+
+            if (size + 2 > ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+
+            ids[size++] = id.getMostSignificantBits();
+            ids[size++] = id.getLeastSignificantBits();
+
+            return true;
+        }
+
+        void close(Consumer<UUID> consumer) {
+            final long[] closedIds;
+            final int closedSize;
+            synchronized (this) {
+                closed = true;
+                closedIds = ids;
+                closedSize = size;
+            }
+
+            for (int i = 0; i < closedSize; i += 2) {
+                consumer.accept(new UUID(closedIds[i], closedIds[i + 1]));
+            }
+        }
+
+        synchronized int size() {
+            return size / 2;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.session.store.impl;
+
+import spotty.common.session.Session;
+import spotty.server.session.store.SessionStore;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static spotty.common.validation.Validation.notNull;
+
+/**
+ * Keeps sessions as objects on heap, default session store.
+ */
+public final class InMemorySessionStore implements SessionStore {
+    private final Map<UUID, Session> sessions = new ConcurrentHashMap<>();
+    private final ExpiryQueue expiryQueue = new ExpiryQueue();
+
+    @Override
+    public Session get(UUID id) {
+        return sessions.get(notNull("id", id));
+    }
+
+    @Override
+    public void put(Session session) {
+        notNull("session", session);
+
+        if (sessions.put(session.id, session) != session) {
+            expire(session);
+        }
+    }
+
+    @Override
+    public void touch(UUID id, Instant expires) {
+        final Session session = sessions.get(notNull("id", id));
+        if (session != null) {
+            session.expires(expires);
+            expire(session);
+        }
+    }
+
+    @Override
+    public void remove(UUID id) {
+        sessions.remove(notNull("id", id));
+    }
+
+    @Override
+    public int removeExpired(Instant now) {
+        notNull("now", now);
+
+        final int[] removed = {0};
+        expiryQueue.pollExpired(now.toEpochMilli(), id -> {
+            final Session session = sessions.get(id);
+            if (session == null) {
+                return;
+            }
+
+            if (now.isAfter(session.expires())) {
+                if (sessions.remove(id, session)) {
+                    removed[0]++;
+                }
+            } else {
+                // expiration was changed without touch
+                expire(session);
+            }
+        });
+
+        return removed[0];
+    }
+
+    @Override
+    public void forEach(Consumer<Session> action) {
+        sessions.values().forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        sessions.clear();
+        expiryQueue.clear();
+    }
+
+    private void expire(Session session) {
+        if (session.expires() != null) {
+            expiryQueue.add(session.id, session.expires().toEpochMilli());
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.session.store.impl;
+
+import spotty.common.exception.SpottyException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Off-heap memory for variable size records: memory is allocated by large direct chunks
+ * and split to power of two slots, freed slots are reused by records of the same size class.
+ * Record address is chunk index and offset packed into long, record length is stored in the slot header.
+ *
+ * <p>Not thread safe.</p>
+ */
+final class OffHeapSlab {
+    static final int CHUNK_SIZE = 1 << 22; // 4MB
+
+    private static final int MIN_SLOT_SHIFT = 6; // 64 bytes
+    private static final int MAX_SLOT_SHIFT = 22;
+    private static final int HEADER_SIZE = 4;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final LongStack[] freeSlots = new LongStack[MAX_SLOT_SHIFT + 1];
+    private final int maxChunks;
+
+    private int top = CHUNK_SIZE; // offset of not used memory in the last chunk
+    private long usedBytes = 0;
+
+    OffHeapSlab(long maxBytes) {
+        this.maxChunks = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / CHUNK_SIZE));
+
+        for (int i = MIN_SLOT_SHIFT; i < freeSlots.length; i++) {
+            freeSlots[i] = new LongStack();
+        }
+    }
+
+    /**
+     * @param record bytes to store
+     * @return address of stored record
+     */
+    long write(byte[] record) {
+        final int shift = slotShift(record.length);
+        final long address = allocate(shift);
+
+        final ByteBuffer chunk = chunks.get(chunkIndex(address)).duplicate();
+        chunk.position(offset(address));
+        chunk.putInt(record.length);
+        chunk.put(record);
+
+        usedBytes += 1 << shift;
+
+        return address;
+    }
+
+    /**
+     * @param address address of stored record
+     * @return record bytes
+     */
+    byte[] read(long address) {
+        final ByteBuffer chunk = chunks.get(chunkIndex(address)).duplicate();
+        chunk.position(offset(address));
+
+        final byte[] record = new byte[chunk.getInt()];
+        chunk.get(record);
+
+        return record;
+    }
+
+    /**
+     * @param address address of record to free, slot is reused by next records
+     */
+    void free(long address) {
+        final ByteBuffer chunk = chunks.get(chunkIndex(address));
+        final int shift = slotShift(chunk.getInt(offset(address)));
+
+        freeSlots[shift].push(address);
+        usedBytes -= 1 << shift;
+    }
+
+    /**
+     * release all memory
+     */
+    void clear() {
+        chunks.clear();
+        for (int i = MIN_SLOT_SHIFT; i < freeSlots.length; i++) {
+            freeSlots[i].clear();
+        }
+
+        top = CHUNK_SIZE;
+        usedBytes = 0;
+    }
+
+    /**
+     * @return bytes taken by records, including slots padding
+     */
+    long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return allocated off-heap memory in bytes
+     */
+    long allocatedBytes() {
+        return (long) chunks.size() * CHUNK_SIZE;
+    }
+
+    private long allocate(int shift) {
+        final LongStack free = freeSlots[shift];
+        if (free.isNotEmpty()) {
+            return free.pop();
+        }
+
+        final int slotSize = 1 << shift;
+        if (top + slotSize > CHUNK_SIZE) {
+            if (chunks.size() >= maxChunks) {
+                throw new SpottyException("session store is full, allocated %s bytes", allocatedBytes());
+            }
+
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+            top = 0;
+        }
+
+        final long address = address(chunks.size() - 1, top);
+        top += slotSize;
+
+        return address;
+    }
+
+    private static int slotShift(int recordLength) {
+        final int size = recordLength + HEADER_SIZE;
+        final int shift = Math.max(MIN_SLOT_SHIFT, 32 - Integer.numberOfLeadingZeros(size - 1));
+        if (shift > MAX_SLOT_SHIFT) {
+            throw new SpottyException("session is too large %s bytes", recordLength);
+        }
+
+        return shift;
+    }
+
+    private static long address(int chunkIndex, int offset) {
+        return ((long) chunkIndex << 32) | offset;
+    }
+
+    private static int chunkIndex(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private static final class LongStack {
+        private long[] values = new long[16];
+        private int size = 0;
+
+        void push(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+
+        long pop() {
+            return values[--size];
+        }
+
+        boolean isNotEmpty() {
+            return size > 0;
+        }
+
+        void clear() {
+            values = new long[16];
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.session.store.impl;
+
+import java.util.UUID;
+
+/**
+ * Open addressing hash table from session id to record address and expiration time,
+ * kept in primitive arrays, so an entry costs a few dozen bytes on heap without any objects.
+ *
+ * <p>Not thread safe.</p>
+ */
+final class SessionIndex {
+    static final int NOT_FOUND = -1;
+
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] mostBits;
+    private long[] leastBits;
+    private long[] addresses;
+    private long[] expires;
+    private boolean[] used;
+
+    private int size = 0;
+    private int threshold;
+
+    SessionIndex() {
+        allocate(MIN_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return slot of the session or {@link #NOT_FOUND}
+     */
+    int find(UUID id) {
+        final long most = id.getMostSignificantBits();
+        final long least = id.getLeastSignificantBits();
+
+        final int mask = used.length - 1;
+        for (int slot = hash(most, least) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (mostBits[slot] == most && leastBits[slot] == least) {
+                return slot;
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * add new entry, caller must check that there is no entry with the same id
+     */
+    void add(UUID id, long address, long expiresMillis) {
+        if (size >= threshold) {
+            resize(used.length * 2);
+        }
+
+        insert(id.getMostSignificantBits(), id.getLeastSignificantBits(), address, expiresMillis);
+        size++;
+    }
+
+    long address(int slot) {
+        return addresses[slot];
+    }
+
+    long expires(int slot) {
+        return expires[slot];
+    }
+
+    void expires(int slot, long expiresMillis) {
+        expires[slot] = expiresMillis;
+    }
+
+    UUID id(int slot) {
+        return new UUID(mostBits[slot], leastBits[slot]);
+    }
+
+    /**
+     * @return capacity of the table, slots are from 0 to capacity - 1
+     */
+    int capacity() {
+        return used.length;
+    }
+
+    boolean isUsed(int slot) {
+        return used[slot];
+    }
+
+    /**
+     * remove entry and shift following entries of the same probe sequence back,
+     * so entries that were after removed one could be found again
+     */
+    void remove(int slot) {
+        final int mask = used.length - 1;
+
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (used[next]) {
+            final int home = hash(mostBits[next], leastBits[next]) & mask;
+
+            // entry can be moved to the hole if its home slot is not in (hole, next]
+            final boolean movable = hole <= next
+                ? home <= hole || home > next
+                : home <= hole && home > next;
+
+            if (movable) {
+                move(next, hole);
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        used[hole] = false;
+        size--;
+    }
+
+    void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    private void move(int from, int to) {
+        mostBits[to] = mostBits[from];
+        leastBits[to] = leastBits[from];
+        addresses[to] = addresses[from];
+        expires[to] = expires[from];
+        used[to] = true;
+    }
+
+    private void insert(long most, long least, long address, long expiresMillis) {
+        final int mask = used.length - 1;
+
+        int slot = hash(most, least) & mask;
+        while (used[slot]) {
+            slot = (slot + 1) & mask;
+        }
+
+        mostBits[slot] = most;
+        leastBits[slot] = least;
+        addresses[slot] = address;
+        expires[slot] = expiresMillis;
+        used[slot] = true;
+    }
+
+    private void resize(int capacity) {
+        final long[] oldMostBits = mostBits;
+        final long[] oldLeastBits = leastBits;
+        final long[] oldAddresses = addresses;
+        final long[] oldExpires = expires;
+        final boolean[] oldUsed = used;
+
+        allocate(capacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                insert(oldMostBits[i], oldLeastBits[i], oldAddresses[i], oldExpires[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mostBits = new long[capacity];
+        leastBits = new long[capacity];
+        addresses = new long[capacity];
+        expires = new long[capacity];
+        used = new boolean[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(long most, long least) {
+        long h = most ^ least;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+
+        return (int) h;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.session.store.replication;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static spotty.common.validation.Validation.notNull;
+
+/**
+ * In-process transport, all transports of the same group receive messages of each other.
+ * Messages are delivered synchronously on the sender thread, so it is useful for tests
+ * and for several servers in one jvm.
+ */
+public final class LoopbackTransport implements ReplicationTransport {
+    private final Group group;
+    private volatile Consumer<byte[]> receiver;
+
+    private LoopbackTransport(Group group) {
+        this.group = group;
+    }
+
+    /**
+     * @return new group of connected transports
+     */
+    public static Group group() {
+        return new Group();
+    }
+
+    @Override
+    public void send(byte[] message) {
+        notNull("message", message);
+
+        for (LoopbackTransport member : group.members) {
+            final Consumer<byte[]> memberReceiver = member.receiver;
+            if (member != this && memberReceiver != null) {
+                memberReceiver.accept(message);
+            }
+        }
+    }
+
+    @Override
+    public void receive(Consumer<byte[]> receiver) {
+        this.receiver = notNull("receiver", receiver);
+    }
+
+    @Override
+    public void close() {
+        group.members.remove(this);
+    }
+
+    public static final class Group {
+        private final List<LoopbackTransport> members = new CopyOnWriteArrayList<>();
+
+        private Group() {
+
+        }
+
+        /**
+         * @return new transport connected to this group
+         */
+        public LoopbackTransport join() {
+            final LoopbackTransport transport = new LoopbackTransport(this);
+            members.add(transport);
+
+            return transport;
+        }
+
+        public int size() {
+            return members.size();
+        }
+    }
+}
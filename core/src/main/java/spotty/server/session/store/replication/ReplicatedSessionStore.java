@@ -0,0 +1,453 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.session.store.replication;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spotty.common.session.Session;
+import spotty.common.session.SessionCodec;
+import spotty.server.session.store.SessionStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static spotty.common.session.SessionCodec.readVarInt;
+import static spotty.common.session.SessionCodec.writeVarInt;
+import static spotty.common.utils.ThreadUtils.threadPool;
+import static spotty.common.validation.Validation.notNull;
+import static spotty.common.validation.Validation.validate;
+
+/**
+ * Replicates changes of sessions to other nodes, so sessions survive node loss and balancer doesn't need sticky routing.
+ * Every node keeps all sessions in the local store, reads are served by the local store only.
+ *
+ * <p>Changes are replicated asynchronously: changed session ids are collected and sent in batches
+ * by background thread, several changes of one session between two batches are sent once.
+ * Only changed values are sent when session has been replicated already, values are compared by hash of their binary form.
+ * Concurrent changes of one session on different nodes are resolved by the last received one.
+ * Node that receives changed values of unknown session (e.g. it has been restarted) drops them
+ * and requests the session with all values from other nodes.</p>
+ */
+public final class ReplicatedSessionStore implements SessionStore {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicatedSessionStore.class);
+
+    private static final byte VERSION = 1;
+
+    private static final byte END = 0;
+    private static final byte PUT_FULL = 1;
+    private static final byte PUT_DELTA = 2;
+    private static final byte TOUCH = 3;
+    private static final byte REMOVE = 4;
+    private static final byte RESYNC = 5;
+
+    private static final Object REMOVED = new Object();
+    private static final Object RESYNC_REQUESTED = new Object();
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+    private static final int DEFAULT_MAX_MESSAGE_SIZE = 64 * 1024;
+    private static final int DIGESTS_CACHE_SIZE = 100_000;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final SessionStore store;
+    private final ReplicationTransport transport;
+    private final int maxMessageSize;
+
+    // not replicated changes: session to put, expires to touch, REMOVED or RESYNC_REQUESTED marker
+    private final Map<UUID, Object> pending = new ConcurrentHashMap<>();
+
+    // hashes of replicated values of sessions to send only changed ones
+    private final Cache<UUID, Map<Object, Long>> digests = CacheBuilder.newBuilder()
+        .maximumSize(DIGESTS_CACHE_SIZE)
+        .build();
+
+    private final ScheduledExecutorService executor = newSingleThreadScheduledExecutor(threadPool("session-replication"));
+
+    // used by replication thread only
+    private final Buffer message = new Buffer();
+    private final DataOutputStream messageOut = new DataOutputStream(message);
+    private final Buffer operation = new Buffer();
+    private final DataOutputStream operationOut = new DataOutputStream(operation);
+    private final Buffer entries = new Buffer();
+    private final DataOutputStream entriesOut = new DataOutputStream(entries);
+    private final Buffer value = new Buffer();
+    private final DataOutputStream valueOut = new DataOutputStream(value);
+    private final List<UUID> batch = new ArrayList<>();
+
+    public ReplicatedSessionStore(SessionStore store, ReplicationTransport transport) {
+        this(store, transport, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    /**
+     * @param store               local store of sessions
+     * @param transport           transport to send changes to other nodes
+     * @param flushIntervalMillis interval to send collected changes
+     * @param maxMessageSize      batch is split to several messages when it exceeds this size
+     */
+    public ReplicatedSessionStore(SessionStore store, ReplicationTransport transport, long flushIntervalMillis, int maxMessageSize) {
+        validate(flushIntervalMillis > 0, "flushIntervalMillis must be greater then 0");
+        validate(maxMessageSize > 0, "maxMessageSize must be greater then 0");
+
+        this.store = notNull("store", store);
+        this.transport = notNull("transport", transport);
+        this.maxMessageSize = maxMessageSize;
+
+        transport.receive(this::apply);
+        executor.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, MILLISECONDS);
+    }
+
+    @Override
+    public Session get(UUID id) {
+        return store.get(id);
+    }
+
+    @Override
+    public void put(Session session) {
+        store.put(session);
+        pending.put(session.id, session);
+    }
+
+    @Override
+    public void touch(UUID id, Instant expires) {
+        store.touch(id, expires);
+        pending.merge(id, expires, (previous, touch) -> previous instanceof Instant ? touch : previous);
+    }
+
+    @Override
+    public void remove(UUID id) {
+        store.remove(id);
+        pending.put(id, REMOVED);
+    }
+
+    /**
+     * every node removes expired sessions by itself, so expiration is not replicated
+     */
+    @Override
+    public int removeExpired(Instant now) {
+        return store.removeExpired(now);
+    }
+
+    @Override
+    public void forEach(Consumer<Session> action) {
+        store.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * send not replicated changes and close transport and local store
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        flush();
+
+        transport.close();
+        store.close();
+    }
+
+    /**
+     * send collected changes to other nodes
+     */
+    @VisibleForTesting
+    synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        try {
+            startMessage();
+
+            for (UUID id : pending.keySet()) {
+                final Object change = pending.remove(id);
+                if (change == null) {
+                    continue;
+                }
+
+                try {
+                    operation.reset();
+                    writeOperation(id, change);
+                } catch (Exception e) {
+                    LOG.error("session {} can not be replicated", id, e);
+                    digests.invalidate(id);
+                    continue;
+                }
+
+                if (message.size() + operation.size() >= maxMessageSize && !batch.isEmpty()) {
+                    sendMessage();
+                    startMessage();
+                }
+
+                operation.writeTo(message);
+                batch.add(id);
+            }
+
+            if (!batch.isEmpty()) {
+                sendMessage();
+            }
+        } catch (Exception e) {
+            LOG.error("session replication error", e);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void startMessage() throws IOException {
+        message.reset();
+        messageOut.writeByte(VERSION);
+    }
+
+    private void sendMessage() throws IOException {
+        messageOut.writeByte(END);
+
+        try {
+            transport.send(message.toByteArray());
+        } catch (Exception e) {
+            // next change of these sessions must be sent with all values
+            batch.forEach(digests::invalidate);
+            LOG.error("replication message sending error", e);
+        }
+
+        batch.clear();
+    }
+
+    private void writeOperation(UUID id, Object change) throws IOException {
+        if (change == REMOVED) {
+            digests.invalidate(id);
+            writeHeader(REMOVE, id);
+        } else if (change == RESYNC_REQUESTED) {
+            writeHeader(RESYNC, id);
+        } else if (change instanceof Instant) {
+            writeHeader(TOUCH, id);
+            operationOut.writeLong(((Instant) change).toEpochMilli());
+        } else {
+            writePut((Session) change);
+        }
+    }
+
+    private void writePut(Session session) throws IOException {
+        final Map<Object, Long> replicated = digests.getIfPresent(session.id);
+        final Map<Object, Long> current = new HashMap<>();
+
+        entries.reset();
+        int changed = 0;
+        for (Map.Entry<Object, Object> entry : session.entrySet()) {
+            value.reset();
+            SessionCodec.writeValue(valueOut, entry.getValue());
+
+            final long hash = HASH.hashBytes(value.array(), 0, value.size()).asLong();
+            current.put(entry.getKey(), hash);
+
+            final Long replicatedHash = replicated == null ? null : replicated.get(entry.getKey());
+            if (replicatedHash == null || replicatedHash != hash) {
+                SessionCodec.writeValue(entriesOut, entry.getKey());
+                value.writeTo(entriesOut);
+                changed++;
+            }
+        }
+
+        final Instant expires = session.expires();
+        writeHeader(replicated == null ? PUT_FULL : PUT_DELTA, session.id);
+        operationOut.writeLong(expires == null ? -1 : expires.toEpochMilli());
+
+        if (replicated != null) {
+            final List<Object> removed = new ArrayList<>();
+            for (Object key : replicated.keySet()) {
+                if (!current.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+
+            writeVarInt(operationOut, removed.size());
+            for (Object key : removed) {
+                SessionCodec.writeValue(operationOut, key);
+            }
+        }
+
+        writeVarInt(operationOut, changed);
+        entries.writeTo(operationOut);
+
+        digests.put(session.id, current);
+    }
+
+    private void writeHeader(byte type, UUID id) throws IOException {
+        operationOut.writeByte(type);
+        operationOut.writeLong(id.getMostSignificantBits());
+        operationOut.writeLong(id.getLeastSignificantBits());
+    }
+
+    /**
+     * apply changes received from other node to the local store
+     */
+    private void apply(byte[] message) {
+        try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(message))) {
+            final byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("unsupported replication message version " + version);
+            }
+
+            byte type;
+            while ((type = in.readByte()) != END) {
+                final UUID id = new UUID(in.readLong(), in.readLong());
+
+                // local digests are outdated, so next local change is sent with all values
+                digests.invalidate(id);
+
+                switch (type) {
+                    case PUT_FULL:
+                    case PUT_DELTA:
+                        applyPut(type, id, in);
+                        break;
+                    case TOUCH:
+                        applyTouch(id, Instant.ofEpochMilli(in.readLong()));
+                        break;
+                    case REMOVE:
+                        store.remove(id);
+                        break;
+                    case RESYNC:
+                        resend(id);
+                        break;
+                    default:
+                        throw new IOException("unknown replication operation " + type);
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("replication message applying error", e);
+        }
+    }
+
+    private void applyPut(byte type, UUID id, DataInputStream in) throws IOException {
+        final long expiresMillis = in.readLong();
+        final Instant expires = expiresMillis < 0 ? null : Instant.ofEpochMilli(expiresMillis);
+
+        final Session stored = store.get(id);
+        if (type == PUT_DELTA && stored == null) {
+            // partial session must not be stored, sender replies with all values
+            skipDelta(in);
+            pending.putIfAbsent(id, RESYNC_REQUESTED);
+            return;
+        }
+
+        // changes are applied to the stored instance, so requests that use it concurrently don't put back stale one
+        final Session session = stored == null ? new Session(id) : stored;
+        final boolean modifiedLocally = session.isModified();
+
+        if (type == PUT_DELTA) {
+            final int removed = readVarInt(in);
+            for (int i = 0; i < removed; i++) {
+                session.remove(SessionCodec.readValue(in));
+            }
+        }
+
+        final Set<Object> received = new HashSet<>();
+        final int changed = readVarInt(in);
+        for (int i = 0; i < changed; i++) {
+            final Object key = SessionCodec.readValue(in);
+            final Object value = SessionCodec.readValue(in);
+            if (key != null && value != null) {
+                session.put(key, value);
+                received.add(key);
+            }
+        }
+
+        if (type == PUT_FULL && stored != null) {
+            for (Object key : new ArrayList<>(session.keys())) {
+                if (!received.contains(key)) {
+                    session.remove(key);
+                }
+            }
+        }
+
+        final boolean expiresChanged = expires != null && !expires.equals(session.expires());
+        if (expiresChanged) {
+            session.expires(expires);
+        }
+
+        store.put(session);
+
+        if (session == stored && expiresChanged) {
+            store.touch(id, expires);
+        }
+
+        // remote change must not be sent back by the next request that only reads the session
+        if (!modifiedLocally) {
+            session.resetModified();
+        }
+    }
+
+    private void applyTouch(UUID id, Instant expires) {
+        final Session stored = store.get(id);
+        final boolean modifiedLocally = stored != null && stored.isModified();
+
+        store.touch(id, expires);
+
+        if (stored != null && !modifiedLocally) {
+            stored.resetModified();
+        }
+    }
+
+    private static void skipDelta(DataInputStream in) throws IOException {
+        final int removed = readVarInt(in);
+        for (int i = 0; i < removed; i++) {
+            SessionCodec.readValue(in);
+        }
+
+        final int changed = readVarInt(in);
+        for (int i = 0; i < changed * 2; i++) {
+            SessionCodec.readValue(in);
+        }
+    }
+
+    /**
+     * other node has missed the session, so it is sent with all values, digests are invalidated already
+     */
+    private void resend(UUID id) {
+        final Session session = store.get(id);
+        if (session != null) {
+            pending.compute(id, (key, change) -> change == REMOVED ? change : session);
+        }
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        private byte[] array() {
+            return buf;
+        }
+    }
+}
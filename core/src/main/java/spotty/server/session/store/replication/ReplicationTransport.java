@@ -0,0 +1,49 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.server.session.store.replication;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * Delivers replication messages between nodes, implementations could be based on tcp, udp multicast,
+ * message broker etc. Delivery is best effort, messages of one sender must be received in order of sending.
+ *
+ * <p>Session values of custom types are restored from received messages with java serialization,
+ * so a forged message could execute arbitrary code on the node. Transport must deliver messages
+ * from trusted nodes only: use authenticated channel (e.g. mutual tls) or private network.</p>
+ */
+public interface ReplicationTransport extends Closeable {
+
+    /**
+     * send message to all other nodes, message must not be delivered back to this node
+     *
+     * @param message batch of session changes
+     */
+    void send(byte[] message);
+
+    /**
+     * register receiver of messages from other nodes
+     *
+     * @param receiver called for each received message
+     */
+    void receive(Consumer<byte[]> receiver);
+
+    @Override
+    default void close() {
+
+    }
+}
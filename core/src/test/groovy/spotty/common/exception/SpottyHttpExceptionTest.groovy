@@ -0,0 +1,58 @@
+package spotty.common.exception
+
+import spock.lang.Specification
+
+import static spotty.common.http.HttpStatus.BAD_REQUEST
+import static spotty.common.http.HttpStatus.NOT_FOUND
+
+class SpottyHttpExceptionTest extends Specification {
+
+    def "should not fill stack trace for control flow exceptions"() {
+        when:
+        var notFound = new SpottyNotFoundException("route not found for %s", "/hello")
+        var halt = new SpottyHaltException(BAD_REQUEST)
+
+        then:
+        notFound.stackTrace.length == 0
+        halt.stackTrace.length == 0
+    }
+
+    def "should keep stack trace for common exceptions"() {
+        when:
+        var exception = new SpottyException("error %s", "message")
+
+        then:
+        exception.stackTrace.length > 0
+    }
+
+    def "should format message lazily"() {
+        when:
+        var exception = new SpottyNotFoundException("route not found for %s %s", "GET", "/hello")
+
+        then:
+        exception.status == NOT_FOUND
+        exception.message == "route not found for GET /hello"
+        exception.message.is(exception.message)
+    }
+
+    def "should not format message without arguments"() {
+        when:
+        var exception = new SpottyHttpException(BAD_REQUEST, "100% invalid")
+
+        then:
+        exception.message == "100% invalid"
+    }
+
+    def "should keep cause for stackless exceptions"() {
+        given:
+        var cause = new IllegalStateException("cause")
+
+        when:
+        var exception = new SpottyHttpException(BAD_REQUEST, cause, "error")
+
+        then:
+        exception.cause == cause
+        exception.stackTrace.length == 0
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2022 - Alex Danilenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spotty.common.http
+
+import spock.lang.Specification
+
+class AcceptHeaderTest extends Specification {
+
+    def "should parse accept header sorted by specificity"() {
+        when:
+        var accept = AcceptHeader.parse("*/*;q=0.8, text/*;q=0.9, text/html, application/json;q=0.5")
+
+        then:
+        accept.ranges().collect { it.toString() } == [
+            "text/html;q=1.0",
+            "application/json;q=0.5",
+            "text/*;q=0.9",
+            "*/*;q=0.8"
+        ]
+    }
+
+    def "should skip invalid media ranges"() {
+        when:
+        var accept = AcceptHeader.parse("unregistered, */html, text/plain;q=abc, text/plain;q=2, application/json")
+
+        then:
+        accept.ranges().size() == 1
+        accept.ranges()[0].toString() == "application/json;q=1.0"
+    }
+
+    def "should match the most specific media range"() {
+        given:
+        var accept = AcceptHeader.parse("text/*;q=0.3, text/html;q=0.7, */*;q=0.1")
+
+        expect:
+        accept.match(mediaType).quality == quality
+
+        where:
+        mediaType          | quality
+        "text/html"        | 0.7f
+        "text/plain"       | 0.3f
+        "application/json" | 0.1f
+    }
+
+    def "should not match when no media range includes media type"() {
+        given:
+        var accept = AcceptHeader.parse("text/html, application/json")
+
+        expect:
+        accept.match("image/png") == null
+        accept.match("invalid") == null
+    }
+
+    def "should return same instance for same accept header"() {
+        given:
+        var header = "text/html,application/xhtml+xml;q=0.9,*/*;q=0.8"
+
+        expect:
+        AcceptHeader.parse(header).is(AcceptHeader.parse(new String(header)))
+        AcceptHeader.parse(null).isEmpty()
+        AcceptHeader.parse(" ").isEmpty()
+    }
+
+}
@@ -2,7 +2,10 @@ package spotty.common.http
 
 import spock.lang.Specification
 
+import static HttpHeaders.ACCEPT
 import static HttpHeaders.CONTENT_LENGTH
+import static HttpHeaders.CONTENT_TYPE
+import static HttpHeaders.HOST
 import static HttpHeaders.SERVER
 import static HttpHeaders.USER_AGENT
 
@@ -74,4 +77,107 @@ class HttpHeadersTest extends Specification {
         headers.isEmpty()
     }
 
+    def "should keep all values of multi-valued header"() {
+        given:
+        var headers = new HttpHeaders()
+
+        when:
+        headers.append(ACCEPT, "text/html")
+        headers.append("x-custom", "1")
+        headers.append(ACCEPT, "application/json")
+        headers.append("x-custom", "2")
+
+        then:
+        headers.size() == 4
+        headers.get(ACCEPT) == "text/html"
+        headers.getAll(ACCEPT) == ["text/html", "application/json"]
+        headers.getAll("x-custom") == ["1", "2"]
+        headers.getAll(HOST) == []
+    }
+
+    def "should replace all values when header added"() {
+        given:
+        var headers = new HttpHeaders()
+        headers.append(ACCEPT, "text/html")
+        headers.append(HOST, "localhost")
+        headers.append(ACCEPT, "application/json")
+
+        when:
+        headers.add(ACCEPT, "*/*")
+
+        then:
+        headers.size() == 2
+        headers.getAll(ACCEPT) == ["*/*"]
+        headers.get(HOST) == "localhost"
+    }
+
+    def "should remove all values of header"() {
+        given:
+        var headers = new HttpHeaders()
+        headers.append(ACCEPT, "text/html")
+        headers.append("x-custom", "1")
+        headers.append(ACCEPT, "application/json")
+        headers.append(HOST, "localhost")
+
+        when:
+        var removed = headers.remove(ACCEPT)
+
+        then:
+        removed == "text/html"
+        headers.hasNot(ACCEPT)
+        headers.size() == 2
+        headers.get("x-custom") == "1"
+        headers.get(HOST) == "localhost"
+    }
+
+    def "should keep headers order"() {
+        given:
+        var headers = new HttpHeaders()
+        headers.add(SERVER, "Spotty")
+        headers.add("x-custom", "1")
+        headers.add(CONTENT_LENGTH, "123")
+
+        when:
+        var names = []
+        headers.forEach((name, value) -> names.add(name))
+
+        then:
+        names == [SERVER, "x-custom", CONTENT_LENGTH]
+    }
+
+    def "should grow and be reusable after clear"() {
+        given:
+        var headers = new HttpHeaders()
+
+        when:
+        (1..40).forEach { headers.append("x-header-$it".toString(), it.toString()) }
+        headers.add(HOST, "localhost")
+
+        then:
+        headers.size() == 41
+        headers.get("x-header-40") == "40"
+
+        when:
+        headers.clear()
+        headers.add(HOST, "spotty")
+
+        then:
+        headers.size() == 1
+        headers.get(HOST) == "spotty"
+        headers.hasNot("x-header-1")
+    }
+
+    def "should normalize header name"() {
+        given:
+        var line = " Content-Type : text/plain"
+
+        when:
+        var known = HttpHeaders.normalizeName(line, 1, 13)
+        var custom = HttpHeaders.normalizeName("X-Custom-Header", 0, 15)
+
+        then:
+        known.is(CONTENT_TYPE)
+        custom == "x-custom-header"
+    }
+
 }
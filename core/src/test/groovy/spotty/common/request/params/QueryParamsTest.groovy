@@ -20,4 +20,49 @@ class QueryParamsTest extends Specification {
         params.paramsMap() == [name: ["alex"] as Set, email: ["email@email.com", "second@email.com"] as Set]
     }
 
+    def "should keep order and duplicates of params"() {
+        when:
+        var params = QueryParams.parse("b=2&a=1&b=3&b=2")
+
+        then:
+        params.params() as List == ["b", "a"]
+        params.params("b") as List == ["2", "3"]
+        params.values("b") == ["2", "3", "2"]
+        params.size() == 4
+    }
+
+    def "should parse params without value"() {
+        when:
+        var params = QueryParams.parse("flag&name=spotty&empty=&&=skipped")
+
+        then:
+        params.params() as List == ["flag", "name", "empty"]
+        params.param("flag") == ""
+        params.param("empty") == ""
+        params.param("name") == "spotty"
+    }
+
+    def "should decode params"() {
+        when:
+        var params = QueryParams.parse("first+name=John+Doe&email=john%40doe.com&city=%D0%9A%D0%B8%D0%B5%D0%B2&broken=%zz")
+
+        then:
+        params.param("first name") == "John Doe"
+        params.param("email") == "john@doe.com"
+        params.param("city") == "\u041a\u0438\u0435\u0432"
+        params.param("broken") == "%zz"
+    }
+
+    def "should parse part of the request target"() {
+        given:
+        var target = "/search?q=spotty&page=2"
+
+        when:
+        var params = QueryParams.parse(target, target.indexOf('?') + 1, target.length())
+
+        then:
+        params.paramsMap() == [q: ["spotty"] as Set, page: ["2"] as Set]
+        params.params("unknown").isEmpty()
+        QueryParams.parse(target, target.length(), target.length()) == QueryParams.EMPTY
+    }
 }
@@ -0,0 +1,79 @@
+package spotty.common.response
+
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneId
+
+import static java.time.ZoneOffset.UTC
+
+class DateHeaderTest extends Specification {
+
+    private def clock = new TestClock()
+    private def dateHeader = new DateHeader(clock)
+
+    def "should encode date header line"() {
+        given:
+        clock.millis = Instant.parse("2022-06-03T10:15:30Z").toEpochMilli()
+
+        when:
+        var line = new String(dateHeader.line())
+
+        then:
+        line == "date: Fri, 3 Jun 2022 10:15:30 GMT\n"
+    }
+
+    def "should reuse encoded line within the same second"() {
+        given:
+        clock.millis = 1_000
+
+        when:
+        var first = dateHeader.line()
+        clock.millis = 1_999
+        var second = dateHeader.line()
+
+        then:
+        first.is(second)
+    }
+
+    def "should regenerate encoded line when second changed"() {
+        given:
+        clock.millis = 1_999
+
+        when:
+        var first = dateHeader.line()
+        clock.millis = 2_000
+        var second = dateHeader.line()
+
+        then:
+        !first.is(second)
+        new String(first) == "date: Thu, 1 Jan 1970 00:00:01 GMT\n"
+        new String(second) == "date: Thu, 1 Jan 1970 00:00:02 GMT\n"
+    }
+
+    private static class TestClock extends Clock {
+        long millis
+
+        @Override
+        ZoneId getZone() {
+            return UTC
+        }
+
+        @Override
+        Clock withZone(ZoneId zone) {
+            return this
+        }
+
+        @Override
+        Instant instant() {
+            return Instant.ofEpochMilli(millis)
+        }
+
+        @Override
+        long millis() {
+            return millis
+        }
+    }
+
+}
@@ -1,9 +1,14 @@
 package spotty.common.response
 
 import spock.lang.Specification
+import spotty.common.http.HttpHeaders
 import spotty.common.request.WebRequestTestData
 import spotty.common.stream.output.SpottyByteArrayOutputStream
 
+import static java.nio.charset.StandardCharsets.UTF_8
+import static spotty.common.http.HttpHeaders.SERVER
+import static spotty.common.http.HttpStatus.NOT_FOUND
+
 class ResponseHeadersWriterTest extends Specification implements WebRequestTestData {
 
     def "should write response correctly"() {
@@ -25,6 +30,48 @@ class ResponseHeadersWriterTest extends Specification implements WebRequestTestD
         data.toString() == expectedResponse
     }
 
+    def "should write constant headers unless response defines them"() {
+        given:
+        var data = new SpottyByteArrayOutputStream()
+        var constantHeaders = new ConstantHeaders(
+            new HttpHeaders()
+                .add("x-frame-options", "DENY")
+                .add(SERVER, "Spotty")
+        )
+
+        var response = new SpottyResponse()
+            .status(NOT_FOUND)
+            .addHeader(SERVER, "Custom")
+            .addHeader("x-name", "значение")
+
+        when:
+        ResponseHeadersWriter.write(data, response, constantHeaders)
+
+        then:
+        new String(data.toByteArray(), UTF_8) == """
+            HTTP/1.1 404 Not Found
+            content-length: 0
+            content-type: text/plain
+            x-frame-options: DENY
+            server: Custom
+            x-name: значение
+        """.stripIndent(true).trim() + "\n\n"
+    }
+
+    def "should write date header before constant headers"() {
+        given:
+        var data = new SpottyByteArrayOutputStream()
+        var constantHeaders = new ConstantHeaders(new HttpHeaders().add(SERVER, "Spotty"), new DateHeader())
+
+        when:
+        ResponseHeadersWriter.write(data, new SpottyResponse(), constantHeaders)
+        var lines = data.toString().split("\n")
+
+        then:
+        lines[3].startsWith("date: ")
+        lines[4] == "server: Spotty"
+    }
+
     def expectedResponse = """
             HTTP/1.1 200 OK
             content-length: 5
@@ -0,0 +1,85 @@
+package spotty.common.session
+
+import spock.lang.Specification
+import spotty.common.exception.SpottyException
+
+import java.time.Instant
+
+class SessionCodecTest extends Specification {
+    def "should encode and decode session correctly"() {
+        given:
+        var session = new Session()
+            .expires(Instant.ofEpochMilli(1_700_000_000_000))
+            .put("string", "hello")
+            .put("int", 1)
+            .put("long", 2L)
+            .put("bool", true)
+            .put("double", 1.5d)
+            .put("uuid", UUID.randomUUID())
+            .put("instant", Instant.ofEpochSecond(10, 20))
+            .put(1, [1, 2, 3])
+
+        when:
+        var decoded = SessionCodec.decode(SessionCodec.encode(session))
+
+        then:
+        decoded.id == session.id
+        decoded.expires() == session.expires()
+        decoded.size() == session.size()
+        session.entrySet().every { decoded.get(it.key) == it.value }
+    }
+
+    def "should decode bytes value correctly"() {
+        given:
+        var session = new Session().put("bytes", [1, 2, 3] as byte[])
+
+        when:
+        var decoded = SessionCodec.decode(SessionCodec.encode(session))
+
+        then:
+        decoded.get("bytes") == [1, 2, 3] as byte[]
+    }
+
+    def "should throw error when value is not serializable"() {
+        given:
+        var session = new Session().put("value", new Object())
+
+        when:
+        SessionCodec.encode(session)
+
+        then:
+        thrown SpottyException
+    }
+
+    def "should throw error when bytes are corrupted"() {
+        when:
+        SessionCodec.decode([9, 1, 2] as byte[])
+
+        then:
+        thrown SpottyException
+    }
+
+    def "should encode consistent session while it is changed concurrently"() {
+        given:
+        var session = new Session()
+        var running = true
+        var writer = Thread.start {
+            var i = 0
+            while (running) {
+                session.put("key" + (i % 100), i)
+                session.remove("key" + ((i + 50) % 100))
+                i++
+            }
+        }
+
+        when:
+        var decoded = (1..2000).collect { SessionCodec.decode(SessionCodec.encode(session)) }
+
+        then:
+        decoded.every { it.id == session.id }
+
+        cleanup:
+        running = false
+        writer.join()
+    }
+}
@@ -286,4 +286,42 @@ class SessionTest extends Specification {
         session != session2
         session.hashCode() != session2.hashCode()
     }
+
+    def "should call first change listener once"() {
+        given:
+        var calls = 0
+        var session = new Session().onFirstChange { calls++ }
+
+        when:
+        var transientBefore = session.isTransient()
+        session.get("name")
+        session.put("name", "spotty")
+        session.put("age", 1)
+
+        then:
+        transientBefore
+        !session.isTransient()
+        calls == 1
+    }
+
+    def "should not call first change listener when data is not changed"() {
+        given:
+        var calls = 0
+        var session = new Session().put("name", "spotty")
+        session.onFirstChange { calls++ }
+
+        when:
+        session.remove("absent")
+        session.putIfAbsent("name", "other")
+        session.computeIfPresent("absent") { k, v -> "value" }
+        session.computeIfAbsent("name") { "other" }
+        session.computeIfAbsent("absent") { null }
+        session.compute("absent") { k, v -> null }
+        session.putAll([:])
+
+        then:
+        session.isTransient()
+        calls == 0
+        new Session().onFirstChange { calls++ }.clear().isTransient()
+    }
 }
@@ -172,4 +172,35 @@ class SpottyFixedByteOutputStreamTest extends Specification {
         stream.sourceData().equals(stream.toByteArray()) == false
     }
 
+    def "should print numbers without intermediate strings"() {
+        given:
+        var stream = new SpottyFixedByteOutputStream(64)
+
+        when:
+        stream.print(number)
+
+        then:
+        stream.toString() == expected
+
+        where:
+        number            | expected
+        0                 | "0"
+        7                 | "7"
+        1024              | "1024"
+        -15               | "-15"
+        Integer.MAX_VALUE | "2147483647"
+        Integer.MIN_VALUE | "-2147483648"
+    }
+
+    def "should print non ASCII text in UTF-8"() {
+        given:
+        var stream = new SpottyFixedByteOutputStream(64)
+
+        when:
+        stream.print("hello мир")
+
+        then:
+        new String(stream.toByteArray(), "UTF-8") == "hello мир"
+    }
+
 }
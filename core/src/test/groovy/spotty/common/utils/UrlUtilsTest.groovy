@@ -0,0 +1,29 @@
+package spotty.common.utils
+
+import spock.lang.Specification
+
+class UrlUtilsTest extends Specification {
+
+    def "should percent-decode string"() {
+        expect:
+        UrlUtils.decode(value, 0, value.length(), plusAsSpace) == expected
+
+        where:
+        value                  | plusAsSpace | expected
+        "/hello"               | false       | "/hello"
+        "/hello%20world"       | false       | "/hello world"
+        "a+b"                  | false       | "a+b"
+        "a+b%2Bc"              | true        | "a b+c"
+        "%D0%BF%D1%80%D0%B8"   | true        | "\u043f\u0440\u0438"
+        "100%"                 | true        | "100%"
+        "%zz%4"                | true        | "%zz%4"
+    }
+
+    def "should decode part of string"() {
+        given:
+        var value = "GET /a%2Fb HTTP/1.1"
+
+        expect:
+        UrlUtils.decode(value, 4, 10, false) == "/a/b"
+    }
+}
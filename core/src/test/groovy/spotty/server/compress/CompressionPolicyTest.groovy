@@ -0,0 +1,88 @@
+package spotty.server.compress
+
+import spock.lang.Specification
+import spotty.common.exception.SpottyValidationException
+
+import static spotty.common.http.ContentEncoding.DEFLATE
+import static spotty.common.http.ContentEncoding.GZIP
+
+class CompressionPolicyTest extends Specification {
+
+    private def policy = CompressionPolicy.builder().build()
+
+    def "should negotiate content encoding by Accept-Encoding"() {
+        expect:
+        policy.negotiate(acceptEncoding) == expected
+
+        where:
+        acceptEncoding                 | expected
+        null                           | null
+        ""                             | null
+        "gzip"                         | GZIP
+        "deflate"                      | DEFLATE
+        "gzip, deflate, br"            | GZIP
+        "deflate, gzip"                | GZIP
+        "GZIP"                         | GZIP
+        "gzip;q=0.5, deflate"          | DEFLATE
+        "gzip; q=0.8, deflate;q=0.9"   | DEFLATE
+        "gzip;q=0, deflate;q=0"        | null
+        "gzip;q=0"                     | null
+        "br, identity"                 | null
+        "*"                            | GZIP
+        "*;q=0.5, gzip;q=0"            | DEFLATE
+        "gzip;q=invalid, deflate;q=.1" | DEFLATE
+        "gzip;Q=0"                     | null
+        "gzip;Q=0.5, deflate"          | DEFLATE
+        "gzip;foo=aq=0"                | GZIP
+        "gzip;foo=bar;q=0, deflate"    | DEFLATE
+    }
+
+    def "should check compressible content type and size"() {
+        given:
+        var policy = CompressionPolicy.builder()
+            .minSize(10)
+            .excludedTypes("text/event-stream")
+            .build()
+
+        expect:
+        policy.isCompressible(contentType, size) == expected
+
+        where:
+        contentType                      | size | expected
+        "text/plain"                     | 10   | true
+        "text/html; charset=utf-8"       | 100  | true
+        "application/json"               | 100  | true
+        "image/svg+xml"                  | 100  | true
+        "text/plain"                     | 9    | false
+        "image/png"                      | 100  | false
+        "application/zip"                | 100  | false
+        "text/event-stream"              | 100  | false
+        null                             | 100  | false
+    }
+
+    def "should use custom compressible types"() {
+        given:
+        var policy = CompressionPolicy.builder()
+            .minSize(0)
+            .compressibleTypes("application/*")
+            .build()
+
+        expect:
+        policy.isCompressible("application/octet-stream", 1)
+        !policy.isCompressible("text/plain", 1)
+    }
+
+    def "should not compress when disabled"() {
+        expect:
+        !CompressionPolicy.DISABLED.isCompressible("text/plain", 10_000)
+    }
+
+    def "should validate compression level"() {
+        when:
+        CompressionPolicy.builder().level(10).build()
+
+        then:
+        thrown SpottyValidationException
+    }
+
+}
@@ -4,6 +4,8 @@ import spock.lang.Specification
 import spotty.common.exception.SpottyValidationException
 import spotty.common.request.WebRequestTestData
 
+import java.util.zip.GZIPInputStream
+
 import static spotty.common.http.ContentEncoding.DEFLATE
 import static spotty.common.http.ContentEncoding.GZIP
 
@@ -35,6 +37,33 @@ class CompressorTest extends Specification implements WebRequestTestData {
         deflate.length < requestBody.length()
     }
 
+    def "should reuse deflaters between responses"() {
+        given:
+        var expected = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+
+        when:
+        var first = compressor.compress(GZIP, requestBody.getBytes())
+        compressor.compress(DEFLATE, "hello".getBytes())
+        var second = compressor.compress(GZIP, requestBody.getBytes())
+
+        then:
+        expected == first
+        expected == second
+    }
+
+    def "should compress body bigger than buffer"() {
+        given:
+        var body = new byte[1024 * 1024]
+        new Random(1).nextBytes(body)
+
+        when:
+        var gzip = compressor.compress(GZIP, body)
+        var unzipped = new GZIPInputStream(new ByteArrayInputStream(gzip)).getBytes()
+
+        then:
+        unzipped == body
+    }
+
     def "should return error when ContentEncoding does not supported"() {
         when:
         compressor.compress(null, "".getBytes())
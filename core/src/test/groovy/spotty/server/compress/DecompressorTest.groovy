@@ -0,0 +1,171 @@
+package spotty.server.compress
+
+import spock.lang.Specification
+import spotty.common.exception.SpottyHttpException
+import spotty.common.exception.SpottyValidationException
+import spotty.common.request.WebRequestTestData
+
+import static spotty.common.http.ContentEncoding.DEFLATE
+import static spotty.common.http.ContentEncoding.GZIP
+import static spotty.common.http.HttpStatus.BAD_REQUEST
+import static spotty.common.http.HttpStatus.PAYLOAD_TOO_LARGE
+
+class DecompressorTest extends Specification implements WebRequestTestData {
+
+    private Decompressor decompressor = new Decompressor(1024 * 1024, 100)
+    private Decompressor.Decoder decoder = decompressor.decoder()
+
+    def "should gunzip body correctly"() {
+        given:
+        var gzip = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+
+        when:
+        decoder.start(GZIP)
+        decoder.write(gzip, 0, gzip.length)
+
+        then:
+        new String(decoder.finish()) == requestBody
+    }
+
+    def "should inflate body correctly"() {
+        given:
+        var deflate = getClass().getResourceAsStream("/compressor/request.deflate").getBytes()
+
+        when:
+        decoder.start(DEFLATE)
+        decoder.write(deflate, 0, deflate.length)
+
+        then:
+        new String(decoder.finish()) == requestBody
+    }
+
+    def "should decompress body split into parts"() {
+        given:
+        var gzip = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+
+        when:
+        decoder.start(GZIP)
+        for (int off = 0; off < gzip.length; off += partSize) {
+            decoder.write(gzip, off, Math.min(partSize, gzip.length - off))
+        }
+
+        then:
+        new String(decoder.finish()) == requestBody
+
+        where:
+        partSize << [1, 3, 9, 100]
+    }
+
+    def "should reuse decoder between requests"() {
+        given:
+        var gzip = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+        var deflate = getClass().getResourceAsStream("/compressor/request.deflate").getBytes()
+
+        when:
+        decoder.start(GZIP)
+        decoder.write(gzip, 0, gzip.length)
+        var first = decoder.finish()
+
+        decoder.start(DEFLATE)
+        decoder.write(deflate, 0, deflate.length)
+        var second = decoder.finish()
+
+        then:
+        new String(first) == requestBody
+        new String(second) == requestBody
+        !decoder.isStarted()
+    }
+
+    def "should skip optional gzip header fields"() {
+        given:
+        var gzip = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+        var out = new ByteArrayOutputStream()
+        // FHCRC, FEXTRA and FNAME flags
+        out.write([0x1f, 0x8b, 8, 2 | 4 | 8, 0, 0, 0, 0, 0, 3] as byte[])
+        out.write([2, 0, 1, 2] as byte[])
+        out.write("request.txt\0".getBytes())
+        out.write([0, 0] as byte[])
+        out.write(gzip, 10, gzip.length - 10)
+        var body = out.toByteArray()
+
+        when:
+        decoder.start(GZIP)
+        body.eachWithIndex { byte b, int i -> decoder.write(body, i, 1) }
+
+        then:
+        new String(decoder.finish()) == requestBody
+    }
+
+    def "should fail when decompressed body is too large"() {
+        given:
+        var decompressor = new Decompressor(100, 100)
+        var decoder = decompressor.decoder()
+        var gzip = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+
+        when:
+        decoder.start(GZIP)
+        decoder.write(gzip, 0, gzip.length)
+
+        then:
+        var e = thrown SpottyHttpException
+        e.status == PAYLOAD_TOO_LARGE
+    }
+
+    def "should fail when compression ratio is too high"() {
+        given:
+        var bomb = new Compressor().compress(GZIP, new byte[1024 * 1024])
+
+        when:
+        decoder.start(GZIP)
+        decoder.write(bomb, 0, bomb.length)
+
+        then:
+        var e = thrown SpottyHttpException
+        e.status == PAYLOAD_TOO_LARGE
+    }
+
+    def "should fail when body is invalid"() {
+        given:
+        var gzip = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+        var corrupted = gzip.clone()
+        corrupted[corrupted.length - 5] ^= 1
+
+        when:
+        decoder.start(encoding)
+        decoder.write(body(gzip, corrupted), 0, body(gzip, corrupted).length)
+        decoder.finish()
+
+        then:
+        var e = thrown SpottyHttpException
+        e.status == BAD_REQUEST
+
+        where:
+        encoding | body
+        GZIP     | { gzip, corrupted -> "not gzip data".getBytes() }
+        DEFLATE  | { gzip, corrupted -> "not deflate data".getBytes() }
+        GZIP     | { gzip, corrupted -> Arrays.copyOf(gzip, gzip.length - 3) }
+        GZIP     | { gzip, corrupted -> Arrays.copyOf(gzip, gzip.length + 1) }
+        GZIP     | { gzip, corrupted -> corrupted }
+    }
+
+    def "should fail when decoder is not started"() {
+        when:
+        decoder.write(new byte[1], 0, 1)
+
+        then:
+        thrown SpottyValidationException
+    }
+
+    def "should validate limits"() {
+        when:
+        new Decompressor(maxSize, maxRatio)
+
+        then:
+        thrown SpottyValidationException
+
+        where:
+        maxSize | maxRatio
+        0       | 100
+        1024    | 0
+    }
+}
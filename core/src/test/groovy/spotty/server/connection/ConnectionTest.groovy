@@ -8,6 +8,7 @@ import spotty.common.request.WebRequestTestData
 import spotty.common.response.ResponseHeadersWriter
 import spotty.common.response.SpottyResponse
 import spotty.common.stream.output.SpottyByteArrayOutputStream
+import spotty.server.compress.Decompressor
 import spotty.server.connection.socket.SocketFactory
 import spotty.server.event.ServerEvents
 import spotty.server.handler.EchoRequestHandler
@@ -16,10 +17,13 @@ import spotty.server.registry.exception.ExceptionHandlerRegistry
 import spotty.server.worker.ReactorWorker
 import stub.SocketChannelStub
 
+import java.nio.ByteBuffer
+
 import static java.util.concurrent.TimeUnit.SECONDS
 import static org.awaitility.Awaitility.await
 import static spotty.common.http.ConnectionValue.CLOSE
 import static spotty.common.http.HttpHeaders.CONNECTION
+import static spotty.common.http.HttpHeaders.CONTENT_ENCODING
 import static spotty.common.http.HttpHeaders.CONTENT_TYPE
 import static spotty.common.http.HttpHeaders.HOST
 import static spotty.common.http.HttpHeaders.LOCATION
@@ -85,6 +89,62 @@ class ConnectionTest extends Specification implements WebRequestTestData {
         connection.request == expectedRequest
     }
 
+    def "should parse request target without uri"() {
+        given:
+        final RequestHandler delayHandler = (req, res) -> Thread.sleep(1000)
+        var request = fullRequest.replace("POST / HTTP/1.1", "POST /hello%20world?name=alex&flag&name=bob+smith#top HTTP/1.1")
+        var socket = new SocketChannelStub(request.length())
+        socket.configureBlocking(false)
+        socket.write(request)
+        socket.flip()
+
+        var connection = connectionBuilder()
+            .socket(socketFactory.createSocket(socket))
+            .requestHandler(delayHandler)
+            .build()
+
+        connection.markReadyToRead()
+
+        when:
+        connection.handle()
+        connection.handle()
+
+        then:
+        connection.request.path() == "/hello world"
+        connection.request.queryParams() == ["name", "flag"] as Set
+        connection.request.queryParam("flag") == ""
+        connection.request.queryParamValues("name") == ["alex", "bob smith"]
+    }
+
+    def "should decompress request body"() {
+        given:
+        final RequestHandler delayHandler = (req, res) -> Thread.sleep(1000)
+        var gzip = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+        var head = "POST / HTTP/1.1\nhost: localhost:4000\ncontent-encoding: gzip\ncontent-length: ${gzip.length}\n\n"
+        var socket = new SocketChannelStub(head.length() + gzip.length)
+        socket.configureBlocking(false)
+        socket.write(ByteBuffer.wrap(head.getBytes()))
+        socket.write(ByteBuffer.wrap(gzip))
+        socket.flip()
+
+        var connection = connectionBuilder()
+            .socket(socketFactory.createSocket(socket))
+            .requestHandler(delayHandler)
+            .decompressor(new Decompressor(maxBodyLimit, 100))
+            .build()
+
+        connection.markReadyToRead()
+
+        when:
+        connection.handle()
+        connection.handle()
+
+        then:
+        new String(connection.request.body()) == requestBody
+        connection.request.contentLength() == requestBody.length()
+        connection.request.headers().hasNot(CONTENT_ENCODING)
+    }
+
     def "should write response correctly"() {
         var socket = new SocketChannelStub(fullRequest.length())
         socket.configureBlocking(false)
@@ -21,6 +21,8 @@ class StaticFilesManagerTest extends Specification {
         "/file/pdf/file.pdf"                          | "/file"                 | "/pdf/file.pdf"
         "/user/1/john/agreement/contract.pdf"         | "/user/:id/*/agreement" | "/contract.pdf"
         "/user/1/john/agreement/private/contract.pdf" | "/user/:id/*/agreement" | "/private/contract.pdf"
+        "/static-v1.0/js/app.js"                      | "/static-v1.0"          | "/js/app.js"
+        "/assets/css/app.css"                         | "/assets/css"           | "/app.css"
     }
 
     def "should staticFiles(templatePath) and register file router correctly"() {
@@ -47,4 +49,12 @@ class StaticFilesManagerTest extends Specification {
         router.getRoute("/file/file.gzip", GET) != null
     }
 
+    def "should staticBundle(filesDir, templatePath) and register file router correctly"() {
+        when:
+        filesManager.staticBundle("/compressor", "/file")
+
+        then:
+        router.getRoute("/file/request.gzip", GET) != null
+    }
+
 }
@@ -26,4 +26,33 @@ class FileTypeDetectorTest extends Specification {
         then:
         thrown FileNotFoundException
     }
+
+    def "should detect type of well known files by extension without reading them"() {
+        given:
+        var detector = new FileTypeDetector()
+
+        expect:
+        detector.detect(new URL(url)) == type
+
+        where:
+        url                               | type
+        "file:/not/exists/app.js"         | "text/javascript"
+        "file:/not/exists/index.HTML"     | "text/html"
+        "file:/not/exists/style.min.css"  | "text/css"
+        "jar:file:/app.jar!/static/a.svg" | "image/svg+xml"
+    }
+
+    def "should detect type of the same file once"() {
+        given:
+        var detector = new FileTypeDetector()
+        var file = getClass().getResource("/compressor/request.gzip")
+
+        when:
+        var first = detector.detect(file)
+        var second = detector.detect(file)
+
+        then:
+        first == "application/gzip"
+        second == first
+    }
 }
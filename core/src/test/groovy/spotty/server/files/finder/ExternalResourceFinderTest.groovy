@@ -3,6 +3,7 @@ package spotty.server.files.finder
 import spock.lang.Specification
 import spotty.server.files.finder.impl.ExternalResourceFinder
 
+import java.nio.file.Files
 import java.nio.file.Paths
 
 class ExternalResourceFinderTest extends Specification {
@@ -28,4 +29,42 @@ class ExternalResourceFinderTest extends Specification {
         then:
         resource == null
     }
+
+    def "should remember not existing file for a while"() {
+        given:
+        var finder = new ExternalResourceFinder(missingTtlMillis)
+        var file = Files.createTempDirectory("static").resolve("app.js")
+
+        when:
+        var before = finder.find(file.toString())
+        file.text = "console.log('hello');"
+        [file, file.parent].each { it.toFile().deleteOnExit() }
+        var after = finder.find(file.toString())
+
+        then:
+        before == null
+        (after != null) == foundAfterCreation
+
+        where:
+        missingTtlMillis | foundAfterCreation
+        60_000           | false
+        0                | true
+    }
+
+    def "should find created file after missing files have been invalidated"() {
+        given:
+        var finder = new ExternalResourceFinder(60_000)
+        var file = Files.createTempDirectory("static").resolve("app.js")
+
+        when:
+        var before = finder.find(file.toString())
+        file.text = "console.log('hello');"
+        [file, file.parent].each { it.toFile().deleteOnExit() }
+        finder.invalidateMissing()
+        var after = finder.find(file.toString())
+
+        then:
+        before == null
+        after != null
+    }
 }
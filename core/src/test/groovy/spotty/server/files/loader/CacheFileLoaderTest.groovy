@@ -1,18 +1,37 @@
 package spotty.server.files.loader
 
 import spock.lang.Specification
+import spotty.common.request.SpottyDefaultRequest
 import spotty.common.response.SpottyResponse
+import spotty.server.compress.CompressionPolicy
 import spotty.server.files.detector.FileTypeDetector
 import spotty.server.files.detector.TypeDetector
 import spotty.server.files.loader.impl.CacheFileLoader
 
+import java.nio.file.Files
 import java.time.ZonedDateTime
+import java.util.zip.GZIPInputStream
+import java.util.zip.InflaterInputStream
 
 import static java.time.ZoneOffset.UTC
 import static java.time.ZonedDateTime.now
 import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME
+import static spotty.common.http.HttpHeaders.ACCEPT_ENCODING
 import static spotty.common.http.HttpHeaders.CACHE_CONTROL
+import static spotty.common.http.HttpHeaders.CONTENT_ENCODING
+import static spotty.common.http.HttpHeaders.CONTENT_RANGE
+import static spotty.common.http.HttpHeaders.ETAG
 import static spotty.common.http.HttpHeaders.EXPIRES
+import static spotty.common.http.HttpHeaders.IF_MODIFIED_SINCE
+import static spotty.common.http.HttpHeaders.IF_NONE_MATCH
+import static spotty.common.http.HttpHeaders.IF_RANGE
+import static spotty.common.http.HttpHeaders.LAST_MODIFIED
+import static spotty.common.http.HttpHeaders.RANGE
+import static spotty.common.http.HttpStatus.NOT_MODIFIED
+import static spotty.common.http.HttpStatus.OK
+import static spotty.common.http.HttpStatus.PARTIAL_CONTENT
+import static spotty.common.http.HttpHeaders.VARY
+import static spotty.common.http.HttpMethod.GET
 
 class CacheFileLoaderTest extends Specification {
     def "should return content of file"() {
@@ -67,4 +86,200 @@ class CacheFileLoaderTest extends Specification {
         thrown FileNotFoundException
     }
 
+    def "should compress file once and serve variant accepted by client"() {
+        given:
+        var text = "console.log('hello');\n" * 100
+        var file = Files.createTempFile("app", ".js")
+        file.toFile().deleteOnExit()
+        file.text = text
+
+        var detector = Mock(TypeDetector.class)
+        var loader = new CacheFileLoader(detector, CompressionPolicy.builder().build(), 10, 10)
+
+        detector.detect(_) >> "application/javascript"
+
+        when:
+        var gzipResponse = new SpottyResponse()
+        var gzip = loader.loadFile(file.toUri().toURL(), request("gzip"), gzipResponse)
+
+        var deflateResponse = new SpottyResponse()
+        var deflate = loader.loadFile(file.toUri().toURL(), request("deflate"), deflateResponse)
+
+        var plainResponse = new SpottyResponse()
+        var plain = loader.loadFile(file.toUri().toURL(), request(null), plainResponse)
+
+        then:
+        gzipResponse.isEncoded()
+        gzipResponse.headers().get(CONTENT_ENCODING) == "gzip"
+        gzipResponse.headers().get(VARY) == ACCEPT_ENCODING
+        new GZIPInputStream(new ByteArrayInputStream(gzip)).text == text
+
+        deflateResponse.headers().get(CONTENT_ENCODING) == "deflate"
+        new InflaterInputStream(new ByteArrayInputStream(deflate)).text == text
+
+        !plainResponse.isEncoded()
+        plainResponse.headers().get(VARY) == ACCEPT_ENCODING
+        new String(plain) == text
+    }
+
+    def "should serve sibling gz file when client accepts gzip"() {
+        given:
+        var dir = Files.createTempDirectory("static")
+        var file = dir.resolve("app.js")
+        var gzipFile = dir.resolve("app.js.gz")
+        file.text = "console.log('hello');"
+        gzipFile.bytes = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+        [file, gzipFile, dir].each { it.toFile().deleteOnExit() }
+
+        var loader = new CacheFileLoader({ "application/javascript" } as TypeDetector, 10, 10)
+        var response = new SpottyResponse()
+
+        when:
+        var content = loader.loadFile(file.toUri().toURL(), request("gzip, deflate"), response)
+
+        then:
+        content == gzipFile.bytes
+        response.isEncoded()
+        response.headers().get(CONTENT_ENCODING) == "gzip"
+        response.contentType() == "application/javascript"
+    }
+
+    def "should send validators with file"() {
+        given:
+        var loader = new CacheFileLoader(new FileTypeDetector(), 10, 10)
+        var file = getClass().getResource("/compressor/request.gzip")
+        var response = new SpottyResponse()
+
+        when:
+        loader.loadFile(file, request(null), response)
+
+        then:
+        response.headers().get(ETAG) ==~ /"[0-9a-f]{32}"/
+        response.headers().get(LAST_MODIFIED) == RFC_1123_DATE_TIME.format(
+            ZonedDateTime.ofInstant(new Date(new File(file.toURI()).lastModified()).toInstant(), UTC)
+        )
+    }
+
+    def "should respond 304 when client has actual copy of the file"() {
+        given:
+        var loader = new CacheFileLoader(new FileTypeDetector(), 10, 10)
+        var file = getClass().getResource("/compressor/request.gzip")
+
+        var first = new SpottyResponse()
+        loader.loadFile(file, request(null), first)
+        var etag = first.headers().get(ETAG)
+        var lastModified = first.headers().get(LAST_MODIFIED)
+
+        var request = request(null)
+        request.headers().add(name, value(etag, lastModified))
+
+        var response = new SpottyResponse()
+
+        when:
+        var content = loader.loadFile(file, request, response)
+
+        then:
+        content == null
+        response.status() == NOT_MODIFIED
+        response.contentType() == null
+        response.contentLength() == -1
+        response.headers().get(ETAG) == etag
+
+        where:
+        name              | value
+        IF_NONE_MATCH     | { etag, lastModified -> etag }
+        IF_NONE_MATCH     | { etag, lastModified -> "\"other\", W/$etag" }
+        IF_NONE_MATCH     | { etag, lastModified -> "*" }
+        IF_MODIFIED_SINCE | { etag, lastModified -> lastModified }
+    }
+
+    def "should respond with content when client copy is outdated"() {
+        given:
+        var loader = new CacheFileLoader(new FileTypeDetector(), 10, 10)
+        var file = getClass().getResource("/compressor/request.gzip")
+
+        var request = request(null)
+        request.headers().add(name, value)
+
+        var response = new SpottyResponse()
+
+        when:
+        var content = loader.loadFile(file, request, response)
+
+        then:
+        content == file.bytes
+        response.status() == OK
+
+        where:
+        name              | value
+        IF_NONE_MATCH     | "\"other\""
+        IF_MODIFIED_SINCE | "Thu, 01 Jan 1970 00:00:00 GMT"
+        IF_MODIFIED_SINCE | "not a date"
+    }
+
+    def "should serve range of identity content when strong etag matches If-Range"() {
+        given:
+        var text = "console.log('hello');\n" * 100
+        var file = Files.createTempFile("app", ".js")
+        file.toFile().deleteOnExit()
+        file.text = text
+
+        var loader = new CacheFileLoader({ "application/javascript" } as TypeDetector, CompressionPolicy.builder().build(), 10, 10)
+
+        var first = new SpottyResponse()
+        loader.loadFile(file.toUri().toURL(), request(null).method(GET), first)
+
+        var request = request("gzip").method(GET)
+        request.headers().add(RANGE, "bytes=0-6")
+        request.headers().add(IF_RANGE, first.headers().get(ETAG))
+        var response = new SpottyResponse()
+
+        when:
+        var content = loader.loadFile(file.toUri().toURL(), request, response)
+
+        then:
+        response.status() == PARTIAL_CONTENT
+        response.headers().hasNot(CONTENT_ENCODING)
+        response.headers().get(CONTENT_RANGE) == "bytes 0-6/${text.length()}"
+        new String(content) == "console"
+    }
+
+    def "should load file again after invalidation"() {
+        given:
+        var dir = Files.createTempDirectory("static")
+        var file = dir.resolve("app.js")
+        var gzipFile = dir.resolve("app.js.gz")
+        file.text = "one"
+        [file, gzipFile, dir].each { it.toFile().deleteOnExit() }
+
+        var loader = new CacheFileLoader({ "application/javascript" } as TypeDetector, 10, 10)
+        var url = file.toUri().toURL()
+
+        when:
+        loader.loadFile(url, new SpottyResponse())
+        file.text = "two"
+        var cached = loader.loadFile(url, new SpottyResponse())
+
+        loader.invalidate(url)
+        var reloaded = loader.loadFile(url, new SpottyResponse())
+
+        file.text = "three"
+        loader.invalidate(gzipFile.toUri().toURL())
+        var reloadedByVariant = loader.loadFile(url, new SpottyResponse())
+
+        then:
+        new String(cached) == "one"
+        new String(reloaded) == "two"
+        new String(reloadedByVariant) == "three"
+    }
+
+    private static SpottyDefaultRequest request(String acceptEncoding) {
+        var request = new SpottyDefaultRequest()
+        if (acceptEncoding != null) {
+            request.headers().add(ACCEPT_ENCODING, acceptEncoding)
+        }
+
+        return request
+    }
+
 }
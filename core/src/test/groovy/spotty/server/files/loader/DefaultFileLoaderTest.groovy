@@ -1,10 +1,30 @@
 package spotty.server.files.loader
 
 import spock.lang.Specification
+import spotty.common.request.SpottyDefaultRequest
 import spotty.common.response.SpottyResponse
+import spotty.server.files.detector.TypeDetector
 import spotty.server.files.detector.FileTypeDetector
 import spotty.server.files.loader.impl.DefaultFileLoader
 
+import java.nio.file.Files
+
+import static spotty.common.http.HttpHeaders.ACCEPT_ENCODING
+import static spotty.common.http.HttpHeaders.ACCEPT_RANGES
+import static spotty.common.http.HttpHeaders.CONTENT_ENCODING
+import static spotty.common.http.HttpHeaders.CONTENT_RANGE
+import static spotty.common.http.HttpHeaders.ETAG
+import static spotty.common.http.HttpHeaders.IF_NONE_MATCH
+import static spotty.common.http.HttpHeaders.IF_RANGE
+import static spotty.common.http.HttpHeaders.LAST_MODIFIED
+import static spotty.common.http.HttpHeaders.RANGE
+import static spotty.common.http.HttpMethod.GET
+import static spotty.common.http.HttpStatus.NOT_MODIFIED
+import static spotty.common.http.HttpStatus.OK
+import static spotty.common.http.HttpStatus.PARTIAL_CONTENT
+import static spotty.common.http.HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE
+import static spotty.common.http.HttpHeaders.VARY
+
 class DefaultFileLoaderTest extends Specification {
 
     def "should return content of file"() {
@@ -36,4 +56,144 @@ class DefaultFileLoaderTest extends Specification {
         thrown FileNotFoundException
     }
 
+    def "should serve sibling gz file only when client accepts gzip"() {
+        given:
+        var dir = Files.createTempDirectory("static")
+        var file = dir.resolve("app.js")
+        var gzipFile = dir.resolve("app.js.gz")
+        file.text = "console.log('hello');"
+        gzipFile.bytes = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+        [file, gzipFile, dir].each { it.toFile().deleteOnExit() }
+
+        var loader = new DefaultFileLoader({ "application/javascript" } as TypeDetector)
+        var response = new SpottyResponse()
+        var request = new SpottyDefaultRequest()
+        request.headers().add(ACCEPT_ENCODING, acceptEncoding)
+
+        when:
+        var content = loader.loadFile(file.toUri().toURL(), request, response)
+
+        then:
+        content == (encoded ? gzipFile.bytes : file.bytes)
+        response.isEncoded() == encoded
+        response.headers().get(CONTENT_ENCODING) == (encoded ? "gzip" : null)
+        response.headers().get(VARY) == ACCEPT_ENCODING
+
+        where:
+        acceptEncoding      | encoded
+        "gzip, deflate"     | true
+        "deflate, gzip;q=0" | false
+    }
+
+    def "should respond 304 without reading the file when etag matches"() {
+        given:
+        var detector = Mock(TypeDetector.class)
+        var loader = new DefaultFileLoader(detector)
+        var file = getClass().getResource("/compressor/request.gzip")
+
+        var first = new SpottyResponse()
+        loader.loadFile(file, new SpottyDefaultRequest(), first)
+        var etag = first.headers().get(ETAG)
+
+        var request = new SpottyDefaultRequest()
+        request.headers().add(IF_NONE_MATCH, etag)
+        var response = new SpottyResponse()
+
+        when:
+        var content = loader.loadFile(file, request, response)
+
+        then:
+        etag.startsWith("W/")
+        first.headers().has(LAST_MODIFIED)
+        content == null
+        response.status() == NOT_MODIFIED
+        0 * detector.detect(_)
+    }
+
+    def "should respond with requested range of the file"() {
+        given:
+        var file = Files.createTempFile("video", ".mp4")
+        file.toFile().deleteOnExit()
+        file.text = "0123456789abcdefghij"
+
+        var loader = new DefaultFileLoader({ "video/mp4" } as TypeDetector)
+        var request = new SpottyDefaultRequest().method(GET)
+        request.headers().add(RANGE, range)
+        var response = new SpottyResponse()
+
+        when:
+        var content = loader.loadFile(file.toUri().toURL(), request, response)
+
+        then:
+        response.status() == status
+        response.headers().get(CONTENT_RANGE) == contentRange
+        response.headers().get(ACCEPT_RANGES) == "bytes"
+        (content == null ? null : new String(content)) == body
+
+        where:
+        range          | status                          | contentRange     | body
+        "bytes=0-4"    | PARTIAL_CONTENT                 | "bytes 0-4/20"   | "01234"
+        "bytes=15-"    | PARTIAL_CONTENT                 | "bytes 15-19/20" | "fghij"
+        "bytes=-3"     | PARTIAL_CONTENT                 | "bytes 17-19/20" | "hij"
+        "bytes=10-100" | PARTIAL_CONTENT                 | "bytes 10-19/20" | "abcdefghij"
+        "bytes=30-"    | REQUESTED_RANGE_NOT_SATISFIABLE | "bytes */20"     | null
+        "bytes=5-2"    | OK                              | null             | "0123456789abcdefghij"
+        "lines=0-1"    | OK                              | null             | "0123456789abcdefghij"
+    }
+
+    def "should respond with multipart byteranges when several ranges requested"() {
+        given:
+        var file = Files.createTempFile("video", ".mp4")
+        file.toFile().deleteOnExit()
+        file.text = "0123456789abcdefghij"
+
+        var loader = new DefaultFileLoader({ "video/mp4" } as TypeDetector)
+        var request = new SpottyDefaultRequest().method(GET)
+        request.headers().add(RANGE, "bytes=0-1, 5-6")
+        var response = new SpottyResponse()
+
+        when:
+        var content = new String(loader.loadFile(file.toUri().toURL(), request, response))
+        var boundary = response.contentType() - "multipart/byteranges; boundary="
+
+        then:
+        response.status() == PARTIAL_CONTENT
+        content == "\r\n--$boundary\r\n" +
+            "content-type: video/mp4\r\n" +
+            "content-range: bytes 0-1/20\r\n\r\n" +
+            "01\r\n--$boundary\r\n" +
+            "content-type: video/mp4\r\n" +
+            "content-range: bytes 5-6/20\r\n\r\n" +
+            "56\r\n--$boundary--\r\n"
+    }
+
+    def "should ignore range when If-Range does not match"() {
+        given:
+        var file = Files.createTempFile("video", ".mp4")
+        file.toFile().deleteOnExit()
+        file.text = "0123456789abcdefghij"
+
+        var loader = new DefaultFileLoader({ "video/mp4" } as TypeDetector)
+        var first = new SpottyResponse()
+        loader.loadFile(file.toUri().toURL(), new SpottyDefaultRequest().method(GET), first)
+
+        var request = new SpottyDefaultRequest().method(GET)
+        request.headers().add(RANGE, "bytes=0-1")
+        request.headers().add(IF_RANGE, ifRange(first.headers().get(LAST_MODIFIED)))
+        var response = new SpottyResponse()
+
+        when:
+        var content = loader.loadFile(file.toUri().toURL(), request, response)
+
+        then:
+        response.status() == status
+        content.length == length
+
+        where:
+        ifRange                                             | status          | length
+        { lastModified -> lastModified }                    | PARTIAL_CONTENT | 2
+        { lastModified -> "Thu, 01 Jan 1970 00:00:00 GMT" } | OK              | 20
+        { lastModified -> "\"other\"" }                     | OK              | 20
+    }
+
 }
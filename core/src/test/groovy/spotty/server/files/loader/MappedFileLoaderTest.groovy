@@ -0,0 +1,172 @@
+package spotty.server.files.loader
+
+import spock.lang.Specification
+import spotty.common.request.SpottyDefaultRequest
+import spotty.common.response.SpottyResponse
+import spotty.server.compress.CompressionPolicy
+import spotty.server.files.detector.FileTypeDetector
+import spotty.server.files.detector.TypeDetector
+import spotty.server.files.loader.impl.MappedFileLoader
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+
+import static spotty.common.http.HttpHeaders.ACCEPT_ENCODING
+import static spotty.common.http.HttpHeaders.ACCEPT_RANGES
+import static spotty.common.http.HttpHeaders.CACHE_CONTROL
+import static spotty.common.http.HttpHeaders.CONTENT_ENCODING
+import static spotty.common.http.HttpHeaders.CONTENT_RANGE
+import static spotty.common.http.HttpHeaders.ETAG
+import static spotty.common.http.HttpHeaders.IF_NONE_MATCH
+import static spotty.common.http.HttpHeaders.RANGE
+import static spotty.common.http.HttpMethod.GET
+import static spotty.common.http.HttpStatus.NOT_MODIFIED
+import static spotty.common.http.HttpStatus.PARTIAL_CONTENT
+
+class MappedFileLoaderTest extends Specification {
+    def "should return content of file as buffer"() {
+        given:
+        var response = new SpottyResponse()
+        var loader = new MappedFileLoader(new FileTypeDetector(), 10, 1024 * 1024)
+
+        var file = getClass().getResource("/compressor/request.gzip")
+
+        when:
+        var content = loader.loadFile(file, response)
+
+        then:
+        content == null
+        response.body() == null
+        bytes(response.bodyBuffer()) == file.bytes
+        response.contentLength() == file.bytes.length
+        response.contentType() == "application/gzip"
+        response.headers().hasAndEqual(CACHE_CONTROL, "private, max-age=10")
+        response.headers().get(ETAG) ==~ /"[0-9a-f]{32}"/
+    }
+
+    def "should share cached buffer between responses"() {
+        given:
+        var detector = Mock(TypeDetector.class)
+        var loader = new MappedFileLoader(detector, 10, 1024 * 1024)
+        var file = getClass().getResource("/compressor/request.gzip")
+
+        detector.detect(file) >> "application/gzip"
+
+        var first = new SpottyResponse()
+        var second = new SpottyResponse()
+
+        when:
+        loader.loadFile(file, first)
+        first.bodyBuffer().position(first.bodyBuffer().limit())
+        loader.loadFile(file, second)
+
+        then:
+        1 * detector.detect(file)
+        bytes(second.bodyBuffer()) == file.bytes
+    }
+
+    def "should evict files when total size exceeds limit"() {
+        given:
+        var dir = Files.createTempDirectory("static")
+        var files = (1..4).collect {
+            var file = dir.resolve("file${it}.txt")
+            file.bytes = new byte[4096]
+            file.toFile().deleteOnExit()
+            file.toUri().toURL()
+        }
+        dir.toFile().deleteOnExit()
+
+        var loader = new MappedFileLoader({ "text/plain" } as TypeDetector, 10, 10_000)
+
+        when:
+        files.each { loader.loadFile(it, new SpottyResponse()) }
+
+        then:
+        loader.cachedBytes() > 0
+        loader.cachedBytes() <= 10_000
+    }
+
+    def "should serve sibling gz file when client accepts gzip"() {
+        given:
+        var dir = Files.createTempDirectory("static")
+        var file = dir.resolve("app.js")
+        var gzipFile = dir.resolve("app.js.gz")
+        file.text = "console.log('hello');"
+        gzipFile.bytes = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+        [file, gzipFile, dir].each { it.toFile().deleteOnExit() }
+
+        var loader = new MappedFileLoader({ "application/javascript" } as TypeDetector, CompressionPolicy.builder().build(), 10, 1024 * 1024)
+        var response = new SpottyResponse()
+
+        when:
+        loader.loadFile(file.toUri().toURL(), request("gzip, deflate"), response)
+
+        then:
+        bytes(response.bodyBuffer()) == gzipFile.bytes
+        response.isEncoded()
+        response.headers().get(CONTENT_ENCODING) == "gzip"
+        response.contentType() == "application/javascript"
+    }
+
+    def "should serve single range as slice of cached buffer"() {
+        given:
+        var text = "console.log('hello');\n" * 100
+        var file = Files.createTempFile("app", ".js")
+        file.toFile().deleteOnExit()
+        file.text = text
+
+        var loader = new MappedFileLoader({ "application/javascript" } as TypeDetector, 10, 1024 * 1024)
+
+        var request = request(null).method(GET)
+        request.headers().add(RANGE, "bytes=8-10")
+        var response = new SpottyResponse()
+
+        when:
+        var content = loader.loadFile(file.toUri().toURL(), request, response)
+
+        then:
+        content == null
+        response.status() == PARTIAL_CONTENT
+        response.headers().get(ACCEPT_RANGES) == "bytes"
+        response.headers().get(CONTENT_RANGE) == "bytes 8-10/${text.length()}"
+        response.contentLength() == 3
+        new String(bytes(response.bodyBuffer())) == "log"
+    }
+
+    def "should respond 304 when client has actual copy of the file"() {
+        given:
+        var loader = new MappedFileLoader(new FileTypeDetector(), 10, 1024 * 1024)
+        var file = getClass().getResource("/compressor/request.gzip")
+
+        var first = new SpottyResponse()
+        loader.loadFile(file, request(null), first)
+
+        var request = request(null)
+        request.headers().add(IF_NONE_MATCH, first.headers().get(ETAG))
+        var response = new SpottyResponse()
+
+        when:
+        loader.loadFile(file, request, response)
+
+        then:
+        response.status() == NOT_MODIFIED
+        !response.hasBody()
+        response.contentLength() == -1
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        var bytes = new byte[buffer.remaining()]
+        buffer.duplicate().get(bytes)
+        return bytes
+    }
+
+    private static SpottyDefaultRequest request(String acceptEncoding) {
+        var request = new SpottyDefaultRequest()
+        if (acceptEncoding != null) {
+            request.headers().add(ACCEPT_ENCODING, acceptEncoding)
+        }
+
+        return request
+    }
+
+}
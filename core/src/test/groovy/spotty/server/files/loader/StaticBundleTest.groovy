@@ -0,0 +1,113 @@
+package spotty.server.files.loader
+
+import spock.lang.Specification
+import spotty.common.exception.SpottyException
+import spotty.common.exception.SpottyNotFoundException
+import spotty.common.request.SpottyDefaultRequest
+import spotty.common.response.SpottyResponse
+import spotty.server.compress.CompressionPolicy
+import spotty.server.files.detector.FileTypeDetector
+import spotty.server.files.loader.impl.StaticBundle
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.util.zip.GZIPInputStream
+
+import static spotty.common.http.HttpHeaders.ACCEPT_ENCODING
+import static spotty.common.http.HttpHeaders.CONTENT_ENCODING
+import static spotty.common.http.HttpHeaders.ETAG
+import static spotty.common.http.HttpHeaders.IF_NONE_MATCH
+import static spotty.common.http.HttpStatus.NOT_MODIFIED
+
+class StaticBundleTest extends Specification {
+    def "should load all files of classpath directory"() {
+        given:
+        var file = getClass().getResource("/compressor/request.gzip")
+
+        when:
+        var bundle = StaticBundle.fromClasspath("/compressor", new FileTypeDetector(), CompressionPolicy.DISABLED)
+        var response = new SpottyResponse()
+        bundle.loadFile("/request.gzip", new SpottyDefaultRequest(), response)
+
+        then:
+        bundle.filesCount() == 2
+        bundle.contains("/request.gzip")
+        bundle.contains("/request.deflate")
+        response.contentType() == "application/gzip"
+        bytes(response.bodyBuffer()) == file.bytes
+    }
+
+    def "should load nested files of directory and precompress them"() {
+        given:
+        var text = "console.log('hello');\n" * 100
+        var dir = Files.createTempDirectory("static")
+        var js = Files.createDirectory(dir.resolve("js"))
+        var file = js.resolve("app.js")
+        file.text = text
+        [file, js, dir].each { it.toFile().deleteOnExit() }
+
+        var bundle = StaticBundle.fromDirectory(dir.toString(), new FileTypeDetector(), CompressionPolicy.builder().build())
+
+        when:
+        var plain = new SpottyResponse()
+        bundle.loadFile("/js/app.js", new SpottyDefaultRequest(), plain)
+
+        var request = new SpottyDefaultRequest()
+        request.headers().add(ACCEPT_ENCODING, "gzip")
+        var gzip = new SpottyResponse()
+        bundle.loadFile("/js/app.js", request, gzip)
+
+        then:
+        bundle.filesCount() == 1
+        plain.contentType() == "text/javascript"
+        new String(bytes(plain.bodyBuffer())) == text
+
+        gzip.headers().get(CONTENT_ENCODING) == "gzip"
+        new GZIPInputStream(new ByteArrayInputStream(bytes(gzip.bodyBuffer()))).text == text
+    }
+
+    def "should respond 304 when client has actual copy of the file"() {
+        given:
+        var bundle = StaticBundle.fromClasspath("/compressor", new FileTypeDetector(), CompressionPolicy.DISABLED)
+
+        var first = new SpottyResponse()
+        bundle.loadFile("/request.gzip", new SpottyDefaultRequest(), first)
+
+        var request = new SpottyDefaultRequest()
+        request.headers().add(IF_NONE_MATCH, first.headers().get(ETAG))
+        var response = new SpottyResponse()
+
+        when:
+        bundle.loadFile("/request.gzip", request, response)
+
+        then:
+        response.status() == NOT_MODIFIED
+        !response.hasBody()
+    }
+
+    def "should throw not found when file is not in bundle"() {
+        given:
+        var bundle = StaticBundle.fromClasspath("/compressor", new FileTypeDetector(), CompressionPolicy.DISABLED)
+
+        when:
+        bundle.loadFile("/request.txt", new SpottyDefaultRequest(), new SpottyResponse())
+
+        then:
+        thrown SpottyNotFoundException
+    }
+
+    def "should throw error when classpath directory does not exist"() {
+        when:
+        StaticBundle.fromClasspath("/not/existing", new FileTypeDetector(), CompressionPolicy.DISABLED)
+
+        then:
+        thrown SpottyException
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        var bytes = new byte[buffer.remaining()]
+        buffer.duplicate().get(bytes)
+        return bytes
+    }
+
+}
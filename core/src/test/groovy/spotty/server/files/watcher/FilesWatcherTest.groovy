@@ -0,0 +1,90 @@
+package spotty.server.files.watcher
+
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+import java.util.concurrent.CopyOnWriteArrayList
+
+class FilesWatcherTest extends Specification {
+    private final conditions = new PollingConditions(timeout: 15)
+
+    def "should notify about changed file"() {
+        given:
+        var dir = Files.createTempDirectory("static")
+        var file = dir.resolve("app.js")
+        file.text = "one"
+        [file, dir].each { it.toFile().deleteOnExit() }
+
+        var changed = new CopyOnWriteArrayList<URL>()
+        var watcher = new FilesWatcher({ changed.add(it) }, {})
+        watcher.register(dir)
+
+        when:
+        file.text = "two"
+
+        then:
+        conditions.eventually {
+            assert changed.contains(file.toFile().toURI().toURL())
+        }
+
+        cleanup:
+        watcher.close()
+    }
+
+    def "should watch created subdirectories"() {
+        given:
+        var dir = Files.createTempDirectory("static")
+        var subdir = dir.resolve("js")
+        var file = subdir.resolve("app.js")
+
+        var changed = new CopyOnWriteArrayList<URL>()
+        var watcher = new FilesWatcher({ changed.add(it) }, {})
+        watcher.register(dir)
+
+        when:
+        Files.createDirectory(subdir)
+        conditions.eventually {
+            assert changed.contains(subdir.toFile().toURI().toURL())
+        }
+
+        file.text = "console.log('hello');"
+        [file, subdir, dir].each { it.toFile().deleteOnExit() }
+
+        then:
+        conditions.eventually {
+            assert changed.contains(file.toFile().toURI().toURL())
+        }
+
+        cleanup:
+        watcher.close()
+    }
+
+    def "should keep watching when created directory is deleted right away"() {
+        given:
+        var dir = Files.createTempDirectory("static")
+        var file = dir.resolve("app.js")
+        file.text = "one"
+        [file, dir].each { it.toFile().deleteOnExit() }
+
+        var changed = new CopyOnWriteArrayList<URL>()
+        var watcher = new FilesWatcher({ changed.add(it) }, {})
+        watcher.register(dir)
+
+        when:
+        (1..20).each {
+            var tmp = Files.createDirectory(dir.resolve("tmp" + it))
+            Files.delete(tmp)
+        }
+        Thread.sleep(100)
+        file.text = "two"
+
+        then:
+        conditions.eventually {
+            assert changed.contains(file.toFile().toURI().toURL())
+        }
+
+        cleanup:
+        watcher.close()
+    }
+}
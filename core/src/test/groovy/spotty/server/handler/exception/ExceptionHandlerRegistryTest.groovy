@@ -2,6 +2,7 @@ package spotty.server.handler.exception
 
 import spock.lang.Specification
 import spotty.common.exception.SpottyException
+import spotty.common.exception.SpottyValidationException
 import spotty.server.registry.exception.ExceptionHandlerRegistry
 
 import java.nio.file.AccessDeniedException
@@ -41,8 +42,70 @@ class ExceptionHandlerRegistryTest extends Specification {
 
         then:
         found == illegalArgumentExceptionHandler
-        registry.handlers.size() == 3
-        registry.handlers.containsKey(IllegalFormatFlagsException.class)
+        registry.handlers.size() == 2
+        !registry.handlers.containsKey(IllegalFormatFlagsException.class)
+    }
+
+    def "should cache resolved handler and reset cache on registration"() {
+        given:
+        var ExceptionHandler illegalArgumentExceptionHandler = Mock(ExceptionHandler.class)
+        var ExceptionHandler illegalFormatExceptionHandler = Mock(ExceptionHandler.class)
+
+        registry.register(IllegalArgumentException.class, illegalArgumentExceptionHandler)
+
+        when:
+        var first = registry.getHandler(IllegalFormatFlagsException.class)
+        var second = registry.getHandler(IllegalFormatFlagsException.class)
+
+        registry.register(IllegalFormatException.class, illegalFormatExceptionHandler)
+        var afterRegistration = registry.getHandler(IllegalFormatFlagsException.class)
+
+        then:
+        first == illegalArgumentExceptionHandler
+        second == illegalArgumentExceptionHandler
+        afterRegistration == illegalFormatExceptionHandler
+    }
+
+    def "should find handler by exception interface"() {
+        given:
+        var ExceptionHandler markedHandler = Mock(ExceptionHandler.class)
+        var ExceptionHandler runtimeExceptionHandler = Mock(ExceptionHandler.class)
+
+        registry.register(RuntimeException.class, runtimeExceptionHandler)
+        registry.registerInterface(Marked.class, markedHandler)
+
+        when:
+        var foundMarked = registry.getHandler(MarkedException.class)
+        var foundChildMarked = registry.getHandler(ChildMarkedException.class)
+        var foundRuntime = registry.getHandler(IllegalStateException.class)
+
+        then:
+        foundMarked == markedHandler
+        foundChildMarked == markedHandler
+        foundRuntime == runtimeExceptionHandler
+    }
+
+    def "should prefer exception class handler over interface handler"() {
+        given:
+        var ExceptionHandler markedHandler = Mock(ExceptionHandler.class)
+        var ExceptionHandler markedExceptionHandler = Mock(ExceptionHandler.class)
+
+        registry.registerInterface(Marked.class, markedHandler)
+        registry.register(MarkedException.class, markedExceptionHandler)
+
+        when:
+        var found = registry.getHandler(ChildMarkedException.class)
+
+        then:
+        found == markedExceptionHandler
+    }
+
+    def "should not register class as interface"() {
+        when:
+        registry.registerInterface(RuntimeException.class, Mock(ExceptionHandler.class))
+
+        then:
+        thrown SpottyValidationException
     }
 
     def "should return error when exception or parent didn't registered"() {
@@ -62,4 +125,10 @@ class ExceptionHandlerRegistryTest extends Specification {
         !registry.handlers.containsKey(AccessDeniedException.class)
     }
 
+    private static interface Marked {}
+
+    private static class MarkedException extends RuntimeException implements Marked {}
+
+    private static class ChildMarkedException extends MarkedException {}
+
 }
@@ -5,15 +5,23 @@ import spotty.common.filter.Filter
 import spotty.common.request.SpottyDefaultRequest
 import spotty.common.request.WebRequestTestData
 import spotty.common.response.SpottyResponse
+import spotty.server.compress.CompressionPolicy
 import spotty.server.compress.Compressor
 import spotty.server.router.SpottyRouter
 import spotty.common.router.route.Route
 import spotty.server.session.SessionManager
 
+import java.util.zip.GZIPInputStream
+
 import static java.util.concurrent.TimeUnit.SECONDS
+import static spotty.common.http.ContentEncoding.GZIP
+import static spotty.common.http.HttpHeaders.ACCEPT_ENCODING
 import static spotty.common.http.HttpHeaders.CONTENT_ENCODING
 import static spotty.common.http.HttpHeaders.SPOTTY_SESSION_ID
+import static spotty.common.http.HttpHeaders.VARY
 import static spotty.common.http.HttpMethod.GET
+import static spotty.common.http.HttpMethod.HEAD
+import static spotty.common.http.HttpStatus.PARTIAL_CONTENT
 
 class DefaultRequestHandlerTest extends Specification implements WebRequestTestData {
 
@@ -102,6 +110,129 @@ class DefaultRequestHandlerTest extends Specification implements WebRequestTestD
         null == response.body()
     }
 
+    def "should not compress body that is encoded already"() {
+        given:
+        var gzip = getClass().getResourceAsStream("/compressor/request.gzip").getBytes()
+        router.get("/", { req, res ->
+            res.encoded(GZIP)
+            return gzip
+        })
+
+        var response = new SpottyResponse()
+        var request = new SpottyDefaultRequest().method(method).path("/")
+
+        when:
+        requestHandler.handle(request, response)
+
+        then:
+        response.headers().get(CONTENT_ENCODING) == "gzip"
+        response.body() == body(gzip)
+        response.contentLength() == gzip.length
+
+        where:
+        method | body
+        GET    | { gzip -> gzip }
+        HEAD   | { gzip -> null }
+    }
+
+    def "should respond to HEAD request with content length and without body"() {
+        given:
+        router.get("/", { req, res -> "hello" })
+
+        var response = new SpottyResponse()
+        var request = new SpottyDefaultRequest().method(HEAD).path("/")
+
+        when:
+        requestHandler.handle(request, response)
+
+        then:
+        null == response.body()
+        5 == response.contentLength()
+    }
+
+    def "should not compress HEAD response and not send content length"() {
+        given:
+        router.get("/", { req, res ->
+            res.headers().add(CONTENT_ENCODING, "gzip")
+            return requestBody
+        })
+
+        var response = new SpottyResponse()
+        var request = new SpottyDefaultRequest().method(HEAD).path("/")
+
+        when:
+        requestHandler.handle(request, response)
+
+        then:
+        null == response.body()
+        -1 == response.contentLength()
+    }
+
+    def "should compress response by Accept-Encoding when compression policy enabled"() {
+        given:
+        var policy = CompressionPolicy.builder().minSize(100).build()
+        var requestHandler = new DefaultRequestHandler(router, new Compressor(), policy, sessionManager)
+        router.get("/", { req, res -> requestBody })
+
+        var response = new SpottyResponse()
+        var request = new SpottyDefaultRequest().method(GET).path("/")
+        request.headers().add(ACCEPT_ENCODING, "deflate;q=0.5, gzip")
+
+        when:
+        requestHandler.handle(request, response)
+
+        then:
+        response.headers().get(CONTENT_ENCODING) == "gzip"
+        response.headers().get(VARY) == ACCEPT_ENCODING
+        new GZIPInputStream(new ByteArrayInputStream(response.body())).text == requestBody
+    }
+
+    def "should not compress response when it is small or client does not accept compression"() {
+        given:
+        var policy = CompressionPolicy.builder().minSize(100).build()
+        var requestHandler = new DefaultRequestHandler(router, new Compressor(), policy, sessionManager)
+        router.get("/", { req, res -> acceptEncoding == null ? requestBody : "hello" })
+
+        var response = new SpottyResponse()
+        var request = new SpottyDefaultRequest().method(GET).path("/")
+        if (acceptEncoding != null) {
+            request.headers().add(ACCEPT_ENCODING, acceptEncoding)
+        }
+
+        when:
+        requestHandler.handle(request, response)
+
+        then:
+        response.headers().hasNot(CONTENT_ENCODING)
+        response.headers().get(VARY) == vary
+
+        where:
+        acceptEncoding | vary
+        "gzip"         | null
+        null           | ACCEPT_ENCODING
+    }
+
+    def "should not compress partial content"() {
+        given:
+        var policy = CompressionPolicy.builder().minSize(1).build()
+        var requestHandler = new DefaultRequestHandler(router, new Compressor(), policy, sessionManager)
+        router.get("/", { req, res ->
+            res.status(PARTIAL_CONTENT)
+            return requestBody
+        })
+
+        var response = new SpottyResponse()
+        var request = new SpottyDefaultRequest().method(GET).path("/")
+        request.headers().add(ACCEPT_ENCODING, "gzip")
+
+        when:
+        requestHandler.handle(request, response)
+
+        then:
+        response.headers().hasNot(CONTENT_ENCODING)
+        response.bodyAsString() == requestBody
+    }
+
     def "should register session when enabled"() {
         given:
         sessionManager.enableSession()
@@ -2,10 +2,13 @@ package spotty.server.router
 
 import spock.lang.Specification
 import spotty.common.exception.SpottyHttpException
+import spotty.common.exception.SpottyMethodNotAllowedException
 import spotty.common.exception.SpottyRouteDuplicationException
+import spotty.common.response.SpottyResponse
 import spotty.common.router.route.Route
 
 import static org.apache.http.entity.ContentType.APPLICATION_JSON
+import static spotty.common.http.HttpHeaders.ALLOW
 import static spotty.common.http.HttpMethod.CONNECT
 import static spotty.common.http.HttpMethod.DELETE
 import static spotty.common.http.HttpMethod.GET
@@ -15,6 +18,7 @@ import static spotty.common.http.HttpMethod.PATCH
 import static spotty.common.http.HttpMethod.POST
 import static spotty.common.http.HttpMethod.PUT
 import static spotty.common.http.HttpMethod.TRACE
+import static spotty.common.http.HttpStatus.METHOD_NOT_ALLOWED
 import static spotty.common.http.HttpStatus.NOT_FOUND
 
 class RoutableTest extends Specification {
@@ -113,6 +117,57 @@ class RoutableTest extends Specification {
         null               | _
     }
 
+    def "should negotiate route by accept header media ranges"() {
+        given:
+        var Route any = {}
+        var Route html = {}
+        var Route json = {}
+
+        routable.addRoute("/hello", GET, any)
+        routable.addRoute("/hello", GET, "text/html", html)
+        routable.addRoute("/hello", GET, "application/json", json)
+
+        when:
+        var found = routable.getRoute("/hello", GET, acceptHeader)
+
+        then:
+        found.acceptType() == expectedAcceptType
+
+        where:
+        acceptHeader                                        | expectedAcceptType
+        "text/html,application/xhtml+xml;q=0.9,*/*;q=0.8"   | "text/html"
+        "application/json;q=0.5, text/html;q=0.4"           | "application/json"
+        "text/*;q=0.2, application/json;q=0.1"              | "text/html"
+        "application/*"                                     | "application/json"
+        "*/*"                                               | "*/*"
+        "image/png"                                         | "*/*"
+        "text/html;q=0, */*"                                | "*/*"
+    }
+
+    def "should negotiate route by wildcard when there is no route for any accept type"() {
+        given:
+        var Route json = {}
+        routable.addRoute("/hello", GET, "application/json", json)
+
+        when:
+        var found = routable.getRoute("/hello", GET, "text/html,*/*;q=0.8")
+
+        then:
+        json == found.route()
+    }
+
+    def "should throw an exception when accept header excludes registered accept type"() {
+        given:
+        routable.addRoute("/hello", GET, "application/json", {})
+
+        when:
+        routable.getRoute("/hello", GET, "*/*, application/json;q=0")
+
+        then:
+        var e = thrown SpottyHttpException
+        e.status == NOT_FOUND
+    }
+
     def "should find most suitable route"() {
         given:
         var Route route1 = {}
@@ -150,7 +205,7 @@ class RoutableTest extends Specification {
         "/product/:id/name/:category" | "/product/*/name/*"
     }
 
-    def "should throw an exception when route not found by http method"() {
+    def "should throw an exception when http method is not allowed"() {
         given:
         routable.addRoute("/hello", GET, {})
         routable.addRoute("/hello", POST, {})
@@ -158,11 +213,66 @@ class RoutableTest extends Specification {
         when:
         routable.getRoute("/hello", DELETE)
 
+        then:
+        var e = thrown SpottyMethodNotAllowedException
+        e.status == METHOD_NOT_ALLOWED
+        e.allow == "GET, POST, HEAD, OPTIONS"
+    }
+
+    def "should throw an exception when route not found by path"() {
+        given:
+        routable.addRoute("/hello", GET, {})
+
+        when:
+        routable.getRoute("/bye", GET)
+
         then:
         var e = thrown SpottyHttpException
         e.status == NOT_FOUND
     }
 
+    def "should find GET route for HEAD request"() {
+        given:
+        var Route get = {}
+        routable.addRoute("/hello/:name", GET, get)
+
+        when:
+        var found = routable.getRoute("/hello/alex", HEAD)
+
+        then:
+        get == found.route()
+    }
+
+    def "should prefer registered HEAD route over GET route"() {
+        given:
+        var Route get = {}
+        var Route head = {}
+        routable.addRoute("/hello", GET, get)
+        routable.addRoute("/hello", HEAD, head)
+
+        when:
+        var found = routable.getRoute("/hello", HEAD)
+
+        then:
+        head == found.route()
+    }
+
+    def "should answer OPTIONS request with allowed methods"() {
+        given:
+        routable.addRoute("/hello/:name", GET, {})
+        routable.addRoute("/hello/:name", PUT, {})
+        var response = new SpottyResponse()
+
+        when:
+        var found = routable.getRoute("/hello/alex", OPTIONS)
+        found.route().handle(null, response)
+
+        then:
+        found.httpMethod() == OPTIONS
+        response.headers().get(ALLOW) == "GET, PUT, HEAD, OPTIONS"
+        response.body() == null
+    }
+
     def "should throw an exception when route not found by accept type"() {
         given:
         var Route get = {}
@@ -231,7 +341,7 @@ class RoutableTest extends Specification {
         isRemoved
         post == routeFound.route()
         var e = thrown SpottyHttpException
-        e.status == NOT_FOUND
+        e.status == METHOD_NOT_ALLOWED
     }
 
     def "should remove by acceptType correctly"() {
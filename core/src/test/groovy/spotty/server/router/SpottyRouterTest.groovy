@@ -176,6 +176,26 @@ class SpottyRouterTest extends Specification {
         route2.afterFilters() == [after] as Set
     }
 
+    def "should register filters of the path for OPTIONS route answered automatically" () {
+        given:
+        var Filter before = {}
+        var Filter after = {}
+        var Filter otherPath = {}
+
+        router.before("/hello/*", before)
+        router.get("/hello/world", {req, res -> ""})
+        router.after("/hello/*", after)
+        router.before("/bye/*", otherPath)
+
+        when:
+        var options = router.getRoute("/hello/world", OPTIONS)
+
+        then:
+        options.httpMethod() == OPTIONS
+        options.beforeFilters() == [before] as Set
+        options.afterFilters() == [after] as Set
+    }
+
     def "should register before filters with pathTemplate correctly" () {
         given:
         var Filter beforeAll = {}
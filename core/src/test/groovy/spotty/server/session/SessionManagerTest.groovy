@@ -6,6 +6,12 @@ import spotty.common.cookie.Cookie
 import spotty.common.exception.SpottyValidationException
 import spotty.common.request.SpottyDefaultRequest
 import spotty.common.response.SpottyResponse
+import spotty.common.session.Session
+import spotty.server.session.cookie.SessionCookieCodec
+import spotty.server.session.store.replication.LoopbackTransport
+
+import java.nio.file.Files
+import java.time.Instant
 
 import static java.util.concurrent.TimeUnit.SECONDS
 import static org.awaitility.Awaitility.await
@@ -22,6 +28,7 @@ class SessionManagerTest extends Specification {
 
         when:
         manager.register(request, response)
+        request.session().put("name", "spotty")
 
         then:
         request.session() != null
@@ -81,6 +88,7 @@ class SessionManagerTest extends Specification {
 
         when:
         manager.register(request, response)
+        request.session().put("name", "spotty")
 
         then:
         request.session() != null
@@ -93,7 +101,270 @@ class SessionManagerTest extends Specification {
         )
 
         then:
-        await().until(() -> !manager.sessions.containsKey(request.session().id))
-        manager.sessions.isEmpty()
+        await().until(() -> manager.sessions.get(request.session().id) == null)
+        manager.sessions.size() == 0
+    }
+
+    def "should not store session and send cookie until session is changed"() {
+        given:
+        var manager = SessionManager.builder().build()
+        manager.enableSession()
+
+        var request = new SpottyDefaultRequest()
+        var response = new SpottyResponse()
+
+        when:
+        manager.register(request, response)
+        var loaded = request.isSessionLoaded()
+        var session = request.session()
+        session.get("name")
+        manager.save(request, response)
+
+        then:
+        !loaded
+        session.isTransient()
+        response.cookies().isEmpty()
+        manager.sessions.size() == 0
+    }
+
+    def "should not restore unknown session id"() {
+        given:
+        var manager = SessionManager.builder().build()
+        manager.enableSession()
+
+        var unknownId = UUID.randomUUID()
+        var request = new SpottyDefaultRequest()
+        request.cookies([(SPOTTY_SESSION_ID): unknownId.toString()])
+        var response = new SpottyResponse()
+
+        when:
+        manager.register(request, response)
+        request.session().put("name", "spotty")
+
+        then:
+        request.session().id != unknownId
+        manager.sessions.get(unknownId) == null
+        manager.sessions.get(request.session().id) != null
+        response.cookies()*.value() == [request.session().id.toString()]
+    }
+
+    def "should restore stored session"() {
+        given:
+        var manager = SessionManager.builder().build()
+        manager.enableSession()
+
+        var first = new SpottyDefaultRequest()
+        manager.register(first, new SpottyResponse())
+        first.session().put("name", "spotty")
+
+        var request = new SpottyDefaultRequest()
+        request.cookies([(SPOTTY_SESSION_ID): first.session().id.toString()])
+        var response = new SpottyResponse()
+
+        when:
+        manager.register(request, response)
+
+        then:
+        request.session().get("name") == "spotty"
+        response.cookies().isEmpty()
+    }
+
+    def "should extend session expiration on use when sliding ttl enabled"() {
+        given:
+        var manager = SessionManager.builder()
+            .defaultSessionTtl(100)
+            .slidingSessionTtl(true)
+            .build()
+        manager.enableSession()
+
+        var first = new SpottyDefaultRequest()
+        manager.register(first, new SpottyResponse())
+        first.session().put("name", "spotty")
+        first.session().expires(Instant.now().plusSeconds(10))
+
+        var request = new SpottyDefaultRequest()
+        request.cookies([(SPOTTY_SESSION_ID): first.session().id.toString()])
+
+        when:
+        manager.register(request, new SpottyResponse())
+
+        then:
+        request.session().expires().isAfter(Instant.now().plusSeconds(90))
+    }
+
+    def "should restore sessions from snapshot after restart"() {
+        given:
+        var file = Files.createTempDirectory("sessions").resolve("sessions.snapshot").toString()
+        var manager = SessionManager.builder().sessionSnapshot(file, 60).build()
+        manager.enableSession()
+
+        var first = new SpottyDefaultRequest()
+        manager.register(first, new SpottyResponse())
+        first.session().put("name", "spotty")
+        manager.save(first, new SpottyResponse())
+        manager.close()
+
+        var restarted = SessionManager.builder().sessionSnapshot(file, 60).build()
+        restarted.enableSession()
+
+        var request = new SpottyDefaultRequest()
+        request.cookies([(SPOTTY_SESSION_ID): first.session().id.toString()])
+
+        when:
+        restarted.register(request, new SpottyResponse())
+
+        then:
+        request.session().get("name") == "spotty"
+
+        cleanup:
+        restarted.close()
+    }
+
+    def "should keep session in cookie in cookie sessions mode"() {
+        given:
+        var manager = SessionManager.builder()
+            .cookieSessions(new SessionCookieCodec(new byte[32], true))
+            .build()
+        manager.enableSession()
+
+        var first = new SpottyDefaultRequest()
+        var firstResponse = new SpottyResponse()
+        manager.register(first, firstResponse)
+        first.session().put("name", "spotty")
+        manager.save(first, firstResponse)
+
+        var request = new SpottyDefaultRequest()
+        request.cookies([(SPOTTY_SESSION_ID): firstResponse.cookies()[0].value()])
+        var response = new SpottyResponse()
+
+        when:
+        manager.register(request, response)
+        var name = request.session().get("name")
+        manager.save(request, response)
+
+        then:
+        name == "spotty"
+        request.session().id == first.session().id
+        response.cookies().isEmpty()
+        manager.sessions.size() == 0
+    }
+
+    def "should give new session for forged cookie in cookie sessions mode"() {
+        given:
+        var manager = SessionManager.builder()
+            .cookieSessions(new SessionCookieCodec(new byte[32], false))
+            .build()
+        manager.enableSession()
+
+        var otherSecret = new byte[32]
+        otherSecret[0] = 1
+        var forged = new SessionCookieCodec(otherSecret, false)
+            .encode(new Session().ttl(100).put("admin", true))
+
+        var request = new SpottyDefaultRequest()
+        request.cookies([(SPOTTY_SESSION_ID): forged])
+
+        when:
+        manager.register(request, new SpottyResponse())
+
+        then:
+        request.session().hasNot("admin")
+    }
+
+    def "should not replicate session that has been only read"() {
+        given:
+        var group = LoopbackTransport.group()
+        var messages = []
+        group.join().receive { messages.add(it) }
+
+        var manager = SessionManager.builder().sessionReplication(group.join()).build()
+        manager.enableSession()
+
+        var first = new SpottyDefaultRequest()
+        manager.register(first, new SpottyResponse())
+        first.session().put("name", "spotty")
+        manager.save(first, new SpottyResponse())
+        await().atMost(5, SECONDS).until(() -> messages.size() == 1)
+
+        var request = new SpottyDefaultRequest()
+        request.cookies([(SPOTTY_SESSION_ID): first.session().id.toString()])
+
+        when:
+        manager.register(request, new SpottyResponse())
+        var name = request.session().get("name")
+        manager.save(request, new SpottyResponse())
+        Thread.sleep(300)
+
+        then:
+        name == "spotty"
+        messages.size() == 1
+
+        cleanup:
+        manager.close()
+    }
+
+    def "should not replicate sessions restored from snapshot"() {
+        given:
+        var file = Files.createTempDirectory("sessions").resolve("sessions.snapshot").toString()
+        var manager = SessionManager.builder().sessionSnapshot(file, 60).build()
+        manager.enableSession()
+
+        var first = new SpottyDefaultRequest()
+        manager.register(first, new SpottyResponse())
+        first.session().put("name", "spotty")
+        manager.save(first, new SpottyResponse())
+        manager.close()
+
+        var group = LoopbackTransport.group()
+        var messages = []
+        group.join().receive { messages.add(it) }
+
+        var restarted = SessionManager.builder()
+            .sessionSnapshot(file, 60)
+            .sessionReplication(group.join())
+            .build()
+
+        when:
+        restarted.enableSession()
+        Thread.sleep(300)
+
+        then:
+        restarted.sessions.get(first.session().id).get("name") == "spotty"
+        messages.isEmpty()
+
+        cleanup:
+        restarted.close()
+    }
+
+    def "should write cookie when value has been changed in place and put back in cookie sessions mode"() {
+        given:
+        var manager = SessionManager.builder()
+            .cookieSessions(new SessionCookieCodec(new byte[32], true))
+            .build()
+        manager.enableSession()
+
+        var first = new SpottyDefaultRequest()
+        var firstResponse = new SpottyResponse()
+        manager.register(first, firstResponse)
+        first.session().put("cart", ["apple"])
+        manager.save(first, firstResponse)
+
+        var request = new SpottyDefaultRequest()
+        request.cookies([(SPOTTY_SESSION_ID): firstResponse.cookies()[0].value()])
+        var response = new SpottyResponse()
+
+        when:
+        manager.register(request, response)
+        List<String> cart = request.session().get("cart")
+        cart.add("orange")
+        request.session().put("cart", cart)
+        manager.save(request, response)
+
+        var next = new SpottyDefaultRequest()
+        next.cookies([(SPOTTY_SESSION_ID): response.cookies()[0].value()])
+        manager.register(next, new SpottyResponse())
+
+        then:
+        next.session().get("cart") == ["apple", "orange"]
     }
 }
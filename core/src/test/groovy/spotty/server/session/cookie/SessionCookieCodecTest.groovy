@@ -0,0 +1,93 @@
+package spotty.server.session.cookie
+
+import spock.lang.Specification
+import spotty.common.exception.SpottySessionException
+import spotty.common.exception.SpottyValidationException
+import spotty.common.session.Session
+
+class SessionCookieCodecTest extends Specification {
+    private def secret = (1..32).collect { it as byte } as byte[]
+
+    def "should encode and decode session"() {
+        given:
+        var codec = new SessionCookieCodec(secret, encrypt)
+        var session = new Session().ttl(100)
+            .put("name", "spotty")
+            .put("visits", 10)
+
+        when:
+        var value = codec.encode(session)
+        var decoded = codec.decode(value)
+
+        then:
+        value ==~ /[A-Za-z0-9_-]+/
+        decoded.id == session.id
+        decoded.get("name") == "spotty"
+        decoded.get("visits") == 10
+        decoded.expires().toEpochMilli() == session.expires().toEpochMilli()
+
+        where:
+        encrypt << [false, true]
+    }
+
+    def "should hide session data when encrypted"() {
+        given:
+        var codec = new SessionCookieCodec(secret, true)
+
+        when:
+        var value = codec.encode(new Session().put("name", "spotty"))
+        var bytes = new String(Base64.getUrlDecoder().decode(value), "ISO-8859-1")
+
+        then:
+        !bytes.contains("spotty")
+    }
+
+    def "should reject forged or broken cookie"() {
+        given:
+        var codec = new SessionCookieCodec(secret, encrypt)
+        var value = codec.encode(new Session().put("admin", false))
+
+        var bytes = Base64.getUrlDecoder().decode(value)
+        bytes[bytes.length - 1] = (byte) (bytes[bytes.length - 1] ^ 1)
+        var forged = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes)
+
+        var otherSecret = secret.clone()
+        otherSecret[0] = 100
+
+        expect:
+        codec.decode(forged) == null
+        codec.decode("broken!") == null
+        codec.decode("") == null
+        new SessionCookieCodec(otherSecret, encrypt).decode(value) == null
+
+        where:
+        encrypt << [false, true]
+    }
+
+    def "should not decode signed cookie in encrypted mode"() {
+        given:
+        var signed = new SessionCookieCodec(secret, false).encode(new Session())
+
+        expect:
+        new SessionCookieCodec(secret, true).decode(signed) == null
+    }
+
+    def "should fail when session exceeds cookie size limit"() {
+        given:
+        var codec = new SessionCookieCodec(secret, false, 100)
+
+        when:
+        codec.encode(new Session().put("data", new byte[200]))
+
+        then:
+        thrown SpottySessionException
+    }
+
+    def "should validate secret length"() {
+        when:
+        new SessionCookieCodec(new byte[16], false)
+
+        then:
+        thrown SpottyValidationException
+    }
+}
@@ -0,0 +1,181 @@
+package spotty.server.session.snapshot
+
+import spock.lang.Specification
+import spotty.common.session.Session
+import spotty.server.session.store.impl.InMemorySessionStore
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
+import java.time.Instant
+import java.util.zip.CRC32
+
+class SessionSnapshotTest extends Specification {
+    private def dir = Files.createTempDirectory("sessions")
+
+    def "should restore appended sessions"() {
+        given:
+        var file = dir.resolve("sessions.snapshot")
+        var sessions = (1..100).collect { new Session().ttl(100).put("name", "name" + it) }
+
+        var snapshot = new SessionSnapshot(file)
+        snapshot.append(sessions)
+        snapshot.close()
+
+        when:
+        var store = new InMemorySessionStore()
+        var restored = new SessionSnapshot(file).restore(store, Instant.now())
+
+        then:
+        restored == 100
+        sessions.every { store.get(it.id).get("name") == it.get("name") }
+    }
+
+    def "should restore the latest record of session and skip expired"() {
+        given:
+        var file = dir.resolve("sessions.snapshot")
+        var session = new Session().ttl(100).put("counter", 1)
+        var expired = new Session().ttl(100)
+
+        var snapshot = new SessionSnapshot(file)
+        snapshot.append([session, expired])
+        session.put("counter", 2)
+        expired.expires(Instant.now().minusSeconds(1))
+        snapshot.append([session, expired])
+        snapshot.close()
+
+        when:
+        var store = new InMemorySessionStore()
+        new SessionSnapshot(file).restore(store, Instant.now())
+
+        then:
+        store.size() == 1
+        store.get(session.id).get("counter") == 2
+        store.get(expired.id) == null
+    }
+
+    def "should ignore broken tail of snapshot"() {
+        given:
+        var file = dir.resolve("sessions.snapshot")
+        var sessions = (1..10).collect { new Session().ttl(100) }
+
+        var snapshot = new SessionSnapshot(file)
+        snapshot.append(sessions)
+        snapshot.close()
+
+        Files.write(file, [0, 0, 0, 100, 1, 2, 3] as byte[], StandardOpenOption.APPEND)
+
+        when:
+        var store = new InMemorySessionStore()
+        var restored = new SessionSnapshot(file).restore(store, Instant.now())
+
+        then:
+        restored == 10
+        sessions.every { store.get(it.id) != null }
+    }
+
+    def "should compact snapshot to actual sessions"() {
+        given:
+        var file = dir.resolve("sessions.snapshot")
+        var session = new Session().ttl(100)
+        var snapshot = new SessionSnapshot(file)
+        (1..3000).each { snapshot.append([session.put("counter", it)]) }
+
+        var store = new InMemorySessionStore()
+        store.put(session)
+
+        when:
+        var required = snapshot.isCompactionRequired(store.size())
+        var sizeBefore = Files.size(file)
+        snapshot.compact(store)
+        snapshot.close()
+
+        var restoredStore = new InMemorySessionStore()
+        new SessionSnapshot(file).restore(restoredStore, Instant.now())
+
+        then:
+        required
+        Files.size(file) < sizeBefore
+        restoredStore.get(session.id).get("counter") == 3000
+    }
+
+    def "should skip records that could not be decoded"() {
+        given:
+        var file = dir.resolve("sessions.snapshot")
+        var session = new Session().ttl(100)
+        var next = new Session().ttl(100)
+
+        var snapshot = new SessionSnapshot(file)
+        snapshot.append([session])
+        snapshot.close()
+
+        var payload = [9, 1, 2] as byte[]
+        var crc = new CRC32()
+        crc.update(payload)
+        var record = ByteBuffer.allocate(8 + payload.length).putInt(payload.length).putInt((int) crc.getValue()).put(payload)
+        Files.write(file, record.array(), StandardOpenOption.APPEND)
+
+        snapshot = new SessionSnapshot(file)
+        snapshot.append([next])
+        snapshot.close()
+
+        when:
+        var store = new InMemorySessionStore()
+        var restored = new SessionSnapshot(file).restore(store, Instant.now())
+
+        then:
+        restored == 2
+        store.get(session.id) != null
+        store.get(next.id) != null
+    }
+
+    def "should move aside snapshot with unsupported format and start empty"() {
+        given:
+        var file = dir.resolve("sessions.snapshot")
+        Files.write(file, [1, 2, 3, 4, 5, 6, 7, 8] as byte[])
+
+        when:
+        var store = new InMemorySessionStore()
+        var snapshot = new SessionSnapshot(file)
+        var restored = snapshot.restore(store, Instant.now())
+
+        var session = new Session().ttl(100)
+        snapshot.append([session])
+        snapshot.close()
+
+        var restoredAgain = new SessionSnapshot(file).restore(new InMemorySessionStore(), Instant.now())
+
+        then:
+        restored == 0
+        restoredAgain == 1
+        Files.list(dir).anyMatch { it.fileName.toString().startsWith("sessions.snapshot.broken-") }
+    }
+
+    def "should reopen file after append has been interrupted"() {
+        given:
+        var file = dir.resolve("sessions.snapshot")
+        var first = new Session().ttl(100)
+        var second = new Session().ttl(100)
+
+        var snapshot = new SessionSnapshot(file)
+        snapshot.append([first])
+
+        Thread.currentThread().interrupt()
+        try {
+            snapshot.append([second])
+        } catch (IOException ignored) {
+        }
+        Thread.interrupted()
+
+        when:
+        snapshot.append([second])
+        snapshot.close()
+
+        var store = new InMemorySessionStore()
+        new SessionSnapshot(file).restore(store, Instant.now())
+
+        then:
+        store.get(first.id) != null
+        store.get(second.id) != null
+    }
+}
@@ -0,0 +1,149 @@
+package spotty.server.session.store
+
+import spock.lang.Specification
+import spotty.common.session.Session
+import spotty.server.session.store.impl.CompactSessionStore
+
+import java.time.Instant
+
+class CompactSessionStoreTest extends Specification {
+    private def store = new CompactSessionStore(10, 1 << 24)
+
+    def cleanup() {
+        store.close()
+    }
+
+    def "should restore sessions evicted from hot set"() {
+        given:
+        var sessions = (1..100).collect { new Session().ttl(100).put("user", "user$it") }
+
+        when:
+        sessions.each { store.put(it) }
+
+        then:
+        store.size() == 100
+        store.hotSetSize() <= 10
+        store.offHeapBytes() > 0
+        sessions.every { store.get(it.id).get("user") == it.get("user") }
+    }
+
+    def "should keep changes of session that was spilled while in use"() {
+        given:
+        var session = new Session().ttl(100)
+        store.put(session)
+
+        (1..100).each { store.put(new Session().ttl(100)) }
+
+        when:
+        session.put("user", "john")
+        store.put(session)
+
+        then:
+        store.get(session.id).get("user") == "john"
+        store.size() == 101
+    }
+
+    def "should touch session expiration"() {
+        given:
+        var sessions = (1..20).collect { new Session().ttl(1) }
+        sessions.each { store.put(it) }
+
+        var expires = Instant.now().plusSeconds(100)
+
+        when:
+        sessions.each { store.touch(it.id, expires) }
+        var removed = store.removeExpired(Instant.now().plusSeconds(10))
+
+        then:
+        removed == 0
+        store.size() == 20
+    }
+
+    def "should remove expired sessions both on heap and off-heap"() {
+        given:
+        var expired = (1..50).collect { new Session().ttl(1) }
+        var actual = (1..50).collect { new Session().ttl(100) }
+        (expired + actual).each { store.put(it) }
+
+        when:
+        var removed = store.removeExpired(Instant.now().plusSeconds(10))
+
+        then:
+        removed == 50
+        store.size() == 50
+        expired.every { store.get(it.id) == null }
+        actual.every { store.get(it.id) != null }
+    }
+
+    def "should remove session"() {
+        given:
+        var sessions = (1..20).collect { new Session().ttl(100) }
+        sessions.each { store.put(it) }
+
+        when:
+        sessions.each { store.remove(it.id) }
+
+        then:
+        store.size() == 0
+        store.offHeapBytes() == 0
+    }
+
+    def "should iterate over all sessions"() {
+        given:
+        var sessions = (1..30).collect { new Session().ttl(100) }
+        sessions.each { store.put(it) }
+
+        var ids = [] as Set
+
+        when:
+        store.forEach { ids.add(it.id) }
+
+        then:
+        ids == sessions.collect { it.id } as Set
+    }
+
+    def "should keep on heap sessions that could not be serialized"() {
+        given:
+        var sessions = (1..30).collect { new Session().ttl(100).put("value", new Object()) }
+
+        when:
+        sessions.each { store.put(it) }
+
+        then:
+        store.size() == 30
+        store.offHeapBytes() == 0
+        sessions.every { store.get(it.id).is(it) }
+    }
+
+    def "should keep on heap sessions when off-heap memory is full"() {
+        given:
+        var smallStore = new CompactSessionStore(1, 64)
+        var sessions = (1..10).collect { new Session().ttl(100).put("user", "user$it") }
+
+        when:
+        sessions.each { smallStore.put(it) }
+
+        then:
+        smallStore.size() == 10
+        sessions.every { smallStore.get(it.id).get("user") == it.get("user") }
+
+        cleanup:
+        smallStore.close()
+    }
+
+    def "should keep hot session when it is put again"() {
+        given:
+        var session = new Session().ttl(100)
+        store.put(session)
+
+        when:
+        session.put("user", "john")
+        store.put(session)
+
+        then:
+        store.size() == 1
+        store.hotSetSize() == 1
+        store.offHeapBytes() == 0
+        store.get(session.id).is(session)
+    }
+}
@@ -0,0 +1,58 @@
+package spotty.server.session.store
+
+import spock.lang.Specification
+import spotty.common.session.Session
+import spotty.server.session.store.impl.InMemorySessionStore
+
+import java.time.Instant
+
+class InMemorySessionStoreTest extends Specification {
+    private def store = new InMemorySessionStore()
+
+    def "should remove only expired sessions"() {
+        given:
+        var expired = (1..50).collect { new Session().ttl(1) }
+        var actual = (1..50).collect { new Session().ttl(100) }
+        (expired + actual).each { store.put(it) }
+
+        when:
+        var removedNow = store.removeExpired(Instant.now())
+        var removed = store.removeExpired(Instant.now().plusSeconds(10))
+
+        then:
+        removedNow == 0
+        removed == 50
+        store.size() == 50
+        expired.every { store.get(it.id) == null }
+        actual.every { store.get(it.id) != null }
+    }
+
+    def "should not remove touched sessions"() {
+        given:
+        var sessions = (1..20).collect { new Session().ttl(1) }
+        sessions.each { store.put(it) }
+
+        when:
+        sessions.each { store.touch(it.id, Instant.now().plusSeconds(100)) }
+        var removed = store.removeExpired(Instant.now().plusSeconds(10))
+
+        then:
+        removed == 0
+        store.size() == 20
+    }
+
+    def "should remove session with expiration changed without touch at new time"() {
+        given:
+        var session = new Session().ttl(1)
+        store.put(session)
+
+        when:
+        session.ttl(100)
+        var removedEarly = store.removeExpired(Instant.now().plusSeconds(10))
+        var removedLater = store.removeExpired(Instant.now().plusSeconds(200))
+
+        then:
+        removedEarly == 0
+        removedLater == 1
+    }
+}
@@ -0,0 +1,148 @@
+package spotty.server.session.store.replication
+
+import spock.lang.Specification
+import spotty.common.session.Session
+import spotty.server.session.store.impl.InMemorySessionStore
+
+import java.time.Instant
+
+import static org.awaitility.Awaitility.await
+
+class ReplicatedSessionStoreTest extends Specification {
+    private def group = LoopbackTransport.group()
+    private def messages = []
+    private def first = new ReplicatedSessionStore(new InMemorySessionStore(), group.join(), 10, 1024)
+    private def second = new ReplicatedSessionStore(new InMemorySessionStore(), group.join(), 10, 1024)
+
+    def setup() {
+        group.join().receive { messages.add(it) }
+    }
+
+    def cleanup() {
+        first.close()
+        second.close()
+    }
+
+    def "should replicate new session to other node"() {
+        given:
+        var session = new Session().ttl(100).put("name", "spotty")
+
+        when:
+        first.put(session)
+
+        then:
+        await().until(() -> second.get(session.id) != null)
+        second.get(session.id).get("name") == "spotty"
+        second.get(session.id).expires().toEpochMilli() == session.expires().toEpochMilli()
+    }
+
+    def "should replicate only changed values"() {
+        given:
+        var session = new Session().ttl(100)
+            .put("name", "spotty")
+            .put("data", new byte[1000])
+            .put("removed", true)
+
+        first.put(session)
+        await().until(() -> second.get(session.id) != null)
+
+        when:
+        session.put("name", "spotty2").remove("removed")
+        first.put(session)
+
+        then:
+        await().until(() -> second.get(session.id).get("name") == "spotty2")
+        second.get(session.id).hasNot("removed")
+        (second.get(session.id).get("data") as byte[]).length == 1000
+        messages.size() == 2
+        messages[1].length < 100
+    }
+
+    def "should replicate changes back from other node"() {
+        given:
+        var session = new Session().ttl(100).put("counter", 1)
+        first.put(session)
+        await().until(() -> second.get(session.id) != null)
+
+        when:
+        second.put(second.get(session.id).put("counter", 2))
+
+        then:
+        await().until(() -> first.get(session.id).get("counter") == 2)
+    }
+
+    def "should replicate touch and remove"() {
+        given:
+        var session = new Session().ttl(100)
+        first.put(session)
+        await().until(() -> second.get(session.id) != null)
+
+        when:
+        var expires = Instant.now().plusSeconds(1000)
+        first.touch(session.id, expires)
+
+        then:
+        await().until(() -> second.get(session.id).expires().toEpochMilli() == expires.toEpochMilli())
+
+        when:
+        first.remove(session.id)
+
+        then:
+        await().until(() -> second.get(session.id) == null)
+    }
+
+    def "should send changes in batches"() {
+        given:
+        var sessions = (1..100).collect { new Session().ttl(100).put("index", it) }
+
+        when:
+        sessions.each { first.put(it) }
+
+        then:
+        await().until(() -> second.size() == 100)
+        messages.size() < 100
+        sessions.every { second.get(it.id).get("index") == it.get("index") }
+    }
+
+    def "should request all values of session when changes of unknown session are received"() {
+        given:
+        var session = new Session().ttl(100).put("name", "spotty").put("counter", 1)
+        first.put(session)
+        await().until(() -> second.get(session.id) != null)
+
+        var restarted = new ReplicatedSessionStore(new InMemorySessionStore(), group.join(), 10, 1024)
+
+        when:
+        session.put("counter", 2)
+        first.put(session)
+
+        then:
+        await().until(() -> restarted.get(session.id) != null)
+        restarted.get(session.id).get("name") == "spotty"
+        restarted.get(session.id).get("counter") == 2
+
+        cleanup:
+        restarted.close()
+    }
+
+    def "should apply all values of session to the stored instance"() {
+        given:
+        var session = new Session().ttl(100).put("name", "spotty").put("counter", 1)
+        first.put(session)
+        await().until(() -> second.get(session.id) != null)
+
+        var held = second.get(session.id)
+        held.put("counter", 2)
+        second.put(held)
+        await().until(() -> session.get("counter") == 2)
+
+        when:
+        session.remove("name")
+        first.put(session)
+
+        then:
+        await().until(() -> held.hasNot("name"))
+        second.get(session.id).is(held)
+        held.get("counter") == 2
+    }
+}
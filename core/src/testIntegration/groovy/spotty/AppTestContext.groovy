@@ -31,4 +31,11 @@ abstract class AppTestContext extends Specification {
         SPOTTY.clearRoutes()
     }
 
+    /**
+     * date header is changing every second, so remove it to compare raw responses
+     */
+    protected static String withoutDate(String response) {
+        return response.replaceFirst(/(?m)^date: .+\n/, "")
+    }
+
 }
@@ -15,6 +15,7 @@ import static spotty.common.http.HttpHeaders.CONTENT_LENGTH
 import static spotty.common.http.HttpStatus.BAD_REQUEST
 import static spotty.common.http.HttpStatus.INTERNAL_SERVER_ERROR
 import static spotty.common.http.HttpStatus.TOO_MANY_REQUESTS
+import static spotty.version.SpottyVersion.VERSION
 
 class SpottyRouterSpec extends AppTestContext implements WebRequestTestData {
 
@@ -109,13 +110,14 @@ class SpottyRouterSpec extends AppTestContext implements WebRequestTestData {
         out.write("$CONTENT_LENGTH: $contentLength\n".bytes)
         out.write("\n".bytes)
 
-        var res = IOUtils.toString(inputStream)
+        var res = withoutDate(IOUtils.toString(inputStream))
 
         then:
         res == """
                 HTTP/1.1 400 Bad Request
                 content-length: 54
                 content-type: text/plain
+                server: Spotty v$VERSION
                 connection: close
 
                 maximum body size is 10485760 bytes, but sent $contentLength
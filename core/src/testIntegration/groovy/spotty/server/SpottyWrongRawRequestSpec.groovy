@@ -3,6 +3,9 @@ package spotty.server
 import spotty.AppTestContext
 import spotty.utils.RawHttpClient
 
+import static spotty.common.http.HttpHeaders.DATE
+import static spotty.version.SpottyVersion.VERSION
+
 class SpottyWrongRawRequestSpec extends AppTestContext {
 
     private RawHttpClient rawHttpClient
@@ -74,13 +77,14 @@ class SpottyWrongRawRequestSpec extends AppTestContext {
         var buff = new byte[256]
         var read = inputStream.read(buff)
         inputStream.read(buff, read, errorMessage.length())
-        var result = new String(buff).trim()
+        var result = withoutDate(new String(buff).trim())
 
         then:
         result == """
                     HTTP/1.1 400 Bad Request
                     content-length: 40
                     content-type: text/plain
+                    server: Spotty v$VERSION
                     connection: close
 
                     $errorMessage
@@ -91,6 +95,7 @@ class SpottyWrongRawRequestSpec extends AppTestContext {
         when:
         rawHttpClient.query("WRONG_METHOD", "/", "")
         var response = rawHttpClient.response()
+        response.headers.remove(DATE)
         var body = response.toString()
 
         then:
@@ -98,6 +103,7 @@ class SpottyWrongRawRequestSpec extends AppTestContext {
                     HTTP/1.1 400 Bad Request
                     content-length: 31
                     content-type: text/plain
+                    server: Spotty v$VERSION
                     connection: close
 
                     unsupported method WRONG_METHOD
@@ -120,13 +126,14 @@ class SpottyWrongRawRequestSpec extends AppTestContext {
         var buff = new byte[256]
         var read = inputStream.read(buff)
         inputStream.read(buff, read, errorMessage.length())
-        var result = new String(buff).trim()
+        var result = withoutDate(new String(buff).trim())
 
         then:
         result == """
                     HTTP/1.1 400 Bad Request
                     content-length: 52
                     content-type: text/plain
+                    server: Spotty v$VERSION
                     connection: close
 
                     $errorMessage
@@ -149,13 +156,14 @@ class SpottyWrongRawRequestSpec extends AppTestContext {
         var buff = new byte[256]
         var read = inputStream.read(buff)
         inputStream.read(buff, read, errorMessage.length())
-        var result = new String(buff).trim()
+        var result = withoutDate(new String(buff).trim())
 
         then:
         result == """
                     HTTP/1.1 400 Bad Request
                     content-length: 33
                     content-type: text/plain
+                    server: Spotty v$VERSION
                     connection: close
                      
                     $errorMessage